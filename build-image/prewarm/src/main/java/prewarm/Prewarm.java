@@ -0,0 +1,8 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package prewarm;
+
+/** Compiled by the offline build of the image, which checks that the pre-warmed plugins are complete. */
+public class Prewarm {
+}
@@ -0,0 +1,230 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares a JMH JSON result with a recorded baseline and fails when throughput dropped, or time or allocation
+ * per operation grew, by more than the tolerance:
+ *
+ * <pre>
+ * java scripts/BaselineComparison.java target/jmh-result.json benchmarks/synth-baseline.json 20 true
+ * </pre>
+ *
+ * Without a baseline file nothing is compared, which fails when the optional last argument requires a baseline.
+ * Record one by copying a result of the reference machine. Used by the {@code benchmark} profile of this project
+ * and by {@code scripts/package-benchmarks.sh}, whose first run records one. It only uses the JDK and is launched
+ * from source, so neither has to build the CDK app to compare two files.
+ *
+ * Exits 0 without regressions, 1 with regressions or a missing required baseline and 2 on wrong arguments.
+ */
+public final class BaselineComparison {
+
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    private BaselineComparison() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 3 && args.length != 4) {
+            System.err.println("Usage: <result file> <baseline file> <tolerance percent> [<baseline required>]");
+            System.exit(2);
+        }
+        final Path baselineFile = Paths.get(args[1]);
+        if (!Files.isRegularFile(baselineFile)) {
+            final boolean required = args.length == 4 && Boolean.parseBoolean(args[3]);
+            System.out.println("No benchmark baseline at " + baselineFile + ", copy " + args[0] + " there to record one");
+            System.exit(required ? 1 : 0);
+        }
+
+        final List<String> regressions = compare(read(Paths.get(args[0])), read(baselineFile), Double.parseDouble(args[2]));
+        regressions.forEach(System.out::println);
+        System.exit(regressions.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * Describes every score of the result worse than its baseline by more than the tolerance. Throughput scores,
+     * in {@code ops/<time unit>}, are worse when lower, all other scores when higher.
+     */
+    static List<String> compare(final Map<String, Double> result, final Map<String, Double> baseline, final double tolerancePercent) {
+        final List<String> regressions = new ArrayList<>();
+        result.forEach((key, score) -> {
+            final Double baselineScore = baseline.get(key);
+            if (baselineScore == null) {
+                return;
+            }
+            final boolean regressed = isThroughput(key)
+                    ? score < baselineScore * (1 - tolerancePercent / 100)
+                    : score > baselineScore * (1 + tolerancePercent / 100);
+            if (regressed) {
+                regressions.add(String.format("%s regressed from %.1f to %.1f (%+.0f%%)", key, baselineScore, score, (score / baselineScore - 1) * 100));
+            }
+        });
+        return regressions;
+    }
+
+    private static boolean isThroughput(final String key) {
+        return key.endsWith("]") && key.substring(key.lastIndexOf('[') + 1).startsWith("ops/");
+    }
+
+    /** Primary score and allocation per operation of every benchmark and parameter combination. */
+    @SuppressWarnings("unchecked")
+    static Map<String, Double> read(final Path file) throws IOException {
+        final Map<String, Double> scores = new TreeMap<>();
+        final Json json = new Json(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        for (Object element : (List<Object>) json.value()) {
+            final Map<String, Object> run = (Map<String, Object>) element;
+            final StringBuilder key = new StringBuilder(String.valueOf(run.get("benchmark")));
+            final Map<String, Object> params = (Map<String, Object>) run.getOrDefault("params", Map.of());
+            params.forEach((name, value) -> key.append(' ').append(name).append('=').append(value));
+
+            final Map<String, Object> primaryMetric = (Map<String, Object>) run.get("primaryMetric");
+            scores.put(key + " [" + primaryMetric.get("scoreUnit") + "]", score(primaryMetric.get("score")));
+
+            final Map<String, Object> secondaryMetrics = (Map<String, Object>) run.getOrDefault("secondaryMetrics", Map.of());
+            secondaryMetrics.forEach((name, value) -> {
+                final Map<String, Object> metric = (Map<String, Object>) value;
+                // JMH prefixes profiler metrics with a middle dot up to 1.35
+                if (name.replace("\u00b7", "").equals(ALLOCATION_METRIC)) {
+                    scores.put(key + " [" + metric.get("scoreUnit") + "]", score(metric.get("score")));
+                }
+            });
+        }
+        return scores;
+    }
+
+    /** JMH writes scores as numbers, and as the string {@code NaN} when a benchmark did not measure. */
+    private static double score(final Object value) {
+        return value instanceof Double ? (Double) value : Double.parseDouble(String.valueOf(value));
+    }
+
+    /** Reads the JSON JMH writes into maps, lists, strings, doubles, booleans and nulls. */
+    private static final class Json {
+        private final String text;
+        private int position;
+
+        Json(final String text) {
+            this.text = text;
+        }
+
+        Object value() {
+            skipWhitespace();
+            final char c = text.charAt(position);
+            if (c == '{') {
+                final Map<String, Object> object = new LinkedHashMap<>();
+                position++;
+                skipWhitespace();
+                if (peek('}')) {
+                    return object;
+                }
+                do {
+                    skipWhitespace();
+                    final String name = string();
+                    skipWhitespace();
+                    expect(':');
+                    object.put(name, value());
+                    skipWhitespace();
+                } while (peek(','));
+                expect('}');
+                return object;
+            }
+            if (c == '[') {
+                final List<Object> array = new ArrayList<>();
+                position++;
+                skipWhitespace();
+                if (peek(']')) {
+                    return array;
+                }
+                do {
+                    array.add(value());
+                    skipWhitespace();
+                } while (peek(','));
+                expect(']');
+                return array;
+            }
+            if (c == '"') {
+                return string();
+            }
+            for (String literal : new String[]{"true", "false", "null", "NaN"}) {
+                if (text.startsWith(literal, position)) {
+                    position += literal.length();
+                    return literal.equals("null") ? null : literal.equals("NaN") ? (Object) Double.NaN : (Object) Boolean.valueOf(literal);
+                }
+            }
+            final int start = position;
+            while (position < text.length() && "+-.eE0123456789".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            if (start == position) {
+                throw new IllegalArgumentException("Unexpected " + c + " at " + position);
+            }
+            return Double.parseDouble(text.substring(start, position));
+        }
+
+        private String string() {
+            expect('"');
+            final StringBuilder value = new StringBuilder();
+            while (text.charAt(position) != '"') {
+                char c = text.charAt(position++);
+                if (c == '\\') {
+                    c = text.charAt(position++);
+                    switch (c) {
+                        case 'u':
+                            c = (char) Integer.parseInt(text.substring(position, position + 4), 16);
+                            position += 4;
+                            break;
+                        case 'n':
+                            c = '\n';
+                            break;
+                        case 't':
+                            c = '\t';
+                            break;
+                        case 'r':
+                            c = '\r';
+                            break;
+                        case 'b':
+                            c = '\b';
+                            break;
+                        case 'f':
+                            c = '\f';
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                value.append(c);
+            }
+            position++;
+            return value.toString();
+        }
+
+        private boolean peek(final char c) {
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(final char c) {
+            if (!peek(c)) {
+                throw new IllegalArgumentException("Expected " + c + " at " + position);
+            }
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+#!/usr/bin/env bash
+# Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+# SPDX-License-Identifier: MIT-0
+#
+# Usage: build-cache.sh key <module directory> [<path>...]
+#        build-cache.sh restore <key> <directory>
+#        build-cache.sh save <key> <directory>
+#
+# Remote build cache of Maven outputs, addressed by content.
+#
+# `key` prints the SHA-256 of the pom.xml, build-profile.json and src/ of the
+# module, the resolved dependency versions of `mvn dependency:list`, the
+# contents of the given extra paths, such as in-repo dependencies installed
+# from verified artifacts, the Java version, the build command the outputs come
+# from in $BUILD_CACHE_COMMAND and $BUILD_CACHE_SALT. It exits 1 without a key
+# when the dependencies cannot be resolved. `restore` extracts the entry of a
+# key into the directory and exits 1 when there is none. `save` stores the
+# directory under the key.
+#
+# $BUILD_CACHE_LOCATION is either s3://<bucket>/<prefix> or file://<directory>.
+# $BUILD_CACHE_ENDPOINT_URL points the AWS CLI at an S3 compatible stand-in.
+# Cache failures never fail the build, a failed restore is a miss.
+
+set -uo pipefail
+
+location=${BUILD_CACHE_LOCATION:?BUILD_CACHE_LOCATION is not set}
+
+# hash_tree <path>... prints the SHA-256 of the relative names and contents of every file below the paths
+hash_tree() {
+    for path in "$@"; do
+        [ -e "$path" ] || continue
+        find "$path" -type f | LC_ALL=C sort | while read -r file; do
+            echo "$file"
+            sha256sum < "$file"
+        done
+    done | sha256sum | cut -d ' ' -f 1
+}
+
+copy() {
+    case "$location" in
+        s3://*)
+            aws s3 cp --only-show-errors ${BUILD_CACHE_ENDPOINT_URL:+--endpoint-url "$BUILD_CACHE_ENDPOINT_URL"} "$1" "$2"
+            ;;
+        file://*)
+            mkdir -p "${location#file://}" && cp "${1#file://}" "${2#file://}"
+            ;;
+        *)
+            echo "Unsupported build cache location $location" >&2
+            return 1
+            ;;
+    esac
+}
+
+case "${1:-}" in
+    key)
+        module="$2"
+        shift 2
+        # A partial list would key outputs built against other versions
+        if ! resolved=$(cd "$module" && mvn -B -q dependency:list -DoutputFile=/dev/stdout -DincludeScope=test --settings settings.xml 2>/dev/null); then
+            echo "Could not resolve the dependencies of $module, building without the build cache" >&2
+            exit 1
+        fi
+        dependencies=$(echo "$resolved" | grep ':' | LC_ALL=C sort)
+        {
+            (cd "$module" && hash_tree pom.xml build-profile.json src)
+            echo "$dependencies"
+            hash_tree "$@"
+            java -version 2>&1 | head -n 1
+            echo "${BUILD_CACHE_COMMAND:-}"
+            echo "${BUILD_CACHE_SALT:-}"
+        } | sha256sum | cut -d ' ' -f 1
+        ;;
+    restore)
+        key="$2"; directory="$3"
+        archive=$(mktemp)
+        if ! copy "$location/$key.tar.gz" "$archive" 2>/dev/null; then
+            echo "Build cache miss for $key"
+            rm -f "$archive"
+            exit 1
+        fi
+        mkdir -p "$directory"
+        if ! tar -xzf "$archive" -C "$directory"; then
+            echo "Build cache entry $key is unreadable, treating it as a miss"
+            rm -f "$archive"
+            exit 1
+        fi
+        rm -f "$archive"
+        echo "Build cache hit for $key"
+        ;;
+    save)
+        key="$2"; directory="$3"
+        archive=$(mktemp)
+        tar -czf "$archive" -C "$directory" . && copy "$archive" "$location/$key.tar.gz" || echo "Could not save build cache entry $key"
+        rm -f "$archive"
+        ;;
+    *)
+        echo "Usage: build-cache.sh key <module directory> [<path>...] | restore <key> <directory> | save <key> <directory>" >&2
+        exit 1
+        ;;
+esac
@@ -0,0 +1,102 @@
+#!/usr/bin/env bash
+# Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+# SPDX-License-Identifier: MIT-0
+#
+# Usage: build-metrics.sh start
+#        build-metrics.sh phase <stage> <project> <phase> <phase start in epoch milliseconds>
+#        build-metrics.sh build <stage> <project>
+#
+# Prints build metrics as CloudWatch embedded metric format lines to the build log.
+# `start` marks the beginning of the build, `phase` reports the duration of a phase
+# and `build` the totals of the build: duration, bytes downloaded from CodeArtifact,
+# local Maven cache hit ratio and surefire test counts and durations.
+#
+# Downloads are the jar and pom files added to the local repository since `start`
+# that Maven records in _remote.repositories with the id of the repository they
+# came from. Installs of in-repo packages, and verified inputs copied in, carry an
+# empty id and are not counted. The cache hit ratio is the share of the files
+# already there at `start`, i.e. restored from the cache, among those and the
+# downloads.
+#
+# Metrics are best effort, the script never fails the build.
+
+set -uo pipefail
+
+namespace=JavaSamplePipeline
+state_dir=${BUILD_METRICS_STATE_DIR:-/tmp/build-metrics}
+maven_repository=${MAVEN_REPOSITORY:-/root/.m2/repository}
+source_dir=${CODEBUILD_SRC_DIR:-.}
+
+now_millis() {
+    date +%s%3N
+}
+
+repository_files() {
+    find "$maven_repository" -type f \( -name '*.jar' -o -name '*.pom' \) "$@" 2>/dev/null
+}
+
+# Sizes of the files fetched from a remote repository since `start`, one per line
+downloaded_sizes() {
+    repository_files -newer "$state_dir/started" | while read -r file; do
+        if awk -F '>' -v name="$(basename "$file")" '$1 == name && $2 !~ /^=/ { found = 1 } END { exit !found }' \
+            "$(dirname "$file")/_remote.repositories" 2>/dev/null; then
+            stat -c %s "$file"
+        fi
+    done
+}
+
+# emit <dimension sets> <metric declarations> <properties>
+emit() {
+    printf '{"_aws":{"Timestamp":%s,"CloudWatchMetrics":[{"Namespace":"%s","Dimensions":[%s],"Metrics":[%s]}]},%s}\n' \
+        "$(now_millis)" "$namespace" "$1" "$2" "$3"
+}
+
+case "${1:-}" in
+    start)
+        mkdir -p "$state_dir"
+        touch "$state_dir/started"
+        ;;
+    phase)
+        stage="$2"; project="$3"; phase="$4"; started_at="$5"
+        emit '["Stage","Project","Phase"]' \
+            '{"Name":"PhaseDuration","Unit":"Milliseconds"}' \
+            "\"Stage\":\"$stage\",\"Project\":\"$project\",\"Phase\":\"$phase\",\"PhaseDuration\":$(( $(now_millis) - started_at ))"
+        ;;
+    build)
+        stage="$2"; project="$3"; finished_at=$(now_millis)
+        metrics='{"Name":"BuildDuration","Unit":"Milliseconds"}'
+        properties="\"Stage\":\"$stage\",\"Project\":\"$project\",\"BuildDuration\":$(( finished_at - ${CODEBUILD_START_TIME:-$finished_at} ))"
+
+        if [ -f "$state_dir/started" ]; then
+            sizes=$(downloaded_sizes)
+            downloaded_bytes=$(echo "$sizes" | awk '{ sum += $1 } END { print sum + 0 }')
+            downloaded_files=$(echo "$sizes" | grep -c .)
+            cached_files=$(repository_files ! -newer "$state_dir/started" | wc -l)
+            metrics="$metrics,{\"Name\":\"CodeArtifactBytesDownloaded\",\"Unit\":\"Bytes\"}"
+            properties="$properties,\"CodeArtifactBytesDownloaded\":$downloaded_bytes"
+            if [ $((cached_files + downloaded_files)) -gt 0 ]; then
+                metrics="$metrics,{\"Name\":\"MavenCacheHitRatio\",\"Unit\":\"Percent\"}"
+                properties="$properties,\"MavenCacheHitRatio\":$(awk -v cached="$cached_files" -v downloaded="$downloaded_files" 'BEGIN { printf "%.1f", cached * 100 / (cached + downloaded) }')"
+            fi
+        fi
+
+        reports=$(find "$source_dir" -path '*surefire-reports/TEST-*.xml' 2>/dev/null)
+        if [ -n "$reports" ]; then
+            # tests="3" and time="1,234.5" attributes of the testsuite elements, surefire groups thousands
+            totals=$(echo "$reports" | xargs grep -ho '<testsuite [^>]*>' \
+                | awk '{
+                    if (match($0, / tests="[0-9]+"/)) { tests += substr($0, RSTART + 8, RLENGTH - 9) }
+                    if (match($0, / time="[0-9.,]+"/)) { time = substr($0, RSTART + 7, RLENGTH - 8); gsub(",", "", time); seconds += time }
+                } END { printf "%d %d", tests, seconds * 1000 }')
+            metrics="$metrics,{\"Name\":\"TestCount\",\"Unit\":\"Count\"},{\"Name\":\"TestDuration\",\"Unit\":\"Milliseconds\"}"
+            properties="$properties,\"TestCount\":${totals% *},\"TestDuration\":${totals#* }"
+        fi
+
+        emit '["Stage","Project"],["Stage"]' "$metrics" "$properties"
+        ;;
+    *)
+        echo "Usage: build-metrics.sh start | phase <stage> <project> <phase> <started at> | build <stage> <project>" >&2
+        ;;
+esac
+
+exit 0
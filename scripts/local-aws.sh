@@ -0,0 +1,119 @@
+#!/usr/bin/env bash
+# Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+# SPDX-License-Identifier: MIT-0
+#
+# Usage: local-aws.sh <service> <command> [<option>...]
+#
+# Stand-in for the AWS CLI in builds of the local pipeline runner, installed as
+# `aws` on their PATH. Covers the calls the buildspecs and scripts make:
+#
+#   ssm get-parameter --name <name>           prints the value, fails like a missing parameter
+#   ssm put-parameter --name <name> --value <value>
+#   s3 cp <source> <target> [--recursive] [--include <pattern>]
+#   codeartifact get-authorization-token      prints a dummy token
+#   codeartifact list-package-version-assets --namespace <group> --package <artifact> --package-version <version>
+#
+# Parameters and S3 objects are files below $LOCAL_AWS_STATE, s3://<bucket>/<key>
+# is $LOCAL_AWS_STATE/s3/<bucket>/<key>. Package assets are read from
+# $LOCAL_MAVEN_REPOSITORY, the directory of the local Maven repository. Other
+# calls fail.
+
+set -uo pipefail
+
+state=${LOCAL_AWS_STATE:?LOCAL_AWS_STATE is not set}
+
+service="${1:-}"
+command="${2:-}"
+shift 2 2>/dev/null
+
+# Options with a value, positional arguments and flags
+declare -A options=()
+arguments=()
+recursive=false
+while [ $# -gt 0 ]; do
+    case "$1" in
+        --recursive)
+            recursive=true
+            ;;
+        --only-show-errors|--overwrite|--no-cli-pager)
+            ;;
+        --*)
+            options["${1#--}"]="${2:-}"
+            shift
+            ;;
+        *)
+            arguments+=("$1")
+            ;;
+    esac
+    shift
+done
+
+option() {
+    echo "${options[$1]:-}"
+}
+
+local_path() {
+    case "$1" in
+        s3://*)
+            echo "$state/s3/${1#s3://}"
+            ;;
+        *)
+            echo "$1"
+            ;;
+    esac
+}
+
+case "$service $command" in
+    "ssm get-parameter")
+        file="$state/ssm/$(option name)"
+        if [ ! -f "$file" ]; then
+            echo "An error occurred (ParameterNotFound) when calling the GetParameter operation: $(option name)" >&2
+            exit 254
+        fi
+        cat "$file"
+        ;;
+    "ssm put-parameter")
+        file="$state/ssm/$(option name)"
+        mkdir -p "$(dirname "$file")" && printf '%s\n' "$(option value)" > "$file"
+        ;;
+    "s3 cp")
+        source=$(local_path "${arguments[0]}")
+        target=$(local_path "${arguments[1]}")
+        if [ ! -e "$source" ]; then
+            echo "fatal error: An error occurred (404) when calling the HeadObject operation: Key \"${arguments[0]}\" does not exist" >&2
+            exit 1
+        fi
+        if [ "$recursive" = "true" ]; then
+            pattern=$(option include)
+            find "$source" -type f | while read -r file; do
+                relative="${file#$source/}"
+                # shellcheck disable=SC2254
+                case "$(basename "$relative")" in
+                    ${pattern:-*})
+                        mkdir -p "$(dirname "$target/$relative")" && cp "$file" "$target/$relative"
+                        ;;
+                esac
+            done
+        else
+            mkdir -p "$(dirname "$target")" && cp "$source" "$target"
+        fi
+        ;;
+    "codeartifact get-authorization-token")
+        echo local-token
+        ;;
+    "codeartifact list-package-version-assets")
+        directory="${LOCAL_MAVEN_REPOSITORY:?LOCAL_MAVEN_REPOSITORY is not set}/$(option namespace | tr . /)/$(option package)/$(option package-version)"
+        if [ ! -d "$directory" ]; then
+            echo "An error occurred (ResourceNotFoundException) when calling the ListPackageVersionAssets operation: Package version not found" >&2
+            exit 254
+        fi
+        for file in "$directory"/*; do
+            [ -f "$file" ] || continue
+            printf '%s\t%s\n' "$(basename "$file")" "$(sha256sum "$file" | cut -d ' ' -f 1)"
+        done
+        ;;
+    *)
+        echo "local-aws.sh does not cover aws $service $command" >&2
+        exit 252
+        ;;
+esac
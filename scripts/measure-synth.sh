@@ -0,0 +1,36 @@
+#!/usr/bin/env bash
+# Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+# SPDX-License-Identifier: MIT-0
+#
+# Usage: measure-synth.sh [runs]
+#
+# Measures `cdk synth` with the Maven app command and with the fast synth jar,
+# with and without the class data sharing archive, and prints the median wall
+# clock time of each in milliseconds. Builds the fast synth jar first. Runs 5
+# times per mode by default, after one untimed warm-up run.
+
+set -euo pipefail
+
+runs=${1:-5}
+
+now_millis() {
+    date +%s%3N
+}
+
+# median <app command>
+median() {
+    local app="$1" started durations=()
+    cdk synth --quiet --app "$app" > /dev/null
+    for _ in $(seq "$runs"); do
+        started=$(now_millis)
+        cdk synth --quiet --app "$app" > /dev/null
+        durations+=($(( $(now_millis) - started )))
+    done
+    printf '%s\n' "${durations[@]}" | sort -n | awk '{ values[NR] = $1 } END { print values[int((NR + 1) / 2)] }'
+}
+
+mvn -q -P fast-synth package
+
+echo "maven         $(median 'mvn -e -q compile exec:java') ms"
+echo "jar           $(median 'java -Xshare:off -jar target/synth.jar') ms"
+echo "jar + AppCDS  $(median 'java -XX:SharedArchiveFile=target/synth.jsa -Xshare:auto -jar target/synth.jar') ms"
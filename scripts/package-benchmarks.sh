@@ -0,0 +1,95 @@
+#!/usr/bin/env bash
+# Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+# SPDX-License-Identifier: MIT-0
+#
+# Usage: package-benchmarks.sh <package directory> <groupId> <artifactId> <version> <baseline url> <tolerance percent>
+#
+# Runs the JMH benchmarks in src/jmh/java of a package against its installed
+# version <groupId>:<artifactId>:<version>, which must be in the local Maven
+# repository, and compares the result with the baseline at <baseline url>, an
+# s3:// URL. Exits 1 when a throughput score dropped, or a time or allocation
+# score rose, by more than <tolerance percent>.
+#
+# Without a baseline the result is recorded as the baseline. Delete the object
+# to record a new one after an accepted change. JMH_VERSION selects the JMH
+# release (default 1.35), JMH_ARGS the options of the run (default -prof gc).
+# Expects CODEARTIFACT_REPOSITORY_URL and CODEARTIFACT_AUTH_TOKEN in the
+# environment and is run from the root of the repository.
+
+set -uo pipefail
+
+package_directory="$1"
+group_id="$2"
+artifact_id="$3"
+version="$4"
+baseline_url="$5"
+tolerance="$6"
+
+jmh_version=${JMH_VERSION:-1.35}
+jmh_args=${JMH_ARGS:--prof gc}
+
+root=$(pwd)
+work="$root/$package_directory/target/benchmarks"
+rm -rf "$work"
+mkdir -p "$work/classes"
+
+# The installed package brings its own dependencies through its pom
+cat > "$work/pom.xml" <<POM
+<?xml version="1.0" encoding="UTF-8"?>
+<project xmlns="http://maven.apache.org/POM/4.0.0">
+  <modelVersion>4.0.0</modelVersion>
+  <groupId>$group_id</groupId>
+  <artifactId>$artifact_id-benchmarks</artifactId>
+  <version>$version</version>
+  <dependencies>
+    <dependency>
+      <groupId>$group_id</groupId>
+      <artifactId>$artifact_id</artifactId>
+      <version>$version</version>
+    </dependency>
+    <dependency>
+      <groupId>org.openjdk.jmh</groupId>
+      <artifactId>jmh-core</artifactId>
+      <version>$jmh_version</version>
+    </dependency>
+    <dependency>
+      <groupId>org.openjdk.jmh</groupId>
+      <artifactId>jmh-generator-annprocess</artifactId>
+      <version>$jmh_version</version>
+    </dependency>
+  </dependencies>
+</project>
+POM
+
+if ! mvn -B -q dependency:build-classpath -f "$work/pom.xml" --settings "$root/settings.xml" -Dmdep.outputFile="$work/classpath.txt"; then
+    echo "Could not resolve $group_id:$artifact_id:$version and JMH $jmh_version"
+    exit 1
+fi
+classpath=$(cat "$work/classpath.txt")
+
+# The JMH annotation processor on the classpath generates the benchmark harness
+find "$root/$package_directory/src/jmh/java" -name '*.java' > "$work/sources.txt"
+if ! javac -cp "$classpath" -d "$work/classes" @"$work/sources.txt"; then
+    echo "Could not compile the benchmarks of $package_directory"
+    exit 1
+fi
+
+# shellcheck disable=SC2086
+if ! java -cp "$work/classes:$classpath" org.openjdk.jmh.Main -rf json -rff "$work/result.json" $jmh_args; then
+    echo "Benchmarks of $package_directory failed"
+    exit 1
+fi
+
+download=$(aws s3 cp "$baseline_url" "$work/baseline.json" --only-show-errors 2>&1)
+if [ $? -ne 0 ]; then
+    if ! echo "$download" | grep -q '(404)'; then
+        echo "Could not read the baseline $baseline_url: $download"
+        exit 1
+    fi
+    echo "No baseline at $baseline_url, recording this result"
+    aws s3 cp "$work/result.json" "$baseline_url" --only-show-errors
+    exit
+fi
+
+# The comparison only needs the JDK and runs from source
+java "$root/scripts/BaselineComparison.java" "$work/result.json" "$work/baseline.json" "$tolerance"
@@ -0,0 +1,34 @@
+#!/usr/bin/env bash
+# Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+# SPDX-License-Identifier: MIT-0
+#
+# Usage: package-changed.sh <ssm-parameter-name> <path>...
+#
+# Exits 0 when one of the paths changed between the revision stored in the SSM
+# parameter and HEAD, or when there is no usable stored revision. Exits 1 when
+# none of the paths changed.
+
+set -uo pipefail
+
+parameter_name="$1"
+shift
+
+last_revision=$(aws ssm get-parameter --name "$parameter_name" --query Parameter.Value --output text 2>/dev/null || echo none)
+
+if [ "$last_revision" = "none" ]; then
+    echo "No published revision recorded in $parameter_name"
+    exit 0
+fi
+
+if ! git cat-file -e "${last_revision}^{commit}" 2>/dev/null; then
+    echo "Published revision $last_revision is not part of the checked out history"
+    exit 0
+fi
+
+if git diff --quiet "$last_revision" HEAD -- "$@"; then
+    echo "Unchanged since $last_revision: $*"
+    exit 1
+fi
+
+echo "Changed since $last_revision: $*"
+exit 0
@@ -0,0 +1,30 @@
+#!/usr/bin/env bash
+# Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+# SPDX-License-Identifier: MIT-0
+#
+# Usage: prewarm-dependencies.sh
+#
+# Resolves the dependencies and plugins of the root pom.xml and of every
+# packages/*/pom.xml into the local repository $MAVEN_REPOSITORY, which should
+# start empty so every artifact is requested from CodeArtifact. CodeArtifact
+# fetches what it does not hold yet from Maven Central and retains it.
+#
+# Tries every pom file and exits 1 when one of them could not be resolved.
+
+set -uo pipefail
+
+maven_repository=${MAVEN_REPOSITORY:-/tmp/prewarm-repository}
+failed=()
+
+for pom in pom.xml packages/*/pom.xml; do
+    [ -f "$pom" ] || continue
+    echo "Resolving $pom"
+    if ! mvn -B -q dependency:go-offline --settings settings.xml -f "$pom" -Dmaven.repo.local="$maven_repository"; then
+        failed+=("$pom")
+    fi
+done
+
+if [ ${#failed[@]} -gt 0 ]; then
+    echo "Could not resolve: ${failed[*]}"
+    exit 1
+fi
@@ -0,0 +1,144 @@
+#!/usr/bin/env bash
+# Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+# SPDX-License-Identifier: MIT-0
+#
+# Usage: publish-package.sh <groupId> <artifactId> <version> <directory>
+#
+# Publishes the files of a release version found in <directory>, the version
+# directory of a local Maven repository: the pom, the jar and every attached
+# artifact such as shaded or sources jars.
+#
+# When CodeArtifact already holds the version, the SHA-256 of each file is
+# compared with the hash of the published asset. Jars are not reproducible, a
+# rebuild stamps new entry times, so a jar with another hash is downloaded and
+# compared entry by entry: names and contents, without the generated date
+# comment of pom.properties. Exits 0 without uploading when all of them match,
+# exits 1 when a file differs or is missing, since published versions cannot be
+# changed. Startup images, `-appcds.jsa` archives and `-runtime.tar.gz`
+# runtimes, differ with every build and only have to be published.
+#
+# Otherwise the files are uploaded concurrently, followed by the
+# maven-metadata.xml that completes the version. Expects CODEARTIFACT_REPOSITORY_URL
+# and CODEARTIFACT_AUTH_TOKEN in the environment.
+
+set -uo pipefail
+
+group_id="$1"
+artifact_id="$2"
+version="$3"
+directory="$4"
+
+files=$(find "$directory" -maxdepth 1 -type f \( -name "$artifact_id-$version.*" -o -name "$artifact_id-$version-*" \) \
+    ! -name '*.lastUpdated' ! -name '*.sha1' ! -name '*.md5' -printf '%f\n' | sort)
+
+if [ -z "$files" ]; then
+    echo "No files of $group_id:$artifact_id:$version in $directory"
+    exit 1
+fi
+
+base_url="${CODEARTIFACT_REPOSITORY_URL%/}/${group_id//.//}/$artifact_id"
+
+upload() {
+    curl --fail --silent --show-error --user "aws:$CODEARTIFACT_AUTH_TOKEN" --upload-file "$1" "$2"
+}
+
+# jar_content <jar> prints the SHA-256 of the names and contents of its entries, ignoring times and order
+jar_content() {
+    python3 - "$1" <<'PYTHON'
+import hashlib, re, sys, zipfile
+digest = hashlib.sha256()
+with zipfile.ZipFile(sys.argv[1]) as jar:
+    for name in sorted(entry.filename for entry in jar.infolist() if not entry.filename.endswith('/')):
+        content = jar.read(name)
+        if name.endswith('/pom.properties'):
+            content = re.sub(rb'(?m)^#.*\n', b'', content)
+        digest.update(name.encode() + b'\0' + hashlib.sha256(content).digest())
+print(digest.hexdigest())
+PYTHON
+}
+
+# same_jar_content <file> compares a local jar with the published one of the same name
+same_jar_content() {
+    local published status
+    published=$(mktemp)
+    curl --fail --silent --show-error --user "aws:$CODEARTIFACT_AUTH_TOKEN" --output "$published" "$base_url/$version/$1" \
+        && [ "$(jar_content "$directory/$1")" = "$(jar_content "$published")" ]
+    status=$?
+    rm -f "$published"
+    return $status
+}
+
+assets=$(aws codeartifact list-package-version-assets --domain aws-java-sample-domain --repository mvn --format maven \
+    --namespace "$group_id" --package "$artifact_id" --package-version "$version" \
+    --query 'assets[].[name, hashes."SHA-256"]' --output text 2>&1)
+status=$?
+
+if [ $status -eq 0 ]; then
+    differing=()
+    for file in $files; do
+        published_hash=$(echo "$assets" | awk -v name="$file" '$1 == name { print $2 }')
+        local_hash=$(sha256sum "$directory/$file" | cut -d ' ' -f 1)
+        if [ "$published_hash" = "$local_hash" ]; then
+            continue
+        fi
+        case "$file" in
+            *-appcds.jsa|*-runtime.tar.gz)
+                if [ -n "$published_hash" ]; then
+                    continue
+                fi
+                ;;
+        esac
+        if [ -n "$published_hash" ] && [[ "$file" == *.jar ]] && same_jar_content "$file"; then
+            echo "$file was rebuilt with the published content"
+            continue
+        fi
+        differing+=("$file")
+    done
+    if [ ${#differing[@]} -gt 0 ]; then
+        echo "$group_id:$artifact_id:$version is already published with different content: ${differing[*]}"
+        echo "Published versions cannot change, increase the version of the package"
+        exit 1
+    fi
+    echo "$group_id:$artifact_id:$version is already published with identical content, skipping upload"
+    exit 0
+fi
+
+if ! echo "$assets" | grep -q ResourceNotFoundException; then
+    echo "Could not read the published assets of $group_id:$artifact_id:$version: $assets"
+    exit 1
+fi
+
+pids=()
+for file in $files; do
+    echo "Uploading $file"
+    upload "$directory/$file" "$base_url/$version/$file" &
+    pids+=($!)
+done
+
+failed=0
+for pid in "${pids[@]}"; do
+    wait "$pid" || failed=1
+done
+if [ $failed -ne 0 ]; then
+    echo "Upload of $group_id:$artifact_id:$version failed"
+    exit 1
+fi
+
+# CodeArtifact marks the version as published once its metadata arrives
+metadata=$(mktemp)
+cat > "$metadata" <<METADATA
+<?xml version="1.0" encoding="UTF-8"?>
+<metadata>
+  <groupId>$group_id</groupId>
+  <artifactId>$artifact_id</artifactId>
+  <versioning>
+    <latest>$version</latest>
+    <release>$version</release>
+    <versions>
+      <version>$version</version>
+    </versions>
+    <lastUpdated>$(date -u +%Y%m%d%H%M%S)</lastUpdated>
+  </versioning>
+</metadata>
+METADATA
+upload "$metadata" "$base_url/maven-metadata.xml"
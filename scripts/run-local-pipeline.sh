@@ -0,0 +1,15 @@
+#!/usr/bin/env bash
+# Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+# SPDX-License-Identifier: MIT-0
+#
+# Usage: run-local-pipeline.sh [<option>...]
+#
+# Synthesizes the pipeline and runs its CodeBuild actions on this machine, with
+# a local Maven repository in place of CodeArtifact, then prints the wall time
+# of every stage, action and phase. Run it from the root of the checkout, the
+# options are listed by --help. Needs bash, git, mvn and a JDK on the PATH.
+
+set -euo pipefail
+
+mvn -q compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+exec java -cp "target/classes:$(cat target/classpath.txt)" com.myorg.localRunner.LocalPipelineRunner "$@"
@@ -0,0 +1,21 @@
+#!/usr/bin/env bash
+# Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+# SPDX-License-Identifier: MIT-0
+#
+# Usage: split-sources.sh <output directory> <path>...
+#
+# Copies the given paths of the checkout, together with settings.xml and
+# scripts/, to the output directory, keeping their relative locations. Prints
+# the size of the trimmed tree next to the size of the checkout without .git.
+
+set -euo pipefail
+
+output="$1"
+shift
+
+mkdir -p "$output"
+cp -r --parents settings.xml scripts "$@" "$output/"
+
+trimmed_bytes=$(du -sb "$output" | cut -f 1)
+checkout_bytes=$(du -sb --exclude=./.git --exclude="./${output%%/*}" . | cut -f 1)
+echo "Trimmed source $output: $trimmed_bytes of $checkout_bytes bytes"
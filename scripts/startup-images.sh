@@ -0,0 +1,125 @@
+#!/usr/bin/env bash
+# Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+# SPDX-License-Identifier: MIT-0
+#
+# Usage: startup-images.sh <groupId> <artifactId> <version> <mainClass> [<argument>...]
+#
+# Adds startup-optimized variants of an installed executable jar to its version
+# directory in the local repository $MAVEN_REPOSITORY, next to the jar, where
+# publishing picks them up as classified artifacts. Neither is byte-for-byte
+# reproducible, publish-package.sh only checks that a published version has them.
+#
+#   <artifactId>-<version>-appcds.jsa       class data sharing archive of a training
+#                                           run of <mainClass> with the arguments,
+#                                           for the JDK of this build
+#   <artifactId>-<version>-runtime.tar.gz   jlink runtime with only the modules the
+#                                           jar needs, the jar and bin/<artifactId>
+#
+# The startup times and sizes of the variants are printed to the build log as a
+# JSON report, and written to $STARTUP_REPORT when it is set. They change with
+# every run and are not published.
+#
+# The archive only applies to the JDK build that dumped it, recorded in the
+# report, and to the classpath `-cp <artifactId>-<version>.jar` from the
+# directory of the jar. Otherwise -Xshare:auto ignores it. The launcher of the
+# runtime dumps its own archive on first use, for wherever the runtime lives.
+#
+# Startup times are the median wall time of $STARTUP_RUNS runs (default 5).
+
+set -euo pipefail
+
+group_id="$1"
+artifact_id="$2"
+version="$3"
+main_class="$4"
+shift 4
+
+maven_repository=${MAVEN_REPOSITORY:-/root/.m2/repository}
+runs=${STARTUP_RUNS:-5}
+directory="$maven_repository/${group_id//.//}/$artifact_id/$version"
+name="$artifact_id-$version"
+
+if [ ! -f "$directory/$name.jar" ]; then
+    echo "No installed jar $directory/$name.jar"
+    exit 1
+fi
+
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+cp "$directory/$name.jar" "$work/"
+cd "$work"
+
+# Training run, the archive holds the JDK and application classes it loaded
+java -XX:DumpLoadedClassList=classes.lst -cp "$name.jar" "$main_class" "$@" < /dev/null > training.log
+java -Xshare:dump -XX:SharedClassListFile=classes.lst -XX:SharedArchiveFile=app.jsa -cp "$name.jar" > dump.log
+chmod 644 app.jsa
+
+feature=$(java -version 2>&1 | awk -F '"' '/version/ { split($2, parts, "."); print parts[1]; exit }')
+modules=$(jdeps --ignore-missing-deps --multi-release "$feature" --print-module-deps "$name.jar")
+jlink --add-modules "${modules:-java.base}" --strip-debug --no-header-files --no-man-pages --compress=2 --output "$name"
+mkdir "$name/app"
+cp "$name.jar" classes.lst "$name/app/"
+cat > "$name/bin/$artifact_id" <<LAUNCHER
+#!/usr/bin/env bash
+# Runs $main_class on this runtime. The first run dumps the class data
+# sharing archive for the location of the runtime, later runs map it.
+home=\$(cd "\$(dirname "\$0")/.." && pwd)
+if [ ! -f "\$home/app/app.jsa" ]; then
+    "\$home/bin/java" -Xshare:dump -XX:SharedClassListFile="\$home/app/classes.lst" -XX:SharedArchiveFile="\$home/app/app.jsa" -cp "\$home/app/$name.jar" > /dev/null 2>&1 || true
+fi
+exec "\$home/bin/java" -XX:SharedArchiveFile="\$home/app/app.jsa" -Xshare:auto -cp "\$home/app/$name.jar" $main_class "\$@"
+LAUNCHER
+chmod +x "$name/bin/$artifact_id"
+tar -czf runtime.tar.gz "$name"
+
+# Median wall time of a command in milliseconds
+startup_millis() {
+    for _ in $(seq "$runs"); do
+        start=$(date +%s%N)
+        "$@" < /dev/null > /dev/null
+        echo $((($(date +%s%N) - start) / 1000000))
+    done | sort -n | awk '{ times[NR] = $1 } END { print times[int((NR + 1) / 2)] }'
+}
+
+# The first run of the launcher dumps its archive, it is not timed
+"$name/bin/$artifact_id" "$@" < /dev/null > /dev/null
+
+jar_millis=$(startup_millis java -Xshare:auto -cp "$name.jar" "$main_class" "$@")
+appcds_millis=$(startup_millis java -XX:SharedArchiveFile=app.jsa -Xshare:auto -cp "$name.jar" "$main_class" "$@")
+runtime_millis=$(startup_millis "$name/bin/$artifact_id" "$@")
+
+java_home=$(java -XshowSettings:properties -version 2>&1 | awk -F ' = ' '/java.home/ { print $2 }')
+java_version=$(java -XshowSettings:properties -version 2>&1 | awk -F ' = ' '/java.vm.version/ { print $2 }')
+
+cat > startup.json <<REPORT
+{
+  "package": "$group_id:$artifact_id:$version",
+  "mainClass": "$main_class",
+  "javaVersion": "$java_version",
+  "modules": "$modules",
+  "runs": $runs,
+  "startupMillis": {
+    "jar": $jar_millis,
+    "appcds": $appcds_millis,
+    "runtime": $runtime_millis
+  },
+  "bytes": {
+    "jar": $(stat -c %s "$name.jar"),
+    "appcds": $(stat -c %s app.jsa),
+    "runtime": $(du -sb "$name" | cut -f 1),
+    "runtimeArchive": $(stat -c %s runtime.tar.gz),
+    "jdk": $(du -sb "$java_home" | cut -f 1)
+  }
+}
+REPORT
+
+cp app.jsa "$directory/$name-appcds.jsa"
+cp runtime.tar.gz "$directory/$name-runtime.tar.gz"
+if [ -n "${STARTUP_REPORT:-}" ]; then
+    cp startup.json "$STARTUP_REPORT"
+fi
+
+cat startup.json
+
+echo "Startup of $main_class: jar ${jar_millis} ms, AppCDS ${appcds_millis} ms, jlink runtime ${runtime_millis} ms"
+echo "Runtime of $name: $(du -sh "$name" | cut -f 1) with modules $modules, JDK $(du -sh "$java_home" | cut -f 1)"
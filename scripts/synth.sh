@@ -0,0 +1,29 @@
+#!/usr/bin/env bash
+# Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+# SPDX-License-Identifier: MIT-0
+#
+# Usage: synth.sh
+#
+# Runs the CDK app, the "app" command of cdk.json. When target/synth.jar from
+# `mvn -P fast-synth package` is newer than every source file and the pom, the
+# jar runs directly on the JVM, with the class data sharing archive
+# target/synth.jsa when there is one. Otherwise the app is compiled and run
+# through Maven. The jar runs as target/synth.jar from the project directory,
+# the classpath the archive was dumped with, or the JVM ignores the archive.
+
+set -euo pipefail
+
+jar=target/synth.jar
+archive=target/synth.jsa
+
+if [ -f "$jar" ] && [ -z "$(find pom.xml src/main -newer "$jar" -print -quit)" ]; then
+    if [ -f "$archive" ]; then
+        exec java -XX:SharedArchiveFile="$archive" -Xshare:auto -jar "$jar"
+    fi
+    exec java -jar "$jar"
+fi
+
+if [ -f "$jar" ]; then
+    echo "$jar is older than the sources, synthesizing through Maven. Run mvn -P fast-synth package to refresh it." >&2
+fi
+exec mvn -e -q compile exec:java
@@ -0,0 +1,58 @@
+#!/usr/bin/env bash
+# Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+# SPDX-License-Identifier: MIT-0
+#
+# Usage: trigger-pipeline.sh <pipeline> <repository> <old commit> <new commit> [<excluded pattern>...]
+#
+# Starts <pipeline> for a push to the CodeCommit <repository> unless every file
+# changed between <old commit> and <new commit> matches one of the excluded
+# patterns. Patterns are shell patterns matched against the whole path, where
+# * also matches /: 'README.md', '*.md' or 'docs/*'.
+#
+# A push without <old commit>, such as the creation of the branch, always
+# starts the pipeline.
+
+set -uo pipefail
+
+pipeline="$1"
+repository="$2"
+old_commit="$3"
+new_commit="$4"
+shift 4
+excluded=("$@")
+
+start() {
+    echo "$1, starting $pipeline"
+    aws codepipeline start-pipeline-execution --name "$pipeline" --query pipelineExecutionId --output text
+    exit
+}
+
+if [ -z "$old_commit" ] || [ "$old_commit" = "null" ]; then
+    start "No previous commit"
+fi
+
+# Renamed files appear with both paths, missing sides are printed as None
+if ! differences=$(aws codecommit get-differences --repository-name "$repository" \
+        --before-commit-specifier "$old_commit" --after-commit-specifier "$new_commit" \
+        --query 'differences[].[beforeBlob.path, afterBlob.path]' --output text); then
+    start "Could not list the changed files"
+fi
+
+while IFS= read -r path; do
+    if [ -z "$path" ] || [ "$path" = "None" ]; then
+        continue
+    fi
+    matched=false
+    for pattern in ${excluded[@]+"${excluded[@]}"}; do
+        # shellcheck disable=SC2053
+        if [[ "$path" == $pattern ]]; then
+            matched=true
+            break
+        fi
+    done
+    if [ "$matched" = false ]; then
+        start "$path changed"
+    fi
+done < <(echo "$differences" | tr '\t' '\n')
+
+echo "Only excluded files changed between $old_commit and $new_commit, not starting $pipeline"
@@ -0,0 +1,113 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.benchmark;
+
+import com.myorg.JavaCdkCicdCodeartifactStack;
+import com.myorg.PipelineOptions;
+import io.github.cdklabs.cdknag.AwsSolutionsChecks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awscdk.App;
+import software.amazon.awscdk.AppProps;
+import software.amazon.awscdk.Aspects;
+import software.amazon.awscdk.cxapi.CloudAssembly;
+import software.amazon.awscdk.cxapi.CloudFormationStackArtifact;
+import software.amazon.awscdk.cxapi.SynthesisMessageLevel;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Construction and synthesis time of the pipeline stack as the number of packages grows.
+ *
+ * A single synth of hundreds of packages takes seconds, so every invocation is measured on its own.
+ * The cost of the cdk-nag checks is the difference between {@link #synthWithNag()} and {@link #synth()}.
+ * Above {@link #MAX_UNSHARED_PACKAGES} packages the stack uses {@code sharedPackageBuilds}, without it the
+ * template exceeds the 500 resource quota and synth fails. Every trial first checks that synth succeeds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StackSynthBenchmark {
+
+    static final int MAX_UNSHARED_PACKAGES = 10;
+
+    @Param({"1", "10", "100", "250", "500"})
+    public int packageCount;
+
+    private Path sourceRoot;
+    private Path outdir;
+
+    @Setup(Level.Trial)
+    public void createSourceTree() throws IOException {
+        sourceRoot = SyntheticSourceTree.create(packageCount);
+        outdir = Files.createTempDirectory("synth-benchmark-out");
+
+        final CloudFormationStackArtifact stack = synthWithNag().getStackByName("JavaCdkCicdCodeartifactStack");
+        final List<String> errors = stack.getMessages().stream()
+                .filter(message -> message.getLevel() == SynthesisMessageLevel.ERROR)
+                .map(message -> message.getId() + ": " + message.getEntry().getData())
+                .collect(Collectors.toList());
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException("Synth of " + packageCount + " packages failed: " + String.join(", ", errors));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteSourceTree() throws IOException {
+        SyntheticSourceTree.delete(sourceRoot);
+        SyntheticSourceTree.delete(outdir);
+    }
+
+    @Benchmark
+    public JavaCdkCicdCodeartifactStack construct() {
+        return newStack(newApp());
+    }
+
+    @Benchmark
+    public CloudAssembly synth() {
+        final App app = newApp();
+        newStack(app);
+        return app.synth();
+    }
+
+    @Benchmark
+    public CloudAssembly synthWithNag() {
+        final App app = newApp();
+        newStack(app);
+        Aspects.of(app).add(new AwsSolutionsChecks());
+        return app.synth();
+    }
+
+    private App newApp() {
+        return new App(AppProps.builder()
+                .outdir(outdir.toString())
+                .build());
+    }
+
+    private JavaCdkCicdCodeartifactStack newStack(final App app) {
+        return new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack", null, PipelineOptions.builder()
+                .sourceRoot(sourceRoot)
+                .sharedPackageBuilds(packageCount > MAX_UNSHARED_PACKAGES)
+                .build());
+    }
+}
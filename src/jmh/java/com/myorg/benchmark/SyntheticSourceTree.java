@@ -0,0 +1,62 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Checkout with a given number of packages below {@code packages/}, the stack is synthesized from.
+ *
+ * Package {@code n} depends on package {@code (n - 1) / 2}, a binary tree that gives the stage
+ * the dependency waves of a real repository without exceeding the inputs of a CodeBuild action.
+ */
+final class SyntheticSourceTree {
+
+    private SyntheticSourceTree() {
+    }
+
+    static Path create(final int packageCount) throws IOException {
+        final Path sourceRoot = Files.createTempDirectory("synth-benchmark");
+
+        Files.createDirectories(sourceRoot.resolve("build-image"));
+        write(sourceRoot.resolve("build-image/Dockerfile"), "FROM public.ecr.aws/amazonlinux/amazonlinux:2\n");
+
+        for (int i = 0; i < packageCount; i++) {
+            final StringBuilder pom = new StringBuilder()
+                    .append("<project><modelVersion>4.0.0</modelVersion>")
+                    .append("<groupId>com.myorg</groupId><artifactId>").append(name(i)).append("</artifactId>")
+                    .append("<version>0.1.0</version><dependencies>");
+            if (i > 0) {
+                pom.append("<dependency><groupId>com.myorg</groupId><artifactId>").append(name((i - 1) / 2))
+                        .append("</artifactId><version>0.1.0</version></dependency>");
+            }
+            pom.append("</dependencies></project>");
+
+            Files.createDirectories(sourceRoot.resolve("packages").resolve(name(i)));
+            write(sourceRoot.resolve("packages").resolve(name(i)).resolve("pom.xml"), pom.toString());
+        }
+        return sourceRoot;
+    }
+
+    static void delete(final Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static String name(final int index) {
+        return String.format("package-%03d", index);
+    }
+
+    private static void write(final Path file, final String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -3,18 +3,43 @@
 
 package com.myorg;
 
+import com.myorg.buildAndPublishPackage.BuildProfile;
+import com.myorg.buildAndPublishPackage.PackageDefinition;
+import com.myorg.buildAndPublishPackage.PackageGraph;
+import com.myorg.buildAndPublishPackage.SharedPackageBuilds;
 import com.myorg.buildAndPublishPackage.buildAndPublishPackage;
+import com.myorg.buildAndPublishPackage.buildAndPublishPackageProps;
+import com.myorg.buildCache.BuildCache;
+import com.myorg.buildImage.PipelineBuildImage;
+import com.myorg.buildMetrics.BuildMetrics;
+import com.myorg.codeArtifactCredentials.CodeArtifactCredentials;
+import com.myorg.dependencyPrewarm.DependencyPrewarm;
+import com.myorg.mavenCache.MavenCache;
+import com.myorg.mavenCache.MavenCacheMode;
+import com.myorg.mavenExecution.MavenExecutionOptions;
+import com.myorg.nagSuppressions.DefaultPolicySuppressions;
+import com.myorg.pipelineExecution.PipelineExecutionMode;
+import com.myorg.pipelineExecution.PipelineTrigger;
+import com.myorg.sourceSplit.SourceSplit;
+import com.myorg.testShards.TestShards;
+import software.amazon.awscdk.Aws;
+import software.amazon.awscdk.Duration;
 import software.amazon.awscdk.RemovalPolicy;
 import software.amazon.awscdk.services.codebuild.*;
+import software.amazon.awscdk.services.codepipeline.CfnPipeline;
+import software.amazon.awscdk.services.codepipeline.IAction;
 import software.amazon.awscdk.services.codepipeline.StageOptions;
 import software.amazon.awscdk.services.codepipeline.actions.CodeBuildAction;
 import software.amazon.awscdk.services.codepipeline.actions.CodeBuildActionProps;
 import software.amazon.awscdk.services.codepipeline.actions.CodeCommitSourceAction;
+import software.amazon.awscdk.services.codepipeline.actions.CodeCommitTrigger;
 import software.amazon.awscdk.services.iam.Effect;
+import software.amazon.awscdk.services.iam.IRole;
 import software.amazon.awscdk.services.iam.Policy;
 import software.amazon.awscdk.services.iam.PolicyStatement;
 import software.amazon.awscdk.services.s3.BlockPublicAccess;
 import software.amazon.awscdk.services.s3.BucketEncryption;
+import software.amazon.awscdk.services.s3.LifecycleRule;
 import software.constructs.Construct;
 import software.amazon.awscdk.Stack;
 import software.amazon.awscdk.StackProps;
@@ -29,15 +54,34 @@ import software.amazon.awscdk.services.codepipeline.Artifact;
 import io.github.cdklabs.cdknag.NagSuppressions;
 import io.github.cdklabs.cdknag.NagPackSuppression;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 public class JavaCdkCicdCodeartifactStack extends Stack {
+
+    /** CodeBuild actions take up to five input artifacts, one is the source. */
+    private static final int MAX_EXTRA_INPUTS = 4;
+
+    /** CodePipeline quota of actions per stage. */
+    private static final int MAX_STAGE_ACTIONS = 50;
+
+    private static final String PIPELINE_NAME = "java-sample-pipeline";
+
+
     public JavaCdkCicdCodeartifactStack(final Construct scope, final String id) {
         this(scope, id, null);
     }
 
     public JavaCdkCicdCodeartifactStack(final Construct scope, final String id, final StackProps props) {
+        this(scope, id, props, PipelineOptions.builder().build());
+    }
+
+    public JavaCdkCicdCodeartifactStack(final Construct scope, final String id, final StackProps props, final PipelineOptions options) {
         super(scope, id, props);
 
         final Repository repo = Repository.Builder.create(this, "CodeCommitRepository")
@@ -48,13 +92,22 @@ public class JavaCdkCicdCodeartifactStack extends Stack {
                 .domainName("aws-java-sample-domain")
                 .build();
 
+        // Holds the packages fetched from Maven Central, kept apart from the packages published by the pipeline
+        final CfnRepository mavenCentralStoreRepository = CfnRepository.Builder.create(this, "MavenCentralStoreRepository")
+                .domainName(codeartifactDomain.getDomainName())
+                .repositoryName("maven-central-store")
+                .externalConnections(Arrays.asList("public:maven-central"))
+                .build();
+
+        mavenCentralStoreRepository.addDependsOn(codeartifactDomain);
+
         final CfnRepository mvnPrivateCodeartifactRepository = CfnRepository.Builder.create(this, "MvnPrivateCodeArtifactRepository")
                 .domainName(codeartifactDomain.getDomainName())
                 .repositoryName("mvn")
-                .externalConnections(Arrays.asList("public:maven-central"))
+                .upstreams(Arrays.asList(mavenCentralStoreRepository.getRepositoryName()))
                 .build();
 
-        mvnPrivateCodeartifactRepository.addDependsOn(codeartifactDomain);
+        mvnPrivateCodeartifactRepository.addDependsOn(mavenCentralStoreRepository);
 
         final Key codebuildEncryptionKey = Key.Builder.create(this, "codebuildEncryptionKey")
                 .enableKeyRotation(true)
@@ -81,6 +134,25 @@ public class JavaCdkCicdCodeartifactStack extends Stack {
                 .autoDeleteObjects(true)
                 .build();
 
+        // Artifacts of executions are stored below the pipeline name
+        pipelineArtifactBucket.addLifecycleRule(LifecycleRule.builder()
+                .prefix(PIPELINE_NAME + "/")
+                .expiration(options.getPipelineArtifactRetention())
+                .abortIncompleteMultipartUploadAfter(Duration.days(1))
+                .build());
+
+        final MavenCache mavenCache = new MavenCache(this, "MavenCache", options.getMavenCacheMode(), options.getSourceRoot(), accessLogsBucket, codebuildEncryptionKey);
+
+        final BuildCache buildCache = options.isRemoteBuildCache()
+                ? new BuildCache(this, "BuildCache", accessLogsBucket, codebuildEncryptionKey, Duration.days(30))
+                : null;
+
+        final PipelineBuildImage buildImage = new PipelineBuildImage(this, "BuildImage", options.isCustomBuildImage(), options.getSourceRoot());
+
+        final BuildMetrics buildMetrics = new BuildMetrics(this, "BuildMetrics", options.getStageDurationAlarmThreshold());
+
+        new DependencyPrewarm(this, "DependencyPrewarm", repo, codeartifactDomain.getAttrArn(), mvnPrivateCodeartifactRepository.getAttrArn(), codebuildEncryptionKey, options.getDependencyPrewarmSchedule(), buildImage.image, buildMetrics);
+
         NagSuppressions.addResourceSuppressions(accessLogsBucket, Arrays.asList(
                 new NagPackSuppression.Builder()
                         .id("AwsSolutions-S1")
@@ -89,11 +161,27 @@ public class JavaCdkCicdCodeartifactStack extends Stack {
         ), true);
 
         final Pipeline pipeline = Pipeline.Builder.create(this, "PackagePipeline")
-                .pipelineName("java-sample-pipeline")
+                .pipelineName(PIPELINE_NAME)
                 .restartExecutionOnUpdate(true)
                 .artifactBucket(pipelineArtifactBucket)
                 .build();
 
+        // Pipeline type and execution mode are not modelled by this CDK version
+        if (options.getExecutionMode() != PipelineExecutionMode.SUPERSEDED) {
+            final CfnPipeline cfnPipeline = (CfnPipeline) pipeline.getNode().getDefaultChild();
+            cfnPipeline.addPropertyOverride("PipelineType", "V2");
+            cfnPipeline.addPropertyOverride("ExecutionMode", options.getExecutionMode().name());
+        }
+
+        final boolean filteredTrigger = !options.getTriggerExcludedPaths().isEmpty();
+        if (filteredTrigger) {
+            new PipelineTrigger(this, "PipelineTrigger", repo, "main", pipeline, options.getTriggerExcludedPaths(), codebuildEncryptionKey, buildImage.image, buildMetrics);
+        }
+
+        // Objects every CodeBuild project of the pipeline reads and writes
+        final List<String> projectBucketObjects = DefaultPolicySuppressions.bucketObjects(pipelineArtifactBucket, "*");
+        projectBucketObjects.addAll(DefaultPolicySuppressions.bucketObjects(mavenCache.bucket, "*"));
+
         final Artifact sourceOutput = new Artifact("SourceArtifact");
 
         final CodeCommitSourceAction sourceAction = CodeCommitSourceAction.Builder.create()
@@ -101,6 +189,10 @@ public class JavaCdkCicdCodeartifactStack extends Stack {
                 .repository(repo)
                 .output(sourceOutput)
                 .branch("main")
+                // Full clone, so package builds can diff against their last published revision
+                .codeBuildCloneOutput(true)
+                // Filtered pushes are started by the trigger project
+                .trigger(filteredTrigger ? CodeCommitTrigger.NONE : CodeCommitTrigger.EVENTS)
                 .build();
 
         pipeline.addStage(StageOptions.builder()
@@ -109,149 +201,97 @@ public class JavaCdkCicdCodeartifactStack extends Stack {
                 .build()
         );
 
-        final PipelineProject runUnitTestsProject = PipelineProject.Builder.create(this, "RunUnitTests")
-                .environment(BuildEnvironment.builder()
-                        .privileged(false)
-                        .computeType(ComputeType.MEDIUM)
-                        .buildImage(LinuxBuildImage.STANDARD_5_0)
-                        .build()
-                )
-                .encryptionKey(pipeline.getArtifactBucket().getEncryptionKey())
-                .buildSpec(BuildSpec.fromObject(Map.of(
-                        "version", "0.2",
-                        "phases", Map.of(
-                                "pre_build", Map.of(
-                                        "commands", Arrays.asList(
-                                                "export CODEARTIFACT_AUTH_TOKEN=`aws codeartifact get-authorization-token --domain aws-java-sample-domain --query authorizationToken --output text`",
-                                                "export CODEARTIFACT_REPOSITORY_URL=`aws codeartifact get-repository-endpoint --domain aws-java-sample-domain --repository mvn --format maven --query repositoryEndpoint --output text`"
-                                        )
-                                ),
-                                "build", Map.of(
-                                        "commands", Arrays.asList(
-                                                "mvn package --settings settings.xml"
-                                        )
-                                )
-                        )
-                )))
-                .build();
-
-        runUnitTestsProject.getRole().attachInlinePolicy(
-                Policy.Builder.create(this, "RunUnitTestsPolicy")
-                        .statements(Arrays.asList(
-                                PolicyStatement.Builder.create()
-                                        .effect(Effect.ALLOW)
-                                        .resources(Arrays.asList("*"))
-                                        .actions(Arrays.asList("sts:GetServiceBearerToken"))
-                                        .conditions(Map.of(
-                                                "StringEquals", Map.of(
-                                                        "sts:AWSServiceName", "codeartifact.amazonaws.com"
-                                                )
-                                        ))
-                                        .build(),
-                                PolicyStatement.Builder.create()
-                                        .effect(Effect.ALLOW)
-                                        .resources(Arrays.asList(codeartifactDomain.getAttrArn()))
-                                        .actions(Arrays.asList("codeartifact:GetAuthorizationToken"))
-                                        .build(),
-                                PolicyStatement.Builder.create()
-                                        .effect(Effect.ALLOW)
-                                        .resources(Arrays.asList(mvnPrivateCodeartifactRepository.getAttrArn()))
-                                        .actions(Arrays.asList(
-                                                "codeartifact:ReadFromRepository",
-                                                "codeartifact:GetRepositoryEndpoint",
-                                                "codeartifact:List*"
-                                        ))
-                                        .build()
-
-                        ))
-                        .build()
-        );
+        final PackageGraph packageGraph = PackageGraph.discover(options.getSourceRoot());
+        final CodeArtifactCredentials codeartifactCredentials = new CodeArtifactCredentials(this, "CodeArtifactCredentials", codeartifactDomain.getAttrArn(), mvnPrivateCodeartifactRepository.getAttrArn(),
+                packageGraph.getPackages().stream().map(PackageDefinition::getGroupId).collect(Collectors.toList()),
+                pipelineArtifactBucket, options.getCodeartifactTokenDuration(), buildImage.image, buildMetrics);
 
         pipeline.addStage(StageOptions.builder()
-                .stageName("Test")
-                .actions(Arrays.asList(
-                        new CodeBuildAction(CodeBuildActionProps.builder()
-                                .actionName("run-unit-tests")
-                                .project(runUnitTestsProject)
-                                .input(sourceOutput)
-                                .build())
-                ))
+                .stageName("Credentials")
+                .actions(codeartifactCredentials.actions(sourceOutput))
                 .build()
         );
 
+        final List<String> selfMutatePreBuildCommands = new ArrayList<>(buildImage.selfMutateInstallCommands());
+        selfMutatePreBuildCommands.add("export CODEARTIFACT_ACCOUNT_ID=`aws sts get-caller-identity --query \"Account\" --output text`");
+
         final PipelineProject selfMutateProject = PipelineProject.Builder.create(this, "SelfMutate")
                 .environment(BuildEnvironment.builder()
-                        .privileged(false)
+                        // Docker is needed to build the image asset of the custom build image
+                        .privileged(buildImage.isCustom())
                         .computeType(ComputeType.MEDIUM)
-                        .buildImage(LinuxBuildImage.STANDARD_5_0)
+                        .buildImage(buildImage.image)
                         .build()
                 )
                 .encryptionKey(pipeline.getArtifactBucket().getEncryptionKey())
-                .buildSpec(BuildSpec.fromObject(Map.of(
+                .environmentVariables(codeartifactCredentials.projectEnvironmentVariables())
+                .logging(buildMetrics.logging("SelfMutate"))
+                .cache(mavenCache.cache())
+                .buildSpec(BuildSpec.fromObject(buildMetrics.addTo(mavenCache.addTo(Map.of(
                         "version", "0.2",
                         "phases", Map.of(
                                 "pre_build", Map.of(
-                                        "commands", Arrays.asList(
-                                                "npm install -g aws-cdk",
-                                                "export CODEARTIFACT_AUTH_TOKEN=`aws codeartifact get-authorization-token --domain aws-java-sample-domain --query authorizationToken --output text`",
-                                                "export CODEARTIFACT_REPOSITORY_URL=`aws codeartifact get-repository-endpoint --domain aws-java-sample-domain --repository mvn --format maven --query repositoryEndpoint --output text`",
-                                                "export CODEARTIFACT_ACCOUNT_ID=`aws sts get-caller-identity --query \"Account\" --output text`"
-                                        )
+                                        "commands", selfMutatePreBuildCommands
                                 ),
                                 "build", Map.of(
                                         "commands", Arrays.asList(
-                                                "cdk deploy --require-approval=never"
+                                                "cdk synth --quiet",
+                                                // Assets are referenced by content hash, an unchanged template has unchanged assets
+                                                "export TEMPLATE_HASH=`python3 -m json.tool --sort-keys cdk.out/" + this.getTemplateFile() + " | sha256sum | cut -d ' ' -f 1`",
+                                                // The template CloudFormation holds after the last successful deploy or rollback, empty if the stack is gone
+                                                "export DEPLOYED_TEMPLATE_HASH=`aws cloudformation get-template --stack-name " + this.getStackName() + " --template-stage Original --query TemplateBody --output json | python3 -m json.tool --sort-keys | sha256sum | cut -d ' ' -f 1`",
+                                                "if [ \"$TEMPLATE_HASH\" = \"$DEPLOYED_TEMPLATE_HASH\" ]; then echo \"Pipeline template unchanged, skipping deploy\"; else cdk deploy --app cdk.out --require-approval=never; fi"
                                         )
                                 )
                         )
-                )))
+                )), "UpdatePipeline", "SelfMutate")))
                 .build();
 
-        selfMutateProject.getRole().attachInlinePolicy(
-                Policy.Builder.create(this, "SelfMutatePolicy")
-                        .statements(Arrays.asList(
-                                PolicyStatement.Builder.create()
-                                        .effect(Effect.ALLOW)
-                                        .resources(Arrays.asList("*"))
-                                        .actions(Arrays.asList("sts:GetServiceBearerToken"))
-                                        .conditions(Map.of(
-                                                "StringEquals", Map.of(
-                                                        "sts:AWSServiceName", "codeartifact.amazonaws.com"
-                                                )
-                                        ))
-                                        .build(),
-                                PolicyStatement.Builder.create()
-                                        .effect(Effect.ALLOW)
-                                        .resources(Arrays.asList(codeartifactDomain.getAttrArn()))
-                                        .actions(Arrays.asList("codeartifact:GetAuthorizationToken"))
-                                        .build(),
-                                PolicyStatement.Builder.create()
-                                        .effect(Effect.ALLOW)
-                                        .resources(Arrays.asList(mvnPrivateCodeartifactRepository.getAttrArn()))
-                                        .actions(Arrays.asList(
-                                                "codeartifact:ReadFromRepository",
-                                                "codeartifact:GetRepositoryEndpoint",
-                                                "codeartifact:List*"
-                                        ))
-                                        .build(),
-                                PolicyStatement.Builder.create()
-                                        .effect(Effect.ALLOW)
-                                        .resources(Arrays.asList("*"))
-                                        .actions(Arrays.asList("cloudformation:DescribeStacks"))
-                                        .build(),
-                                PolicyStatement.Builder.create()
-                                        .effect(Effect.ALLOW)
-                                        .resources(Arrays.asList("*"))
-                                        .actions(Arrays.asList("iam:PassRole"))
-                                        .build(),
-                                PolicyStatement.Builder.create()
-                                        .effect(Effect.ALLOW)
-                                        .resources(Arrays.asList("arn:aws:iam::*:role/cdk-*"))
-                                        .actions(Arrays.asList("sts:AssumeRole"))
-                                        .build()
-                        ))
-                        .build()
-        );
+        buildMetrics.track(selfMutateProject, "UpdatePipeline", "SelfMutate", Duration.hours(1));
+
+        final Policy selfMutatePolicy = Policy.Builder.create(this, "SelfMutatePolicy")
+                .statements(Arrays.asList(
+                        PolicyStatement.Builder.create()
+                                .effect(Effect.ALLOW)
+                                .resources(Arrays.asList("*"))
+                                .actions(Arrays.asList("cloudformation:DescribeStacks"))
+                                .build(),
+                        PolicyStatement.Builder.create()
+                                .effect(Effect.ALLOW)
+                                .resources(Arrays.asList(Aws.STACK_ID))
+                                .actions(Arrays.asList("cloudformation:GetTemplate"))
+                                .build(),
+                        PolicyStatement.Builder.create()
+                                .effect(Effect.ALLOW)
+                                .resources(Arrays.asList("*"))
+                                .actions(Arrays.asList("iam:PassRole"))
+                                .build(),
+                        PolicyStatement.Builder.create()
+                                .effect(Effect.ALLOW)
+                                .resources(Arrays.asList("arn:aws:iam::*:role/cdk-*"))
+                                .actions(Arrays.asList("sts:AssumeRole"))
+                                .build()
+                ))
+                .build();
+
+        selfMutateProject.getRole().attachInlinePolicy(selfMutatePolicy);
+
+        codeartifactCredentials.grantRead(selfMutateProject);
+
+        DefaultPolicySuppressions.addToProject(selfMutateProject, projectBucketObjects);
+        DefaultPolicySuppressions.addToPolicy(selfMutatePolicy, Arrays.asList(
+                "Resource::*",
+                "Resource::arn:aws:iam::*:role/cdk-*"
+        ));
+
+        if (buildImage.isCustom()) {
+            NagSuppressions.addResourceSuppressions(selfMutateProject, Arrays.asList(
+                    new NagPackSuppression.Builder()
+                            .id("AwsSolutions-CB3")
+                            .reason("Builds the Docker image asset of the pipeline build image")
+                            .build()
+            ));
+        }
 
         pipeline.addStage(StageOptions.builder()
                 .stageName("UpdatePipeline")
@@ -260,158 +300,204 @@ public class JavaCdkCicdCodeartifactStack extends Stack {
                                 .actionName("self-mutate")
                                 .project(selfMutateProject)
                                 .input(sourceOutput)
+                                .environmentVariables(codeartifactCredentials.actionEnvironmentVariables())
                                 .build())
                 ))
                 .build()
         );
 
-        final buildAndPublishPackage samplePackageProject = new buildAndPublishPackage(this, "BuildSamplePackage", "sample-package", codeartifactDomain.getAttrArn(), mvnPrivateCodeartifactRepository.getAttrArn(), pipelineArtifactBucket.getEncryptionKey());
-
-        pipeline.addStage(StageOptions.builder()
-                .stageName("BuildAndPublishPackages")
-                .actions(Arrays.asList(
-                        new CodeBuildAction(CodeBuildActionProps.builder()
-                                .actionName("sample-package")
-                                .project(samplePackageProject.project)
-                                .input(sourceOutput)
-                                .build())
-                ))
-                .build()
-        );
+        final MavenExecutionOptions mavenExecutionOptions = options.getMavenExecutionOptions();
+        if (mavenExecutionOptions.isOffline() && options.getMavenCacheMode() == MavenCacheMode.NONE) {
+            throw new IllegalArgumentException("Offline Maven builds require a Maven cache");
+        }
+
+        final boolean shardedTests = options.getTestShardCount() > 1;
+        final List<IAction> testActions = new ArrayList<>();
+
+        if (shardedTests) {
+            final TestShards testShards = new TestShards(this, "TestShards", options.getTestShardCount(), pipelineArtifactBucket, codeartifactCredentials, mavenCache, mavenExecutionOptions, buildImage.image, buildMetrics);
+            testActions.addAll(testShards.actions(sourceOutput));
+        } else {
+            final Map<String, BuildEnvironmentVariable> runUnitTestsEnvironmentVariables = new HashMap<>(codeartifactCredentials.projectEnvironmentVariables());
+            runUnitTestsEnvironmentVariables.putAll(mavenExecutionOptions.environmentVariables());
+            if (buildCache != null) {
+                runUnitTestsEnvironmentVariables.putAll(buildCache.environmentVariables());
+            }
+
+            final PipelineProject runUnitTestsProject = PipelineProject.Builder.create(this, "RunUnitTests")
+                    .environment(BuildEnvironment.builder()
+                            .privileged(false)
+                            .computeType(ComputeType.MEDIUM)
+                            .buildImage(buildImage.image)
+                            .build()
+                    )
+                    .encryptionKey(pipeline.getArtifactBucket().getEncryptionKey())
+                    .environmentVariables(runUnitTestsEnvironmentVariables)
+                    .logging(buildMetrics.logging("RunUnitTests"))
+                    .cache(mavenCache.cache())
+                    .buildSpec(BuildSpec.fromObject(buildMetrics.addTo(mavenCache.addTo(Map.of(
+                            "version", "0.2",
+                            "phases", Map.of(
+                                    "build", Map.of(
+                                            "commands", Arrays.asList(
+                                                    // The tests also run the scripts and synthesize the packages and the build image
+                                                    buildCache != null
+                                                            ? buildCache.cached(".", Arrays.asList("scripts", "packages", "build-image"), "target", mavenExecutionOptions.command("package"))
+                                                            : mavenExecutionOptions.command("package")
+                                            )
+                                    )
+                            )
+                    )), "Test", "RunUnitTests")))
+                    .build();
+
+            buildMetrics.track(runUnitTestsProject, "Test", "RunUnitTests", Duration.hours(1));
+
+            codeartifactCredentials.grantRead(runUnitTestsProject);
+
+            final List<String> runUnitTestsBucketObjects = new ArrayList<>(projectBucketObjects);
+            if (buildCache != null) {
+                buildCache.grantReadWrite(runUnitTestsProject);
+                runUnitTestsBucketObjects.addAll(DefaultPolicySuppressions.bucketObjects(buildCache.bucket, "outputs/*"));
+            }
+            DefaultPolicySuppressions.addToProject(runUnitTestsProject, runUnitTestsBucketObjects);
+
+            testActions.add(new CodeBuildAction(CodeBuildActionProps.builder()
+                    .actionName("run-unit-tests")
+                    .project(runUnitTestsProject)
+                    .input(sourceOutput)
+                    .environmentVariables(codeartifactCredentials.actionEnvironmentVariables())
+                    .build()));
+        }
+
+        final SharedPackageBuilds sharedBuilds = options.isSharedPackageBuilds()
+                ? new SharedPackageBuilds(this, "SharedPackageBuilds", options.isSkipUnchangedPackages(), options.isSparseSourceArtifacts(), options.getBenchmarkTolerancePercent(),
+                        PIPELINE_NAME, repo, pipelineArtifactBucket, mavenCache, buildCache, buildMetrics, codeartifactCredentials, buildImage)
+                : null;
+        final Map<String, buildAndPublishPackage> packageProjects = new HashMap<>();
+        final List<buildAndPublishPackage> orderedPackageProjects = new ArrayList<>();
+        final List<IAction> benchmarkActions = new ArrayList<>();
+        final List<IAction> publishActions = new ArrayList<>();
+
+        // In run order, so the verified builds of dependencies exist before their dependants are wired
+        final List<PackageDefinition> packageDefinitions = packageGraph.getPackages().stream()
+                .sorted(Comparator.comparingInt(packageDefinition -> packageGraph.getRunOrder(packageDefinition.getName())))
+                .collect(Collectors.toList());
+
+        for (PackageDefinition packageDefinition : packageDefinitions) {
+            // Shared projects are spread over nested stacks, in run order
+            final Construct packageScope = sharedBuilds != null ? sharedBuilds.stack(orderedPackageProjects.size()) : this;
+            final buildAndPublishPackage packageProject = new buildAndPublishPackage(packageScope, "Build" + packageDefinition.getConstructName(), buildAndPublishPackageProps.builder()
+                    .packageDefinition(packageDefinition)
+                    .dependencyPackages(packageGraph.getTransitiveDependencies(packageDefinition.getName()).stream()
+                            .map(packageGraph::getPackage)
+                            .collect(Collectors.toList()))
+                    .skipUnchanged(options.isSkipUnchangedPackages())
+                    .sparseSource(options.isSparseSourceArtifacts())
+                    .codeartifactCredentials(codeartifactCredentials)
+                    .artifactBucket(pipelineArtifactBucket)
+                    .mavenCache(mavenCache)
+                    .buildImage(buildImage.image)
+                    .buildProfile(BuildProfile.load(packageDefinition.getDirectory()))
+                    .buildMetrics(buildMetrics)
+                    .mavenExecutionOptions(mavenExecutionOptions)
+                    .buildCache(buildCache)
+                    .benchmarks(options.isPackageBenchmarks())
+                    .benchmarkTolerancePercent(options.getBenchmarkTolerancePercent())
+                    .sharedBuilds(sharedBuilds)
+                    .build());
+            packageProjects.put(packageDefinition.getName(), packageProject);
+            orderedPackageProjects.add(packageProject);
+
+            final Artifact packageSource = options.isSparseSourceArtifacts() ? packageProject.sourceArtifact : sourceOutput;
+
+            // Packages are verified in dependency waves, each build receives the verified builds of its direct dependencies
+            final List<Artifact> verifiedDependencies = packageGraph.getDependencies(packageDefinition.getName()).stream()
+                    .map(dependency -> packageProjects.get(dependency).verifiedPackage)
+                    .collect(Collectors.toList());
+            if (verifiedDependencies.size() > MAX_EXTRA_INPUTS) {
+                throw new IllegalArgumentException("Package " + packageDefinition.getName() + " depends on " + verifiedDependencies.size()
+                        + " in-repo packages, a CodeBuild action accepts the verified builds of at most " + MAX_EXTRA_INPUTS);
+            }
+
+            final Map<String, BuildEnvironmentVariable> packageEnvironmentVariables = new HashMap<>(codeartifactCredentials.actionEnvironmentVariables());
+            packageEnvironmentVariables.putAll(packageProject.actionEnvironmentVariables());
+            // Without a shared role each action gets its own
+            final IRole packageActionRole = sharedBuilds != null ? sharedBuilds.actionRole() : null;
+
+            testActions.add(new CodeBuildAction(CodeBuildActionProps.builder()
+                    .actionName("verify-" + packageDefinition.getName())
+                    .project(packageProject.verifyProject)
+                    .input(packageSource)
+                    .extraInputs(verifiedDependencies)
+                    .outputs(Arrays.asList(packageProject.verifiedPackage))
+                    .environmentVariables(packageEnvironmentVariables)
+                    .role(packageActionRole)
+                    .runOrder(packageGraph.getRunOrder(packageDefinition.getName()))
+                    .build()));
+
+            if (packageProject.benchmarkProject != null) {
+                // Compiles the baseline comparison from the root pom, which trimmed sources do not hold
+                benchmarkActions.add(new CodeBuildAction(CodeBuildActionProps.builder()
+                        .actionName("benchmark-" + packageDefinition.getName())
+                        .project(packageProject.benchmarkProject)
+                        .input(sourceOutput)
+                        .extraInputs(Arrays.asList(packageProject.verifiedPackage))
+                        .environmentVariables(packageEnvironmentVariables)
+                        .role(packageActionRole)
+                        .build()));
+            }
+
+            final Map<String, BuildEnvironmentVariable> publishEnvironmentVariables = new HashMap<>(packageEnvironmentVariables);
+            if (options.isSparseSourceArtifacts()) {
+                // Trimmed sources are plain S3 artifacts, their resolved source version is not the commit
+                publishEnvironmentVariables.put("SOURCE_COMMIT_ID", BuildEnvironmentVariable.builder()
+                        .type(BuildEnvironmentVariableType.PLAINTEXT)
+                        .value(sourceAction.getVariables().getCommitId())
+                        .build());
+            }
+
+            publishActions.add(new CodeBuildAction(CodeBuildActionProps.builder()
+                    .actionName(packageDefinition.getName())
+                    .project(packageProject.project)
+                    .input(packageSource)
+                    .extraInputs(Arrays.asList(packageProject.verifiedPackage))
+                    .environmentVariables(publishEnvironmentVariables)
+                    .role(packageActionRole)
+                    .runOrder(packageGraph.getRunOrder(packageDefinition.getName()))
+                    .build()));
+        }
+
+        if (options.isSparseSourceArtifacts() && !orderedPackageProjects.isEmpty()) {
+            final SourceSplit sourceSplit = new SourceSplit(this, "SourceSplit", orderedPackageProjects, pipelineArtifactBucket, buildImage.image, buildMetrics);
+            addStages(pipeline, "SplitSources", sourceSplit.actions(sourceOutput));
+        }
+
+        addStages(pipeline, "Test", testActions);
+
+        // A regression stops every package, publishing waits for the benchmarks of all of them
+        if (!benchmarkActions.isEmpty()) {
+            addStages(pipeline, "Benchmark", benchmarkActions);
+        }
+
+        if (!publishActions.isEmpty()) {
+            addStages(pipeline, "BuildAndPublishPackages", publishActions);
+        }
+
+        // After the last stage, the roles of the actions are created with their stage
+        DefaultPolicySuppressions.addToArtifactAccess(pipeline, DefaultPolicySuppressions.bucketObjects(pipelineArtifactBucket, "*"));
+    }
 
-        NagSuppressions.addResourceSuppressionsByPath(this,
-                "/JavaCdkCicdCodeartifactStack/PackagePipeline/Role/DefaultPolicy/Resource",
-                Arrays.asList(
-                new NagPackSuppression.Builder()
-                        .id("AwsSolutions-IAM5")
-                        .reason("Defined by a default policy")
-                        .appliesTo(Arrays.asList(
-                                "Action::s3:Abort*",
-                                "Action::s3:DeleteObject*",
-                                "Action::s3:GetBucket*",
-                                "Action::s3:GetObject*",
-                                "Action::s3:List*",
-                                "Action::kms:GenerateDataKey*",
-                                "Action::kms:ReEncrypt*",
-                                "Resource::<PipelineArtifactBucketD127CCF6.Arn>/*"
-                        ))
-                        .build()
-                ));
-
-        NagSuppressions.addResourceSuppressionsByPath(this,
-                "/JavaCdkCicdCodeartifactStack/PackagePipeline/Source/CodeCommit/CodePipelineActionRole/DefaultPolicy/Resource",
-                Arrays.asList(
-                        new NagPackSuppression.Builder()
-                                .id("AwsSolutions-IAM5")
-                                .reason("Defined by a default policy")
-                                .appliesTo(Arrays.asList(
-                                        "Action::s3:Abort*",
-                                        "Action::s3:DeleteObject*",
-                                        "Action::s3:GetBucket*",
-                                        "Action::s3:GetObject*",
-                                        "Action::s3:List*",
-                                        "Action::kms:GenerateDataKey*",
-                                        "Action::kms:ReEncrypt*",
-                                        "Resource::<PipelineArtifactBucketD127CCF6.Arn>/*"
-                                ))
-                                .build()
-                ));
-
-        NagSuppressions.addResourceSuppressionsByPath(this,
-                "/JavaCdkCicdCodeartifactStack/RunUnitTests/Role/DefaultPolicy/Resource",
-                Arrays.asList(
-                        new NagPackSuppression.Builder()
-                                .id("AwsSolutions-IAM5")
-                                .reason("Defined by a default policy")
-                                .appliesTo(Arrays.asList(
-                                        "Resource::arn:<AWS::Partition>:logs:<AWS::Region>:<AWS::AccountId>:log-group:/aws/codebuild/<RunUnitTests2AD5FFEA>:*",
-                                        "Resource::arn:<AWS::Partition>:codebuild:<AWS::Region>:<AWS::AccountId>:report-group/<RunUnitTests2AD5FFEA>-*",
-                                        "Action::s3:GetBucket*",
-                                        "Action::s3:GetObject*",
-                                        "Action::s3:List*",
-                                        "Action::kms:GenerateDataKey*",
-                                        "Action::kms:ReEncrypt*",
-                                        "Resource::<PipelineArtifactBucketD127CCF6.Arn>/*"
-                                ))
-                                .build()
-                ));
-
-        NagSuppressions.addResourceSuppressionsByPath(this,
-                "/JavaCdkCicdCodeartifactStack/RunUnitTestsPolicy/Resource",
-                Arrays.asList(
-                        new NagPackSuppression.Builder()
-                                .id("AwsSolutions-IAM5")
-                                .reason("Defined by a default policy")
-                                .appliesTo(Arrays.asList(
-                                        "Resource::*",
-                                        "Action::codeartifact:List*"
-                                ))
-                                .build()
-                ));
-
-        NagSuppressions.addResourceSuppressionsByPath(this,
-                "/JavaCdkCicdCodeartifactStack/SelfMutate/Role/DefaultPolicy/Resource",
-                Arrays.asList(
-                        new NagPackSuppression.Builder()
-                                .id("AwsSolutions-IAM5")
-                                .reason("Defined by a default policy")
-                                .appliesTo(Arrays.asList(
-                                        "Resource::arn:<AWS::Partition>:logs:<AWS::Region>:<AWS::AccountId>:log-group:/aws/codebuild/<SelfMutate95ADA46F>:*",
-                                        "Resource::arn:<AWS::Partition>:codebuild:<AWS::Region>:<AWS::AccountId>:report-group/<SelfMutate95ADA46F>-*",
-                                        "Action::s3:GetBucket*",
-                                        "Action::s3:GetObject*",
-                                        "Action::s3:List*",
-                                        "Action::kms:GenerateDataKey*",
-                                        "Action::kms:ReEncrypt*",
-                                        "Resource::<PipelineArtifactBucketD127CCF6.Arn>/*"
-                                ))
-                                .build()
-                ));
-
-        NagSuppressions.addResourceSuppressionsByPath(this,
-                "/JavaCdkCicdCodeartifactStack/SelfMutatePolicy/Resource",
-                Arrays.asList(
-                        new NagPackSuppression.Builder()
-                                .id("AwsSolutions-IAM5")
-                                .reason("Defined by a default policy")
-                                .appliesTo(Arrays.asList(
-                                        "Resource::*",
-                                        "Action::codeartifact:List*",
-                                        "Resource::arn:aws:iam::*:role/cdk-*"
-                                ))
-                                .build()
-                ));
-
-        NagSuppressions.addResourceSuppressionsByPath(this,
-                "/JavaCdkCicdCodeartifactStack/BuildSamplePackage/sample-package/Role/DefaultPolicy/Resource",
-                Arrays.asList(
-                        new NagPackSuppression.Builder()
-                                .id("AwsSolutions-IAM5")
-                                .reason("Defined by a default policy")
-                                .appliesTo(Arrays.asList(
-                                        "Resource::arn:<AWS::Partition>:logs:<AWS::Region>:<AWS::AccountId>:log-group:/aws/codebuild/<BuildSamplePackagesamplepackageB2962058>:*",
-                                        "Resource::arn:<AWS::Partition>:codebuild:<AWS::Region>:<AWS::AccountId>:report-group/<BuildSamplePackagesamplepackageB2962058>-*",
-                                        "Action::s3:GetBucket*",
-                                        "Action::s3:GetObject*",
-                                        "Action::s3:List*",
-                                        "Action::kms:GenerateDataKey*",
-                                        "Action::kms:ReEncrypt*",
-                                        "Resource::<PipelineArtifactBucketD127CCF6.Arn>/*"
-                                ))
-                                .build()
-                ));
-
-        NagSuppressions.addResourceSuppressionsByPath(this,
-                "/JavaCdkCicdCodeartifactStack/BuildSamplePackage/PublishPolicy/Resource",
-                Arrays.asList(
-                        new NagPackSuppression.Builder()
-                                .id("AwsSolutions-IAM5")
-                                .reason("Defined by a default policy")
-                                .appliesTo(Arrays.asList(
-                                        "Resource::*",
-                                        "Action::codeartifact:List*"
-                                ))
-                                .build()
-                ));
+    /**
+     * Adds the actions as one stage, or as {@code <name>}, {@code <name>2}, ... when they exceed the actions a stage
+     * takes. The actions must be sorted by run order, so every action follows those it depends on.
+     */
+    private static void addStages(final Pipeline pipeline, final String stageName, final List<IAction> actions) {
+        for (int start = 0; start < actions.size(); start += MAX_STAGE_ACTIONS) {
+            pipeline.addStage(StageOptions.builder()
+                    .stageName(start == 0 ? stageName : stageName + (start / MAX_STAGE_ACTIONS + 1))
+                    .actions(actions.subList(start, Math.min(start + MAX_STAGE_ACTIONS, actions.size())))
+                    .build()
+            );
+        }
     }
 }
@@ -0,0 +1,260 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg;
+
+import com.myorg.mavenCache.MavenCacheMode;
+import com.myorg.mavenExecution.MavenExecutionOptions;
+import com.myorg.pipelineExecution.PipelineExecutionMode;
+import software.amazon.awscdk.Duration;
+import software.amazon.awscdk.services.events.CronOptions;
+import software.amazon.awscdk.services.events.Schedule;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pipeline settings of {@link JavaCdkCicdCodeartifactStack} that are not covered by {@link software.amazon.awscdk.StackProps}.
+ */
+public class PipelineOptions {
+
+    private final Path sourceRoot;
+    private final MavenCacheMode mavenCacheMode;
+    private final boolean skipUnchangedPackages;
+    private final Duration codeartifactTokenDuration;
+    private final boolean customBuildImage;
+    private final int testShardCount;
+    private final Duration stageDurationAlarmThreshold;
+    private final Schedule dependencyPrewarmSchedule;
+    private final MavenExecutionOptions mavenExecutionOptions;
+    private final boolean sparseSourceArtifacts;
+    private final Duration pipelineArtifactRetention;
+    private final boolean remoteBuildCache;
+    private final boolean packageBenchmarks;
+    private final int benchmarkTolerancePercent;
+    private final PipelineExecutionMode executionMode;
+    private final List<String> triggerExcludedPaths;
+    private final boolean sharedPackageBuilds;
+
+    private PipelineOptions(final Builder builder) {
+        this.sourceRoot = builder.sourceRoot;
+        this.mavenCacheMode = builder.mavenCacheMode;
+        this.skipUnchangedPackages = builder.skipUnchangedPackages;
+        this.codeartifactTokenDuration = builder.codeartifactTokenDuration;
+        this.customBuildImage = builder.customBuildImage;
+        this.testShardCount = builder.testShardCount;
+        this.stageDurationAlarmThreshold = builder.stageDurationAlarmThreshold;
+        this.dependencyPrewarmSchedule = builder.dependencyPrewarmSchedule;
+        this.mavenExecutionOptions = builder.mavenExecutionOptions;
+        this.sparseSourceArtifacts = builder.sparseSourceArtifacts;
+        this.pipelineArtifactRetention = builder.pipelineArtifactRetention;
+        this.remoteBuildCache = builder.remoteBuildCache;
+        this.packageBenchmarks = builder.packageBenchmarks;
+        this.benchmarkTolerancePercent = builder.benchmarkTolerancePercent;
+        this.executionMode = builder.executionMode;
+        this.triggerExcludedPaths = builder.triggerExcludedPaths;
+        this.sharedPackageBuilds = builder.sharedPackageBuilds;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** Checkout of this repository the stack is synthesized from, used to read pom files. */
+    public Path getSourceRoot() {
+        return sourceRoot;
+    }
+
+    public MavenCacheMode getMavenCacheMode() {
+        return mavenCacheMode;
+    }
+
+    /** Whether packages untouched since their last published revision skip {@code mvn deploy}. */
+    public boolean isSkipUnchangedPackages() {
+        return skipUnchangedPackages;
+    }
+
+    /** Lifetime of the CodeArtifact token minted once per execution, should cover the longest execution. */
+    public Duration getCodeartifactTokenDuration() {
+        return codeartifactTokenDuration;
+    }
+
+    /** Whether projects use the image built from {@code build-image/}, or the stock CodeBuild image. */
+    public boolean isCustomBuildImage() {
+        return customBuildImage;
+    }
+
+    /** Number of parallel actions the unit tests are split into, 1 keeps a single {@code run-unit-tests} action. */
+    public int getTestShardCount() {
+        return testShardCount;
+    }
+
+    /** p95 build duration of a stage above which its alarm fires. */
+    public Duration getStageDurationAlarmThreshold() {
+        return stageDurationAlarmThreshold;
+    }
+
+    /** When the dependencies of all pom files are resolved against CodeArtifact outside the pipeline. */
+    public Schedule getDependencyPrewarmSchedule() {
+        return dependencyPrewarmSchedule;
+    }
+
+    /** How the test and package builds run Maven, build profiles of packages may replace them. */
+    public MavenExecutionOptions getMavenExecutionOptions() {
+        return mavenExecutionOptions;
+    }
+
+    /** Whether package actions receive trimmed per-package source artifacts instead of the full clone. */
+    public boolean isSparseSourceArtifacts() {
+        return sparseSourceArtifacts;
+    }
+
+    /** How long artifacts of pipeline executions are kept in the artifact bucket. */
+    public Duration getPipelineArtifactRetention() {
+        return pipelineArtifactRetention;
+    }
+
+    /** Whether unit tests and package builds are skipped when the build cache holds outputs of identical inputs. */
+    public boolean isRemoteBuildCache() {
+        return remoteBuildCache;
+    }
+
+    /** Whether packages with JMH benchmarks in {@code src/jmh/java} pass a {@code Benchmark} stage before publishing. */
+    public boolean isPackageBenchmarks() {
+        return packageBenchmarks;
+    }
+
+    /** How far, in percent, a benchmark score may fall behind its baseline before publishing fails. */
+    public int getBenchmarkTolerancePercent() {
+        return benchmarkTolerancePercent;
+    }
+
+    /** How executions of the pipeline wait for each other, any mode but {@code SUPERSEDED} makes it a V2 pipeline. */
+    public PipelineExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /** Shell patterns of files whose changes alone do not start the pipeline, such as {@code docs/*}. */
+    public List<String> getTriggerExcludedPaths() {
+        return triggerExcludedPaths;
+    }
+
+    /**
+     * Whether package projects share one parameterized buildspec and one role, and live in nested stacks,
+     * so the pipeline stack grows by little more than the actions when packages are added.
+     */
+    public boolean isSharedPackageBuilds() {
+        return sharedPackageBuilds;
+    }
+
+    public static final class Builder {
+        private Path sourceRoot = Paths.get("").toAbsolutePath();
+        private MavenCacheMode mavenCacheMode = MavenCacheMode.S3;
+        private boolean skipUnchangedPackages = true;
+        private Duration codeartifactTokenDuration = Duration.hours(2);
+        private boolean customBuildImage = true;
+        private int testShardCount = 1;
+        private Duration stageDurationAlarmThreshold = Duration.minutes(30);
+        private Schedule dependencyPrewarmSchedule = Schedule.cron(CronOptions.builder().minute("0").hour("2").build());
+        private MavenExecutionOptions mavenExecutionOptions = MavenExecutionOptions.builder().build();
+        private boolean sparseSourceArtifacts = false;
+        private Duration pipelineArtifactRetention = Duration.days(30);
+        private boolean remoteBuildCache = false;
+        private boolean packageBenchmarks = true;
+        private int benchmarkTolerancePercent = 10;
+        private PipelineExecutionMode executionMode = PipelineExecutionMode.SUPERSEDED;
+        private List<String> triggerExcludedPaths = Collections.emptyList();
+        private boolean sharedPackageBuilds = false;
+
+        public Builder sourceRoot(final Path sourceRoot) {
+            this.sourceRoot = sourceRoot;
+            return this;
+        }
+
+        public Builder mavenCacheMode(final MavenCacheMode mavenCacheMode) {
+            this.mavenCacheMode = mavenCacheMode;
+            return this;
+        }
+
+        public Builder skipUnchangedPackages(final boolean skipUnchangedPackages) {
+            this.skipUnchangedPackages = skipUnchangedPackages;
+            return this;
+        }
+
+        public Builder codeartifactTokenDuration(final Duration codeartifactTokenDuration) {
+            this.codeartifactTokenDuration = codeartifactTokenDuration;
+            return this;
+        }
+
+        public Builder customBuildImage(final boolean customBuildImage) {
+            this.customBuildImage = customBuildImage;
+            return this;
+        }
+
+        public Builder testShardCount(final int testShardCount) {
+            this.testShardCount = testShardCount;
+            return this;
+        }
+
+        public Builder stageDurationAlarmThreshold(final Duration stageDurationAlarmThreshold) {
+            this.stageDurationAlarmThreshold = stageDurationAlarmThreshold;
+            return this;
+        }
+
+        public Builder dependencyPrewarmSchedule(final Schedule dependencyPrewarmSchedule) {
+            this.dependencyPrewarmSchedule = dependencyPrewarmSchedule;
+            return this;
+        }
+
+        public Builder mavenExecutionOptions(final MavenExecutionOptions mavenExecutionOptions) {
+            this.mavenExecutionOptions = mavenExecutionOptions;
+            return this;
+        }
+
+        public Builder sparseSourceArtifacts(final boolean sparseSourceArtifacts) {
+            this.sparseSourceArtifacts = sparseSourceArtifacts;
+            return this;
+        }
+
+        public Builder pipelineArtifactRetention(final Duration pipelineArtifactRetention) {
+            this.pipelineArtifactRetention = pipelineArtifactRetention;
+            return this;
+        }
+
+        public Builder remoteBuildCache(final boolean remoteBuildCache) {
+            this.remoteBuildCache = remoteBuildCache;
+            return this;
+        }
+
+        public Builder packageBenchmarks(final boolean packageBenchmarks) {
+            this.packageBenchmarks = packageBenchmarks;
+            return this;
+        }
+
+        public Builder benchmarkTolerancePercent(final int benchmarkTolerancePercent) {
+            this.benchmarkTolerancePercent = benchmarkTolerancePercent;
+            return this;
+        }
+
+        public Builder executionMode(final PipelineExecutionMode executionMode) {
+            this.executionMode = executionMode;
+            return this;
+        }
+
+        public Builder triggerExcludedPaths(final List<String> triggerExcludedPaths) {
+            this.triggerExcludedPaths = triggerExcludedPaths;
+            return this;
+        }
+
+        public Builder sharedPackageBuilds(final boolean sharedPackageBuilds) {
+            this.sharedPackageBuilds = sharedPackageBuilds;
+            return this;
+        }
+
+        public PipelineOptions build() {
+            return new PipelineOptions(this);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.buildAndPublishPackage;
+
+public enum BuildArchitecture {
+    X86_64,
+    /** Graviton host, runs on the stock Amazon Linux 2 ARM image since the custom build image is x86_64 only. */
+    ARM64
+}
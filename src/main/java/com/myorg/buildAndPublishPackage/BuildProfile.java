@@ -0,0 +1,172 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.buildAndPublishPackage;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import com.myorg.mavenCache.MavenCacheMode;
+import com.myorg.mavenExecution.MavenExecutionOptions;
+import software.amazon.awscdk.services.codebuild.ComputeType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Build hardware and Maven settings of one package, read from the optional
+ * {@code packages/<name>/build-profile.json}:
+ *
+ * <pre>
+ * {
+ *   "computeType": "LARGE",
+ *   "architecture": "ARM64",
+ *   "timeoutMinutes": 30,
+ *   "cacheMode": "LOCAL",
+ *   "mavenOpts": "-Xmx3g",
+ *   "maven": { "threads": "2C", "forkCount": "1C", "reuseForks": true, "offline": true },
+ *   "startupImages": { "mainClass": "hello.HelloWorld", "trainingArguments": [], "runs": 5 }
+ * }
+ * </pre>
+ *
+ * Every key is optional. Unknown keys and invalid combinations fail the synth.
+ */
+@JsonDeserialize(builder = BuildProfile.Builder.class)
+public class BuildProfile {
+
+    public static final String FILE_NAME = "build-profile.json";
+
+    private static final List<ComputeType> ARM_COMPUTE_TYPES = Arrays.asList(ComputeType.SMALL, ComputeType.LARGE);
+
+    private final ComputeType computeType;
+    private final BuildArchitecture architecture;
+    private final int timeoutMinutes;
+    private final MavenCacheMode cacheMode;
+    private final String mavenOpts;
+    private final MavenExecutionOptions maven;
+    private final StartupImages startupImages;
+
+    private BuildProfile(final Builder builder) {
+        this.computeType = builder.computeType;
+        this.architecture = builder.architecture;
+        this.timeoutMinutes = builder.timeoutMinutes;
+        this.cacheMode = builder.cacheMode;
+        this.mavenOpts = builder.mavenOpts;
+        this.maven = builder.maven;
+        this.startupImages = builder.startupImages;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** Reads the profile of a package directory, or returns the defaults when it has none. */
+    public static BuildProfile load(final Path packageDirectory) {
+        final Path file = packageDirectory.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file)) {
+            return builder().build();
+        }
+        try {
+            return new ObjectMapper()
+                    .enable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                    .readValue(file.toFile(), BuildProfile.class);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid build profile " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    public ComputeType getComputeType() {
+        return computeType;
+    }
+
+    public BuildArchitecture getArchitecture() {
+        return architecture;
+    }
+
+    public int getTimeoutMinutes() {
+        return timeoutMinutes;
+    }
+
+    /** Cache mode of the package, {@code null} to use the pipeline wide mode. */
+    public MavenCacheMode getCacheMode() {
+        return cacheMode;
+    }
+
+    /** Value of {@code MAVEN_OPTS} for the build, {@code null} to keep the image default. */
+    public String getMavenOpts() {
+        return mavenOpts;
+    }
+
+    /** Maven execution options of the package, {@code null} to use the pipeline wide options. */
+    public MavenExecutionOptions getMaven() {
+        return maven;
+    }
+
+    /** Startup-optimized variants published next to the jar, {@code null} to publish the jar alone. */
+    public StartupImages getStartupImages() {
+        return startupImages;
+    }
+
+    @JsonPOJOBuilder(withPrefix = "")
+    public static final class Builder {
+        private ComputeType computeType = ComputeType.MEDIUM;
+        private BuildArchitecture architecture = BuildArchitecture.X86_64;
+        private int timeoutMinutes = 60;
+        private MavenCacheMode cacheMode;
+        private String mavenOpts;
+        private MavenExecutionOptions maven;
+        private StartupImages startupImages;
+
+        public Builder computeType(final ComputeType computeType) {
+            this.computeType = computeType;
+            return this;
+        }
+
+        public Builder architecture(final BuildArchitecture architecture) {
+            this.architecture = architecture;
+            return this;
+        }
+
+        public Builder timeoutMinutes(final int timeoutMinutes) {
+            this.timeoutMinutes = timeoutMinutes;
+            return this;
+        }
+
+        public Builder cacheMode(final MavenCacheMode cacheMode) {
+            this.cacheMode = cacheMode;
+            return this;
+        }
+
+        public Builder mavenOpts(final String mavenOpts) {
+            this.mavenOpts = mavenOpts;
+            return this;
+        }
+
+        public Builder maven(final MavenExecutionOptions maven) {
+            this.maven = maven;
+            return this;
+        }
+
+        public Builder startupImages(final StartupImages startupImages) {
+            this.startupImages = startupImages;
+            return this;
+        }
+
+        public BuildProfile build() {
+            if (computeType == null || architecture == null) {
+                throw new IllegalArgumentException("computeType and architecture must not be null");
+            }
+            if (timeoutMinutes < 5 || timeoutMinutes > 480) {
+                throw new IllegalArgumentException("timeoutMinutes must be between 5 and 480, got " + timeoutMinutes);
+            }
+            if (architecture == BuildArchitecture.ARM64 && !ARM_COMPUTE_TYPES.contains(computeType)) {
+                throw new IllegalArgumentException("ARM64 builds support the compute types " + ARM_COMPUTE_TYPES + ", got " + computeType);
+            }
+            return new BuildProfile(this);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.buildAndPublishPackage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A Maven package found under {@code packages/<name>/pom.xml}.
+ */
+public class PackageDefinition {
+
+    private final String name;
+    private final Path directory;
+    private final String groupId;
+    private final String artifactId;
+    private final String version;
+    private final List<String> dependencyCoordinates;
+
+    public PackageDefinition(final String name, final Path directory, final String groupId, final String artifactId, final String version, final List<String> dependencyCoordinates) {
+        this.name = name;
+        this.directory = directory;
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.version = version;
+        this.dependencyCoordinates = Collections.unmodifiableList(dependencyCoordinates);
+    }
+
+    /** Directory name below {@code packages/}, also used as action and project name. */
+    public String getName() {
+        return name;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public String getArtifactId() {
+        return artifactId;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /** Whether the package has JMH benchmarks in {@code src/jmh/java}, which gate its publishing. */
+    public boolean hasBenchmarks() {
+        return Files.isDirectory(directory.resolve("src/jmh/java"));
+    }
+
+    /** {@code groupId:artifactId} */
+    public String getCoordinates() {
+        return groupId + ":" + artifactId;
+    }
+
+    /** Directory of the installed version in a local Maven repository, {@code com/myorg/artifact/1.0.0}. */
+    public String getRepositoryPath() {
+        return groupId.replace('.', '/') + "/" + artifactId + "/" + version;
+    }
+
+    /** {@code groupId:artifactId} of every declared dependency, including external ones. */
+    public List<String> getDependencyCoordinates() {
+        return dependencyCoordinates;
+    }
+
+    /** PascalCase form of the name for construct ids, {@code sample-package} becomes {@code SamplePackage}. */
+    public String getConstructName() {
+        final StringBuilder result = new StringBuilder();
+        for (String part : name.split("[^A-Za-z0-9]+")) {
+            if (!part.isEmpty()) {
+                result.append(Character.toUpperCase(part.charAt(0))).append(part.substring(1));
+            }
+        }
+        return result.toString();
+    }
+}
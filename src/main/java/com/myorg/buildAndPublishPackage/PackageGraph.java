@@ -0,0 +1,188 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.buildAndPublishPackage;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Packages below {@code packages/} and the dependencies between them.
+ *
+ * Every package is assigned a CodePipeline run order: packages without in-repo dependencies
+ * run first, every other package runs one wave after the last of its dependencies.
+ */
+public class PackageGraph {
+
+    private static final String ACTION_NAME_PATTERN = "[A-Za-z0-9.@_-]{1,100}";
+
+    private final Map<String, PackageDefinition> packages;
+    private final Map<String, List<String>> dependencies = new HashMap<>();
+    private final Map<String, Integer> runOrders = new HashMap<>();
+    private final Map<String, Set<String>> transitiveDependencies = new HashMap<>();
+
+    public PackageGraph(final List<PackageDefinition> packages) {
+        this.packages = new LinkedHashMap<>();
+        final Map<String, String> namesByCoordinates = new HashMap<>();
+        final Map<String, String> namesByConstructName = new HashMap<>();
+        for (PackageDefinition definition : packages) {
+            if (!definition.getName().matches(ACTION_NAME_PATTERN)) {
+                throw new IllegalArgumentException("Package directory name '" + definition.getName() + "' is not a valid CodePipeline action name");
+            }
+            // Construct ids and artifact names derive from the construct name
+            final String clash = namesByConstructName.putIfAbsent(definition.getConstructName(), definition.getName());
+            if (clash != null) {
+                throw new IllegalArgumentException("Package directories '" + clash + "' and '" + definition.getName()
+                        + "' both map to the construct name " + definition.getConstructName() + ", rename one of them");
+            }
+            this.packages.put(definition.getName(), definition);
+            namesByCoordinates.put(definition.getCoordinates(), definition.getName());
+        }
+        for (PackageDefinition definition : packages) {
+            dependencies.put(definition.getName(), definition.getDependencyCoordinates().stream()
+                    .filter(namesByCoordinates::containsKey)
+                    .map(namesByCoordinates::get)
+                    .distinct()
+                    .collect(Collectors.toList()));
+        }
+        for (String name : this.packages.keySet()) {
+            resolveRunOrder(name, new LinkedHashSet<>());
+        }
+    }
+
+    public static PackageGraph discover(final Path sourceRoot) {
+        final Path packagesDirectory = sourceRoot.resolve("packages");
+        if (!Files.isDirectory(packagesDirectory)) {
+            return new PackageGraph(Collections.emptyList());
+        }
+        try (Stream<Path> children = Files.list(packagesDirectory)) {
+            final List<PackageDefinition> definitions = new ArrayList<>();
+            for (Path directory : children.sorted().collect(Collectors.toList())) {
+                if (Files.isRegularFile(directory.resolve("pom.xml"))) {
+                    definitions.add(readPackage(directory));
+                }
+            }
+            return new PackageGraph(definitions);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list " + packagesDirectory, e);
+        }
+    }
+
+    public List<PackageDefinition> getPackages() {
+        return new ArrayList<>(packages.values());
+    }
+
+    public PackageDefinition getPackage(final String name) {
+        return packages.get(name);
+    }
+
+    /** Names of the in-repo packages the given package depends on directly. */
+    public List<String> getDependencies(final String name) {
+        return dependencies.get(name);
+    }
+
+    /** Names of every in-repo package the given package depends on, directly or not. */
+    public Set<String> getTransitiveDependencies(final String name) {
+        // Memoized, diamonds would otherwise be walked once per path
+        final Set<String> cached = transitiveDependencies.get(name);
+        if (cached != null) {
+            return cached;
+        }
+        final Set<String> result = new LinkedHashSet<>();
+        for (String dependency : dependencies.get(name)) {
+            if (result.add(dependency)) {
+                result.addAll(getTransitiveDependencies(dependency));
+            }
+        }
+        final Set<String> unmodifiable = Collections.unmodifiableSet(result);
+        transitiveDependencies.put(name, unmodifiable);
+        return unmodifiable;
+    }
+
+    public int getRunOrder(final String name) {
+        return runOrders.get(name);
+    }
+
+    private int resolveRunOrder(final String name, final LinkedHashSet<String> path) {
+        if (runOrders.containsKey(name)) {
+            return runOrders.get(name);
+        }
+        if (!path.add(name)) {
+            throw new IllegalStateException("Cyclic dependency between packages: " + String.join(" -> ", path) + " -> " + name);
+        }
+        int runOrder = 1;
+        for (String dependency : dependencies.get(name)) {
+            runOrder = Math.max(runOrder, resolveRunOrder(dependency, path) + 1);
+        }
+        path.remove(name);
+        runOrders.put(name, runOrder);
+        return runOrder;
+    }
+
+    private static PackageDefinition readPackage(final Path directory) {
+        final Path pom = directory.resolve("pom.xml");
+        try {
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            final Document document = factory.newDocumentBuilder().parse(pom.toFile());
+            final Element project = document.getDocumentElement();
+            final Element parent = child(project, "parent");
+
+            String groupId = text(project, "groupId");
+            String version = text(project, "version");
+            if (parent != null) {
+                groupId = groupId != null ? groupId : text(parent, "groupId");
+                version = version != null ? version : text(parent, "version");
+            }
+
+            final List<String> dependencyCoordinates = new ArrayList<>();
+            final Element dependencies = child(project, "dependencies");
+            if (dependencies != null) {
+                for (Node node = dependencies.getFirstChild(); node != null; node = node.getNextSibling()) {
+                    if (node instanceof Element && "dependency".equals(node.getNodeName())) {
+                        dependencyCoordinates.add(text((Element) node, "groupId") + ":" + text((Element) node, "artifactId"));
+                    }
+                }
+            }
+
+            return new PackageDefinition(directory.getFileName().toString(), directory, groupId, text(project, "artifactId"), version, dependencyCoordinates);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + pom, e);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IllegalArgumentException("Could not parse " + pom, e);
+        }
+    }
+
+    private static Element child(final Element element, final String name) {
+        for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element && name.equals(node.getNodeName())) {
+                return (Element) node;
+            }
+        }
+        return null;
+    }
+
+    private static String text(final Element element, final String name) {
+        final Element child = child(element, name);
+        return child == null ? null : child.getTextContent().trim();
+    }
+}
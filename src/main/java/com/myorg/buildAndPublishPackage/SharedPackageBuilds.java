@@ -0,0 +1,422 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.buildAndPublishPackage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.myorg.buildCache.BuildCache;
+import com.myorg.buildImage.PipelineBuildImage;
+import com.myorg.buildMetrics.BuildMetrics;
+import com.myorg.codeArtifactCredentials.CodeArtifactCredentials;
+import com.myorg.mavenCache.MavenCache;
+import com.myorg.nagSuppressions.DefaultPolicySuppressions;
+import software.amazon.awscdk.ArnComponents;
+import software.amazon.awscdk.Aws;
+import software.amazon.awscdk.NestedStack;
+import software.amazon.awscdk.Stack;
+import software.amazon.awscdk.services.codebuild.BuildEnvironmentVariable;
+import software.amazon.awscdk.services.codebuild.BuildEnvironmentVariableType;
+import software.amazon.awscdk.services.codebuild.BuildSpec;
+import software.amazon.awscdk.services.codecommit.IRepository;
+import software.amazon.awscdk.services.iam.AccountPrincipal;
+import software.amazon.awscdk.services.iam.Effect;
+import software.amazon.awscdk.services.iam.IRole;
+import software.amazon.awscdk.services.iam.PolicyStatement;
+import software.amazon.awscdk.services.iam.Role;
+import software.amazon.awscdk.services.iam.ServicePrincipal;
+import software.amazon.awscdk.services.s3.IBucket;
+import software.amazon.awscdk.services.s3.assets.Asset;
+import software.constructs.Construct;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Buildspecs, roles and nested stacks shared by the projects of every package, so the pipeline stack grows by
+ * little more than the actions when packages are added.
+ *
+ * The verify, publish and benchmark buildspecs are rendered once, with the package read from the
+ * {@code PACKAGE_*} action variables, and uploaded as assets the projects reference. The verify, benchmark and
+ * publish projects of every package each run with one role, granted up front for all packages. Only the publish role
+ * reads the publish token and records published revisions, only the benchmark role writes baselines and verify may
+ * only write pipeline artifacts. The package actions run with a fourth role that may only start projects named with
+ * {@link #PROJECT_NAME_PREFIX}. The projects themselves are spread over nested stacks of {@link #PACKAGES_PER_STACK}
+ * packages each.
+ */
+public class SharedPackageBuilds extends Construct {
+
+    /** Keeps a nested stack well below the 200 outputs its projects and parameters are referenced through. */
+    public static final int PACKAGES_PER_STACK = 50;
+
+    /** Start of the names of all shared package projects, the only projects the action role may start. */
+    public static final String PROJECT_NAME_PREFIX = "java-sample-package-";
+
+    private static final String MAVEN_REPOSITORY = "/root/.m2/repository";
+
+    private static final String BENCHMARK_BASELINES = "benchmark-baselines";
+
+    private final Role projectRole;
+    private final Role benchmarkRole;
+    private final Role publishRole;
+    private final Role actionRole;
+    private final IBucket artifactBucket;
+    private final BuildMetrics buildMetrics;
+    private final Map<Integer, NestedStack> stacks = new HashMap<>();
+    private final Set<String> projectNames = new HashSet<>();
+
+    private final BuildSpec verifyBuildSpec;
+    private final BuildSpec publishBuildSpec;
+    private final BuildSpec benchmarkBuildSpec;
+
+    public SharedPackageBuilds(final Construct scope, final String id, final boolean skipUnchanged, final boolean sparseSource, final int benchmarkTolerancePercent,
+                               final String pipelineName, final IRepository repository, final IBucket artifactBucket, final MavenCache mavenCache, final BuildCache buildCache, final BuildMetrics buildMetrics,
+                               final CodeArtifactCredentials codeartifactCredentials, final PipelineBuildImage buildImage) {
+        super(scope, id);
+
+        this.artifactBucket = artifactBucket;
+        this.buildMetrics = buildMetrics;
+
+        projectRole = Role.Builder.create(this, "ProjectRole")
+                .assumedBy(new ServicePrincipal("codebuild.amazonaws.com"))
+                .build();
+
+        benchmarkRole = Role.Builder.create(this, "BenchmarkRole")
+                .assumedBy(new ServicePrincipal("codebuild.amazonaws.com"))
+                .build();
+
+        publishRole = Role.Builder.create(this, "PublishRole")
+                .assumedBy(new ServicePrincipal("codebuild.amazonaws.com"))
+                .build();
+
+        // Assumed by the pipeline for every package action
+        actionRole = Role.Builder.create(this, "ActionRole")
+                .assumedBy(new AccountPrincipal(Stack.of(this).getAccount()))
+                .build();
+
+        actionRole.addToPolicy(PolicyStatement.Builder.create()
+                .effect(Effect.ALLOW)
+                .resources(Arrays.asList(Stack.of(this).formatArn(ArnComponents.builder()
+                        .service("codebuild")
+                        .resource("project")
+                        .resourceName(PROJECT_NAME_PREFIX + "*")
+                        .build())))
+                .actions(Arrays.asList("codebuild:BatchGetBuilds", "codebuild:StartBuild", "codebuild:StopBuild"))
+                .build());
+
+        codeartifactCredentials.grantRead(projectRole);
+        codeartifactCredentials.grantRead(benchmarkRole);
+        codeartifactCredentials.grantPublishRead(publishRole);
+        for (Role role : Arrays.asList(projectRole, benchmarkRole, publishRole)) {
+            // The full clone source artifact is checked out by the project, the projects cannot add the grant themselves
+            repository.grantPull(role);
+            artifactBucket.grantRead(role);
+            if (mavenCache.bucket != null) {
+                mavenCache.bucket.grantReadWrite(role);
+            }
+            buildMetrics.logGroup.grantWrite(role);
+            buildImage.grantPull(role);
+        }
+
+        // CodePipeline keeps artifacts below the first 20 characters of the pipeline name
+        final String pipelineArtifacts = pipelineName.substring(0, Math.min(20, pipelineName.length())) + "/*";
+        artifactBucket.grantPut(projectRole, pipelineArtifacts);
+        if (buildCache != null) {
+            buildCache.grantReadWrite(projectRole);
+        }
+        artifactBucket.grantReadWrite(benchmarkRole, BENCHMARK_BASELINES + "/*");
+
+        final String publishedRevisions = Stack.of(this).formatArn(ArnComponents.builder()
+                .service("ssm")
+                .resource("parameter")
+                .resourceName(buildAndPublishPackage.PUBLISHED_REVISION_PREFIX.substring(1) + "*")
+                .build());
+        projectRole.addToPolicy(PolicyStatement.Builder.create()
+                .effect(Effect.ALLOW)
+                .resources(Arrays.asList(publishedRevisions))
+                .actions(Arrays.asList("ssm:GetParameter"))
+                .build());
+        publishRole.addToPolicy(PolicyStatement.Builder.create()
+                .effect(Effect.ALLOW)
+                .resources(Arrays.asList(publishedRevisions))
+                .actions(Arrays.asList("ssm:GetParameter", "ssm:PutParameter"))
+                .build());
+
+        // Published assets and their hashes, read by the publish script
+        publishRole.addToPolicy(PolicyStatement.Builder.create()
+                .effect(Effect.ALLOW)
+                .resources(Arrays.asList(Stack.of(this).formatArn(ArnComponents.builder()
+                        .service("codeartifact")
+                        .resource("package")
+                        .resourceName("aws-java-sample-domain/mvn/maven/*")
+                        .build())))
+                .actions(Arrays.asList("codeartifact:ListPackageVersionAssets"))
+                .build());
+
+        verifyBuildSpec = asset("Verify", buildMetrics.addTo(cached(verifySpec(skipUnchanged, sparseSource, buildCache)), "Test", "$PACKAGE_NAME"), projectRole);
+        publishBuildSpec = asset("Publish", buildMetrics.addTo(cached(publishSpec(sparseSource)), "BuildAndPublishPackages", "$PACKAGE_NAME"), publishRole);
+        benchmarkBuildSpec = asset("Benchmark", buildMetrics.addTo(cached(benchmarkSpec(benchmarkTolerancePercent)), "Benchmark", "$PACKAGE_NAME"), benchmarkRole);
+
+        final List<String> bucketObjects = DefaultPolicySuppressions.bucketObjects(artifactBucket, "*");
+        bucketObjects.addAll(DefaultPolicySuppressions.bucketObjects(artifactBucket, pipelineArtifacts));
+        bucketObjects.addAll(DefaultPolicySuppressions.bucketObjects(artifactBucket, BENCHMARK_BASELINES + "/*"));
+        bucketObjects.addAll(DefaultPolicySuppressions.bucketObjects(mavenCache.bucket, "*"));
+        if (buildCache != null) {
+            bucketObjects.addAll(DefaultPolicySuppressions.bucketObjects(buildCache.bucket, "outputs/*"));
+        }
+        // Resource::* is the image pull, the parameters and packages are those of all packages
+        bucketObjects.addAll(Arrays.asList(
+                "Resource::*",
+                "Resource::arn:<AWS::Partition>:ssm:<AWS::Region>:<AWS::AccountId>:parameter" + buildAndPublishPackage.PUBLISHED_REVISION_PREFIX + "*",
+                "Resource::arn:<AWS::Partition>:codeartifact:<AWS::Region>:<AWS::AccountId>:package/aws-java-sample-domain/mvn/maven/*"
+        ));
+        DefaultPolicySuppressions.addToArtifactAccess(projectRole, bucketObjects);
+        DefaultPolicySuppressions.addToArtifactAccess(benchmarkRole, bucketObjects);
+        DefaultPolicySuppressions.addToArtifactAccess(publishRole, bucketObjects);
+        DefaultPolicySuppressions.addToPolicy(actionRole, Arrays.asList(
+                "Resource::arn:<AWS::Partition>:codebuild:<AWS::Region>:<AWS::AccountId>:project/" + PROJECT_NAME_PREFIX + "*"
+        ));
+    }
+
+    /** Role of every verify project, it already holds all grants the projects would add. */
+    public IRole projectRole() {
+        return projectRole.withoutPolicyUpdates();
+    }
+
+    /** Role of every benchmark project, the only one writing baselines. */
+    public IRole benchmarkRole() {
+        return benchmarkRole.withoutPolicyUpdates();
+    }
+
+    /** Role of every publish project, the only one reading the publish token and writing published revisions. */
+    public IRole publishRole() {
+        return publishRole.withoutPolicyUpdates();
+    }
+
+    /** Role of every package action, it may only start projects named by {@link #projectName(String, String)}. */
+    public IRole actionRole() {
+        return actionRole.withoutPolicyUpdates();
+    }
+
+    /**
+     * Name of a shared project of a package, {@link #PROJECT_NAME_PREFIX} followed by the package and the purpose.
+     * Characters project names do not allow become dashes, names that collide that way are rejected.
+     */
+    public String projectName(final String packageName, final String purpose) {
+        final String projectName = PROJECT_NAME_PREFIX + packageName.replaceAll("[^A-Za-z0-9_-]", "-") + "-" + purpose;
+        if (!projectNames.add(projectName)) {
+            throw new IllegalArgumentException("Package " + packageName + " shares the project name " + projectName + " with another package");
+        }
+        return projectName;
+    }
+
+    /** Nested stack holding the projects of the package at the given position in run order. */
+    public NestedStack stack(final int packageIndex) {
+        return stacks.computeIfAbsent(packageIndex / PACKAGES_PER_STACK,
+                number -> new NestedStack(this, "PackageProjects" + (number + 1)));
+    }
+
+    public BuildSpec verifyBuildSpec() {
+        buildMetrics.trackStage("Test");
+        return verifyBuildSpec;
+    }
+
+    public BuildSpec publishBuildSpec() {
+        buildMetrics.trackStage("BuildAndPublishPackages");
+        return publishBuildSpec;
+    }
+
+    public BuildSpec benchmarkBuildSpec() {
+        buildMetrics.trackStage("Benchmark");
+        return benchmarkBuildSpec;
+    }
+
+    /** Project variables of the benchmark project, the baselines live below this prefix as {@code <name>.json}. */
+    public Map<String, BuildEnvironmentVariable> benchmarkEnvironmentVariables() {
+        return Map.of(
+                "BENCHMARK_BASELINES", BuildEnvironmentVariable.builder()
+                        .type(BuildEnvironmentVariableType.PLAINTEXT)
+                        .value("s3://" + artifactBucket.getBucketName() + "/" + BENCHMARK_BASELINES)
+                        .build()
+        );
+    }
+
+    /** Action variables describing the package, read by the shared buildspecs. */
+    public static Map<String, BuildEnvironmentVariable> packageEnvironmentVariables(final PackageDefinition packageDefinition, final List<String> watchedPaths) {
+        final Map<String, BuildEnvironmentVariable> environmentVariables = new HashMap<>();
+        environmentVariables.put("PACKAGE_NAME", plaintext(packageDefinition.getName()));
+        environmentVariables.put("PACKAGE_GROUP_ID", plaintext(packageDefinition.getGroupId()));
+        environmentVariables.put("PACKAGE_ARTIFACT_ID", plaintext(packageDefinition.getArtifactId()));
+        environmentVariables.put("PACKAGE_VERSION", plaintext(packageDefinition.getVersion()));
+        environmentVariables.put("PACKAGE_REPOSITORY_PATH", plaintext(packageDefinition.getRepositoryPath()));
+        environmentVariables.put("PACKAGE_WATCHED_PATHS", plaintext(String.join(" ", watchedPaths)));
+        return environmentVariables;
+    }
+
+    private static BuildEnvironmentVariable plaintext(final String value) {
+        return BuildEnvironmentVariable.builder()
+                .type(BuildEnvironmentVariableType.PLAINTEXT)
+                .value(value)
+                .build();
+    }
+
+    private static Map<String, Object> verifySpec(final boolean skipUnchanged, final boolean sparseSource, final BuildCache buildCache) {
+        // Packages with startup images set STARTUP_IMAGES on their project
+        final String buildCommand = "$MAVEN_COMMAND && { [ -z \"$STARTUP_IMAGES\" ] || bash $CODEBUILD_SRC_DIR/scripts/startup-images.sh $STARTUP_IMAGES; }";
+        final String installCommand = buildCache != null
+                ? buildCache.cached(".", Arrays.asList("$PACKAGE_DEPENDENCY_PATHS"), MAVEN_REPOSITORY + "/$PACKAGE_REPOSITORY_PATH", buildCommand)
+                : buildCommand;
+
+        return Map.of(
+                "version", "0.2",
+                "phases", Map.of(
+                        "pre_build", Map.of(
+                                "commands", Arrays.asList(
+                                        sparseSource
+                                                // Decided by the split action, the trimmed source has no history
+                                                ? "export PACKAGE_CHANGED=`cat package-changed`"
+                                                : skipUnchanged
+                                                        ? "if bash scripts/package-changed.sh " + buildAndPublishPackage.PUBLISHED_REVISION_PREFIX + "$PACKAGE_NAME $PACKAGE_WATCHED_PATHS; then export PACKAGE_CHANGED=true; else export PACKAGE_CHANGED=false; fi"
+                                                        : "export PACKAGE_CHANGED=true",
+                                        "mkdir -p verified && echo $PACKAGE_CHANGED > verified/changed",
+                                        // Installs of the package and its in-repo dependencies only come from the inputs or this build
+                                        "rm -rf $PACKAGE_IN_REPO_PATHS",
+                                        // Verified dependencies arrive as secondary inputs and take precedence over published versions
+                                        "for input in `env | grep '^CODEBUILD_SRC_DIR_' | cut -d '=' -f 2`; do if [ -d $input/repository ]; then cp -r $input/repository/. " + MAVEN_REPOSITORY + "/; fi; done",
+                                        // Installed directories of the in-repo dependencies, the verified builds carry their own dependencies too
+                                        "export PACKAGE_DEPENDENCY_PATHS=`for input in $(env | grep '^CODEBUILD_SRC_DIR_' | cut -d '=' -f 2); do if [ -d $input/repository ]; then (cd $input/repository && find . -name '*.pom' | xargs -r -n 1 dirname); fi; done | sed 's|^\\.|" + MAVEN_REPOSITORY + "|' | sort -u | tr '\\n' ' '`",
+                                        "cd ./packages/$PACKAGE_NAME"
+                                )
+                        ),
+                        "build", Map.of(
+                                "commands", Arrays.asList(
+                                        "if [ \"$PACKAGE_CHANGED\" = \"true\" ]; then " + installCommand + "; else echo \"Skipping unchanged package $PACKAGE_NAME\"; fi"
+                                )
+                        ),
+                        "post_build", Map.of(
+                                "commands", Arrays.asList(
+                                        "mkdir -p $CODEBUILD_SRC_DIR/verified/repository",
+                                        "if [ \"$CODEBUILD_BUILD_SUCCEEDING\" = \"1\" ] && [ \"$PACKAGE_CHANGED\" = \"true\" ]; then "
+                                                + "for path in " + MAVEN_REPOSITORY + "/$PACKAGE_REPOSITORY_PATH $PACKAGE_DEPENDENCY_PATHS; do if [ -d $path ]; then "
+                                                + "mkdir -p $CODEBUILD_SRC_DIR/verified/repository/${path#" + MAVEN_REPOSITORY + "/} && "
+                                                + "cp -r $path/. $CODEBUILD_SRC_DIR/verified/repository/${path#" + MAVEN_REPOSITORY + "/}/; fi; done; fi",
+                                        // Kept out of the Maven cache
+                                        "rm -rf $PACKAGE_IN_REPO_PATHS"
+                                )
+                        )
+                ),
+                "artifacts", Map.of(
+                        "files", Arrays.asList("**/*"),
+                        "base-directory", "verified"
+                )
+        );
+    }
+
+    private static Map<String, Object> publishSpec(final boolean sparseSource) {
+        return Map.of(
+                "version", "0.2",
+                "phases", Map.of(
+                        "pre_build", Map.of(
+                                "commands", Arrays.asList(
+                                        // The verified build is the only secondary input
+                                        "export VERIFIED_INPUT=`env | grep '^CODEBUILD_SRC_DIR_' | head -n 1 | cut -d '=' -f 2`",
+                                        "export PACKAGE_CHANGED=`cat $VERIFIED_INPUT/changed`",
+                                        "export VERIFIED_DIRECTORY=$VERIFIED_INPUT/repository/$PACKAGE_REPOSITORY_PATH",
+                                        // Packages with pom packaging have no jar
+                                        "export ARTIFACT_BASE=$VERIFIED_DIRECTORY/$PACKAGE_ARTIFACT_ID-$PACKAGE_VERSION",
+                                        "if [ -f $ARTIFACT_BASE.jar ]; then export ARTIFACT_FILE=$ARTIFACT_BASE.jar; else export ARTIFACT_FILE=$ARTIFACT_BASE.pom; fi",
+                                        "cd ./packages/$PACKAGE_NAME"
+                                )
+                        ),
+                        "build", Map.of(
+                                "commands", Arrays.asList(
+                                        "if [ \"$PACKAGE_CHANGED\" = \"true\" ]; then case $PACKAGE_VERSION in "
+                                                + "*-SNAPSHOT) $MAVEN_DEPLOY_COMMAND -DrepositoryId=" + buildAndPublishPackage.REPOSITORY_ID + " -Durl=$CODEARTIFACT_REPOSITORY_URL -DpomFile=$ARTIFACT_BASE.pom -Dfile=$ARTIFACT_FILE;; "
+                                                + "*) bash $CODEBUILD_SRC_DIR/scripts/publish-package.sh $PACKAGE_GROUP_ID $PACKAGE_ARTIFACT_ID $PACKAGE_VERSION $VERIFIED_DIRECTORY;; "
+                                                + "esac; else echo \"Skipping unchanged package $PACKAGE_NAME\"; fi"
+                                )
+                        ),
+                        "post_build", Map.of(
+                                "commands", Arrays.asList(
+                                        "if [ \"$CODEBUILD_BUILD_SUCCEEDING\" = \"1\" ] && [ \"$PACKAGE_CHANGED\" = \"true\" ]; then aws ssm put-parameter --name " + buildAndPublishPackage.PUBLISHED_REVISION_PREFIX + "$PACKAGE_NAME --value " + (sparseSource ? "$SOURCE_COMMIT_ID" : "$CODEBUILD_RESOLVED_SOURCE_VERSION") + " --overwrite; fi"
+                                )
+                        )
+                )
+        );
+    }
+
+    private static Map<String, Object> benchmarkSpec(final int benchmarkTolerancePercent) {
+        return Map.of(
+                "version", "0.2",
+                "phases", Map.of(
+                        "pre_build", Map.of(
+                                "commands", Arrays.asList(
+                                        "export VERIFIED_INPUT=`env | grep '^CODEBUILD_SRC_DIR_' | head -n 1 | cut -d '=' -f 2`",
+                                        "export PACKAGE_CHANGED=`cat $VERIFIED_INPUT/changed`",
+                                        "rm -rf $PACKAGE_IN_REPO_PATHS",
+                                        "if [ -d $VERIFIED_INPUT/repository ]; then cp -r $VERIFIED_INPUT/repository/. " + MAVEN_REPOSITORY + "/; fi"
+                                )
+                        ),
+                        "build", Map.of(
+                                "commands", Arrays.asList(
+                                        "if [ \"$PACKAGE_CHANGED\" = \"true\" ]; then bash scripts/package-benchmarks.sh packages/$PACKAGE_NAME "
+                                                + "$PACKAGE_GROUP_ID $PACKAGE_ARTIFACT_ID $PACKAGE_VERSION $BENCHMARK_BASELINES/$PACKAGE_NAME.json " + benchmarkTolerancePercent
+                                                + "; else echo \"Skipping unchanged package $PACKAGE_NAME\"; fi"
+                                )
+                        ),
+                        "post_build", Map.of(
+                                "commands", Arrays.asList(
+                                        "rm -rf $PACKAGE_IN_REPO_PATHS"
+                                )
+                        )
+                )
+        );
+    }
+
+    /** Declared for every package, projects without a Maven cache ignore the paths. */
+    private static Map<String, Object> cached(final Map<String, Object> buildSpec) {
+        final Map<String, Object> result = new LinkedHashMap<>(buildSpec);
+        result.put("cache", Map.of("paths", MavenCache.CACHE_PATHS));
+        return result;
+    }
+
+    /**
+     * Uploads a rendered buildspec and lets the role of its projects read it. Keys are sorted, so the asset hash only
+     * changes with the content.
+     */
+    private BuildSpec asset(final String name, final Map<String, Object> buildSpec, final Role role) {
+        final Path file;
+        try {
+            file = Files.createTempDirectory("buildspec").resolve(name.toLowerCase() + ".json");
+            Files.write(file, new ObjectMapper()
+                    .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+                    .enable(SerializationFeature.INDENT_OUTPUT)
+                    .writeValueAsBytes(buildSpec));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the " + name + " buildspec", e);
+        }
+
+        final Asset asset = Asset.Builder.create(this, name + "BuildSpec")
+                .path(file.toString())
+                .build();
+        final String objectArn = "arn:" + Aws.PARTITION + ":s3:::" + asset.getS3BucketName() + "/" + asset.getS3ObjectKey();
+
+        role.addToPolicy(PolicyStatement.Builder.create()
+                .effect(Effect.ALLOW)
+                .resources(Arrays.asList(objectArn))
+                .actions(Arrays.asList("s3:GetObject"))
+                .build());
+
+        // A buildspec in S3 is referenced by its object ARN
+        return BuildSpec.fromSourceFilename(objectArn);
+    }
+}
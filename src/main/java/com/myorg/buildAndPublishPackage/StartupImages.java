@@ -0,0 +1,126 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.buildAndPublishPackage;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import software.amazon.awscdk.services.codebuild.BuildEnvironmentVariable;
+import software.amazon.awscdk.services.codebuild.BuildEnvironmentVariableType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Startup-optimized variants of an executable package jar, the {@code startupImages} key of a build profile.
+ *
+ * After the install, {@code scripts/startup-images.sh} trains a class data sharing archive on a run of
+ * {@link #getMainClass()} with {@link #getTrainingArguments()}, builds a {@code jlink} runtime with the modules the
+ * jar needs and times the startup of both against the plain jar. The archive and the runtime are published next to
+ * the jar with the classifiers {@code appcds} and {@code runtime}, the timings only go to the build log.
+ */
+@JsonDeserialize(builder = StartupImages.Builder.class)
+public class StartupImages {
+
+    // Arguments end up in shell commands and, with shared builds, in a variable split on whitespace
+    private static final Pattern ARGUMENT = Pattern.compile("[A-Za-z0-9._/=:,@+-]+");
+    private static final Pattern CLASS_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)*");
+
+    private final String mainClass;
+    private final List<String> trainingArguments;
+    private final int runs;
+
+    private StartupImages(final Builder builder) {
+        this.mainClass = builder.mainClass;
+        this.trainingArguments = Collections.unmodifiableList(new ArrayList<>(builder.trainingArguments));
+        this.runs = builder.runs;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** Class the training and timing runs start, usually the {@code Main-Class} of the jar. */
+    public String getMainClass() {
+        return mainClass;
+    }
+
+    /** Arguments of the training and timing runs, they should exercise the common path of the tool. */
+    public List<String> getTrainingArguments() {
+        return trainingArguments;
+    }
+
+    /** Number of timed runs of each variant, the median is recorded. */
+    public int getRuns() {
+        return runs;
+    }
+
+    /** Command creating the variants of an installed package, run from any directory. */
+    public String command(final PackageDefinition packageDefinition) {
+        return "STARTUP_RUNS=" + runs + " bash $CODEBUILD_SRC_DIR/scripts/startup-images.sh " + scriptArguments(packageDefinition);
+    }
+
+    /** {@code STARTUP_IMAGES} and {@code STARTUP_RUNS}, the arguments and runs of the shared verify buildspec. */
+    public Map<String, BuildEnvironmentVariable> environmentVariables(final PackageDefinition packageDefinition) {
+        return Map.of(
+                "STARTUP_IMAGES", BuildEnvironmentVariable.builder()
+                        .type(BuildEnvironmentVariableType.PLAINTEXT)
+                        .value(scriptArguments(packageDefinition))
+                        .build(),
+                "STARTUP_RUNS", BuildEnvironmentVariable.builder()
+                        .type(BuildEnvironmentVariableType.PLAINTEXT)
+                        .value(Integer.toString(runs))
+                        .build());
+    }
+
+    private String scriptArguments(final PackageDefinition packageDefinition) {
+        final List<String> arguments = new ArrayList<>(Arrays.asList(
+                packageDefinition.getGroupId(), packageDefinition.getArtifactId(), packageDefinition.getVersion(), mainClass));
+        arguments.addAll(trainingArguments);
+        return String.join(" ", arguments);
+    }
+
+    @JsonPOJOBuilder(withPrefix = "")
+    public static final class Builder {
+        private String mainClass;
+        private List<String> trainingArguments = Collections.emptyList();
+        private int runs = 5;
+
+        public Builder mainClass(final String mainClass) {
+            this.mainClass = mainClass;
+            return this;
+        }
+
+        public Builder trainingArguments(final List<String> trainingArguments) {
+            this.trainingArguments = trainingArguments;
+            return this;
+        }
+
+        public Builder runs(final int runs) {
+            this.runs = runs;
+            return this;
+        }
+
+        public StartupImages build() {
+            if (mainClass == null || !CLASS_NAME.matcher(mainClass).matches()) {
+                throw new IllegalArgumentException("mainClass must be a fully qualified class name, got " + mainClass);
+            }
+            if (trainingArguments == null) {
+                throw new IllegalArgumentException("trainingArguments must not be null");
+            }
+            for (String argument : trainingArguments) {
+                if (!ARGUMENT.matcher(argument).matches()) {
+                    throw new IllegalArgumentException("trainingArguments may only hold letters, digits and ._/=:,@+-, got " + argument);
+                }
+            }
+            if (runs < 1 || runs > 50) {
+                throw new IllegalArgumentException("runs must be between 1 and 50, got " + runs);
+            }
+            return new StartupImages(this);
+        }
+    }
+}
@@ -2,91 +2,436 @@
 // SPDX-License-Identifier: MIT-0
 
 package com.myorg.buildAndPublishPackage;
+import com.myorg.mavenCache.MavenCacheMode;
+import com.myorg.mavenExecution.MavenExecutionOptions;
+import com.myorg.nagSuppressions.DefaultPolicySuppressions;
+import software.amazon.awscdk.ArnComponents;
+import software.amazon.awscdk.Duration;
+import software.amazon.awscdk.Stack;
 import software.amazon.awscdk.services.codebuild.*;
+import software.amazon.awscdk.services.codepipeline.Artifact;
 import software.amazon.awscdk.services.iam.Effect;
-import software.amazon.awscdk.services.iam.Policy;
 import software.amazon.awscdk.services.iam.PolicyStatement;
-import software.amazon.awscdk.services.kms.IKey;
+import software.amazon.awscdk.services.ssm.StringParameter;
 import software.constructs.Construct;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
+/**
+ * Builds a package once and publishes the result.
+ *
+ * {@link #verifyProject} compiles, tests and installs the package in the {@code Test} stage and emits the
+ * installed files, together with those of its in-repo dependencies, as {@link #verifiedPackage}. Downstream
+ * packages build against that artifact instead of the published versions. {@link #project} only deploys the
+ * verified files, nothing is compiled twice. Release versions go through {@code scripts/publish-package.sh}, which
+ * skips versions CodeArtifact already holds with the same content and rejects them with different content,
+ * snapshots through {@code deploy:deploy-file}.
+ *
+ * With {@link BuildProfile#getStartupImages()} the verify build also adds the {@link StartupImages} of the
+ * package to its installed files, and they are published with the jar.
+ *
+ * Packages with JMH benchmarks in {@code src/jmh/java} also get {@link #benchmarkProject}, which runs them against
+ * the verified files on fixed compute through {@code scripts/package-benchmarks.sh} and fails when a score falls
+ * behind the baseline kept in the artifact bucket.
+ *
+ * With {@link SharedPackageBuilds} the projects run the shared buildspecs with the shared role instead, and the
+ * actions pass the package through {@link #actionEnvironmentVariables()}.
+ */
 public class buildAndPublishPackage extends Construct {
 
+    /** Repository id of the {@code distributionManagement} section in the package pom files. */
+    static final String REPOSITORY_ID = "aws-java-sample-domain-mvn";
+
+    /** Parameters holding the last published revision of each package, followed by the package name. */
+    static final String PUBLISHED_REVISION_PREFIX = "/java-sample-pipeline/published/";
+
+    /** Benchmarks always run on the same hardware, scores of different compute types are not comparable. */
+    private static final ComputeType BENCHMARK_COMPUTE_TYPE = ComputeType.LARGE;
+
     public PipelineProject project;
 
-    public buildAndPublishPackage(final Construct scope, final String id, final String projectName, final String codeartifactDomainArn, final String codeartifactRepoArn, final IKey artifactBucketEncryptionKey) {
-        this(scope, id, null, projectName, codeartifactDomainArn, codeartifactRepoArn, artifactBucketEncryptionKey);
-    }
+    public PipelineProject verifyProject;
+
+    public StringParameter publishedRevision;
 
-    public buildAndPublishPackage(final Construct scope, final String id, final PipelineProjectProps props, final String projectName, final String codeartifactDomainArn, final String codeartifactRepoArn, final IKey artifactBucketEncryptionKey) {
+    public Artifact verifiedPackage;
+
+    /** Runs the JMH benchmarks of the package, only set for packages that have some. */
+    public PipelineProject benchmarkProject;
+
+    /** Trimmed source of the package, only set for sparse sources. */
+    public Artifact sourceArtifact;
+
+    private final List<String> splitCommands = new ArrayList<>();
+    private final Map<String, BuildEnvironmentVariable> actionEnvironmentVariables = new HashMap<>();
+    private String splitDirectory;
+
+    public buildAndPublishPackage(final Construct scope, final String id, final buildAndPublishPackageProps props) {
         super(scope, id);
 
+        final PackageDefinition packageDefinition = props.getPackageDefinition();
+        final String projectName = props.getProjectName();
+        final BuildProfile buildProfile = props.getBuildProfile();
+        final MavenCacheMode cacheMode = buildProfile.getCacheMode() != null ? buildProfile.getCacheMode() : props.getMavenCache().getMode();
+        final MavenExecutionOptions mavenExecutionOptions = buildProfile.getMaven() != null ? buildProfile.getMaven() : props.getMavenExecutionOptions();
+
+        if (mavenExecutionOptions.isOffline() && cacheMode == MavenCacheMode.NONE) {
+            throw new IllegalArgumentException("Package " + projectName + " builds offline, which requires a Maven cache");
+        }
+
+        final String publishedRevisionParameterName = PUBLISHED_REVISION_PREFIX + projectName;
+
+        // Source revision of the last successful deploy, compared against to skip unchanged packages
+        publishedRevision = StringParameter.Builder.create(this, "PublishedRevision")
+                .parameterName(publishedRevisionParameterName)
+                .description("Last source revision published for package " + projectName)
+                .stringValue("none")
+                .build();
+
+        verifiedPackage = new Artifact("Verified" + packageDefinition.getConstructName());
+
+        final List<String> watchedPaths = new ArrayList<>();
+        watchedPaths.add("packages/" + projectName);
+        props.getDependencyPackages().forEach(dependency -> watchedPaths.add("packages/" + dependency.getName()));
+
+        final String changedCheck = props.isSkipUnchanged()
+                ? "bash scripts/package-changed.sh " + publishedRevisionParameterName + " " + String.join(" ", watchedPaths)
+                : "true";
+
+        if (props.isSparseSource()) {
+            sourceArtifact = new Artifact("Source" + packageDefinition.getConstructName());
+            splitDirectory = "split/" + projectName;
+            splitCommands.add("bash scripts/split-sources.sh " + splitDirectory + " " + String.join(" ", watchedPaths));
+            splitCommands.add("if " + changedCheck + "; then echo true > " + splitDirectory + "/package-changed; else echo false > " + splitDirectory + "/package-changed; fi");
+        }
+
+        // Installed files of the package and of every in-repo dependency it was built against
+        final List<String> collectCommands = new ArrayList<>();
+        collectCommands.add("mkdir -p $CODEBUILD_SRC_DIR/verified/repository");
+        final List<PackageDefinition> verifiedPackages = new ArrayList<>(props.getDependencyPackages());
+        verifiedPackages.add(packageDefinition);
+        // Cleared before the verified inputs are copied and after the installs are collected, so these directories
+        // only ever hold the inputs and this build's install, never a stale install from the Maven cache
+        final String clearInRepoInstalls = "rm -rf " + verifiedPackages.stream()
+                .map(verified -> "/root/.m2/repository/" + verified.getRepositoryPath())
+                .collect(Collectors.joining(" "));
+        verifiedPackages.forEach(verified -> collectCommands.add(
+                "if [ \"$CODEBUILD_BUILD_SUCCEEDING\" = \"1\" ] && [ \"$PACKAGE_CHANGED\" = \"true\" ] && [ -d /root/.m2/repository/" + verified.getRepositoryPath() + " ]; then "
+                        + "mkdir -p $CODEBUILD_SRC_DIR/verified/repository/" + verified.getRepositoryPath() + " && "
+                        + "cp -r /root/.m2/repository/" + verified.getRepositoryPath() + "/. $CODEBUILD_SRC_DIR/verified/repository/" + verified.getRepositoryPath() + "/; fi"));
+        collectCommands.add(clearInRepoInstalls);
+
+        final Map<String, BuildEnvironmentVariable> environmentVariables = new HashMap<>(props.getCodeartifactCredentials().projectEnvironmentVariables());
+        environmentVariables.putAll(mavenExecutionOptions.environmentVariables());
+        if (props.getBuildCache() != null) {
+            environmentVariables.putAll(props.getBuildCache().environmentVariables());
+        }
+        // The raw MAVEN_OPTS of the profile take precedence over the rendered heap and GC flags
+        if (buildProfile.getMavenOpts() != null) {
+            environmentVariables.put("MAVEN_OPTS", BuildEnvironmentVariable.builder()
+                    .type(BuildEnvironmentVariableType.PLAINTEXT)
+                    .value(buildProfile.getMavenOpts())
+                    .build());
+        }
+
+        if (props.getSharedBuilds() != null) {
+            actionEnvironmentVariables.putAll(SharedPackageBuilds.packageEnvironmentVariables(packageDefinition, watchedPaths));
+            environmentVariables.put("PACKAGE_IN_REPO_PATHS", BuildEnvironmentVariable.builder()
+                    .type(BuildEnvironmentVariableType.PLAINTEXT)
+                    .value(clearInRepoInstalls.substring("rm -rf ".length()))
+                    .build());
+            addSharedProjects(props, environmentVariables, mavenExecutionOptions, cacheMode);
+            return;
+        }
+
+        // Startup images land next to the installed jar, so they are cached and published with it
+        final String buildCommand = buildProfile.getStartupImages() != null
+                ? mavenExecutionOptions.command("install") + " && " + buildProfile.getStartupImages().command(packageDefinition)
+                : mavenExecutionOptions.command("install");
+
+        // The installed files are the only outputs later commands read
+        final String installCommand = props.getBuildCache() != null
+                ? props.getBuildCache().cached(".",
+                        props.getDependencyPackages().stream().map(dependency -> "/root/.m2/repository/" + dependency.getRepositoryPath()).collect(Collectors.toList()),
+                        "/root/.m2/repository/" + packageDefinition.getRepositoryPath(),
+                        buildCommand)
+                : buildCommand;
+
+        verifyProject = PipelineProject.Builder.create(this, "Verify")
+                .environment(BuildEnvironment.builder()
+                        .privileged(false)
+                        .computeType(buildProfile.getComputeType())
+                        .buildImage(buildProfile.getArchitecture() == BuildArchitecture.ARM64
+                                ? LinuxArmBuildImage.AMAZON_LINUX_2_STANDARD_2_0
+                                : props.getBuildImage())
+                        .build()
+                )
+                .timeout(Duration.minutes(buildProfile.getTimeoutMinutes()))
+                .encryptionKey(props.getArtifactBucket().getEncryptionKey())
+                .environmentVariables(environmentVariables)
+                .logging(props.getBuildMetrics().logging(projectName + "-verify"))
+                .cache(props.getMavenCache().cache(cacheMode))
+                .buildSpec(BuildSpec.fromObject(props.getBuildMetrics().addTo(props.getMavenCache().addTo(Map.of(
+                        "version", "0.2",
+                        "phases", Map.of(
+                                "pre_build", Map.of(
+                                        "commands", Arrays.asList(
+                                                props.isSparseSource()
+                                                        // Decided by the split action, the trimmed source has no history
+                                                        ? "export PACKAGE_CHANGED=`cat package-changed`"
+                                                        : props.isSkipUnchanged()
+                                                                ? "if " + changedCheck + "; then export PACKAGE_CHANGED=true; else export PACKAGE_CHANGED=false; fi"
+                                                                : "export PACKAGE_CHANGED=true",
+                                                "mkdir -p verified && echo $PACKAGE_CHANGED > verified/changed",
+                                                clearInRepoInstalls,
+                                                // Verified dependencies arrive as secondary inputs and take precedence over published versions
+                                                "for input in `env | grep '^CODEBUILD_SRC_DIR_' | cut -d '=' -f 2`; do if [ -d $input/repository ]; then cp -r $input/repository/. /root/.m2/repository/; fi; done",
+                                                "cd ./packages/" + projectName
+                                        )
+                                ),
+                                "build", Map.of(
+                                        "commands", Arrays.asList(
+                                                "if [ \"$PACKAGE_CHANGED\" = \"true\" ]; then " + installCommand + "; else echo \"Skipping unchanged package " + projectName + "\"; fi"
+                                        )
+                                ),
+                                "post_build", Map.of(
+                                        "commands", collectCommands
+                                )
+                        ),
+                        "artifacts", Map.of(
+                                "files", Arrays.asList("**/*"),
+                                "base-directory", "verified"
+                        )
+                ), cacheMode), "Test", projectName)))
+                .build();
+
+        final String verifiedDirectory = "$CODEBUILD_SRC_DIR_" + verifiedPackage.getArtifactName() + "/repository/" + packageDefinition.getRepositoryPath();
+        final String artifactFile = verifiedDirectory + "/" + packageDefinition.getArtifactId() + "-" + packageDefinition.getVersion();
+        final String publishCommand = packageDefinition.getVersion().endsWith("-SNAPSHOT")
+                ? mavenExecutionOptions.online().command("deploy:deploy-file -DrepositoryId=" + REPOSITORY_ID + " -Durl=$CODEARTIFACT_REPOSITORY_URL -DpomFile=" + artifactFile + ".pom -Dfile=$ARTIFACT_FILE")
+                : "bash $CODEBUILD_SRC_DIR/scripts/publish-package.sh " + packageDefinition.getGroupId() + " " + packageDefinition.getArtifactId() + " " + packageDefinition.getVersion() + " " + verifiedDirectory;
+
+        final Map<String, BuildEnvironmentVariable> publishEnvironmentVariables = new HashMap<>(props.getCodeartifactCredentials().publishProjectEnvironmentVariables());
+        publishEnvironmentVariables.putAll(mavenExecutionOptions.environmentVariables());
+
         project = PipelineProject.Builder.create(this, projectName)
                 .environment(BuildEnvironment.builder()
                         .privileged(false)
-                        .computeType(ComputeType.MEDIUM)
-                        .buildImage(LinuxBuildImage.STANDARD_5_0)
+                        .computeType(ComputeType.SMALL)
+                        .buildImage(props.getBuildImage())
                         .build()
                 )
-                .encryptionKey(artifactBucketEncryptionKey)
-                .buildSpec(BuildSpec.fromObject(Map.of(
+                .encryptionKey(props.getArtifactBucket().getEncryptionKey())
+                .environmentVariables(publishEnvironmentVariables)
+                .logging(props.getBuildMetrics().logging(projectName + "-publish"))
+                .cache(props.getMavenCache().cache())
+                .buildSpec(BuildSpec.fromObject(props.getBuildMetrics().addTo(props.getMavenCache().addTo(Map.of(
                         "version", "0.2",
                         "phases", Map.of(
                                 "pre_build", Map.of(
                                         "commands", Arrays.asList(
-                                                "export CODEARTIFACT_AUTH_TOKEN=`aws codeartifact get-authorization-token --domain aws-java-sample-domain --query authorizationToken --output text`",
-                                                "export CODEARTIFACT_REPOSITORY_URL=`aws codeartifact get-repository-endpoint --domain aws-java-sample-domain --repository mvn --format maven --query repositoryEndpoint --output text`",
+                                                "export PACKAGE_CHANGED=`cat $CODEBUILD_SRC_DIR_" + verifiedPackage.getArtifactName() + "/changed`",
+                                                // Packages with pom packaging have no jar
+                                                "if [ -f " + artifactFile + ".jar ]; then export ARTIFACT_FILE=" + artifactFile + ".jar; else export ARTIFACT_FILE=" + artifactFile + ".pom; fi",
                                                 "cd ./packages/" + projectName
                                         )
                                 ),
                                 "build", Map.of(
                                         "commands", Arrays.asList(
-                                                "mvn deploy --settings settings.xml"
+                                                "if [ \"$PACKAGE_CHANGED\" = \"true\" ]; then " + publishCommand + "; else echo \"Skipping unchanged package " + projectName + "\"; fi"
+                                        )
+                                ),
+                                "post_build", Map.of(
+                                        "commands", Arrays.asList(
+                                                "if [ \"$CODEBUILD_BUILD_SUCCEEDING\" = \"1\" ] && [ \"$PACKAGE_CHANGED\" = \"true\" ]; then aws ssm put-parameter --name " + publishedRevisionParameterName + " --value " + (props.isSparseSource() ? "$SOURCE_COMMIT_ID" : "$CODEBUILD_RESOLVED_SOURCE_VERSION") + " --overwrite; fi"
                                         )
                                 )
                         )
-                )))
+                )), "BuildAndPublishPackages", projectName)))
                 .build();
 
-        project.getRole().attachInlinePolicy(
-                Policy.Builder.create(this, "PublishPolicy")
-                        .statements(Arrays.asList(
-                                PolicyStatement.Builder.create()
-                                        .effect(Effect.ALLOW)
-                                        .resources(Arrays.asList("*"))
-                                        .actions(Arrays.asList("sts:GetServiceBearerToken"))
-                                        .conditions(Map.of(
-                                                "StringEquals", Map.of(
-                                                        "sts:AWSServiceName", "codeartifact.amazonaws.com"
-                                                )
-                                        ))
-                                        .build(),
-                                PolicyStatement.Builder.create()
-                                        .effect(Effect.ALLOW)
-                                        .resources(Arrays.asList(codeartifactDomainArn))
-                                        .actions(Arrays.asList("codeartifact:GetAuthorizationToken"))
-                                        .build(),
-                                PolicyStatement.Builder.create()
-                                        .effect(Effect.ALLOW)
-                                        .resources(Arrays.asList(codeartifactRepoArn))
-                                        .actions(Arrays.asList(
-                                                "codeartifact:ReadFromRepository",
-                                                "codeartifact:GetRepositoryEndpoint",
-                                                "codeartifact:List*"
-                                        ))
-                                        .build(),
-                                PolicyStatement.Builder.create()
-                                        .effect(Effect.ALLOW)
-                                        .resources(Arrays.asList("*"))
-                                        .actions(Arrays.asList(
-                                                "codeartifact:PublishPackageVersion",
-                                                "codeartifact:PutPackageMetadata"
-                                        ))
-                                        .build()
-                        ))
+        if (props.isBenchmarks() && packageDefinition.hasBenchmarks()) {
+            final String baselineKey = "benchmark-baselines/" + projectName + ".json";
+
+            benchmarkProject = PipelineProject.Builder.create(this, "Benchmark")
+                    .environment(BuildEnvironment.builder()
+                            .privileged(false)
+                            .computeType(BENCHMARK_COMPUTE_TYPE)
+                            .buildImage(props.getBuildImage())
+                            .build()
+                    )
+                    .encryptionKey(props.getArtifactBucket().getEncryptionKey())
+                    .environmentVariables(props.getCodeartifactCredentials().projectEnvironmentVariables())
+                    .logging(props.getBuildMetrics().logging(projectName + "-benchmark"))
+                    .cache(props.getMavenCache().cache())
+                    .buildSpec(BuildSpec.fromObject(props.getBuildMetrics().addTo(props.getMavenCache().addTo(Map.of(
+                            "version", "0.2",
+                            "phases", Map.of(
+                                    "pre_build", Map.of(
+                                            "commands", Arrays.asList(
+                                                    "export PACKAGE_CHANGED=`cat $CODEBUILD_SRC_DIR_" + verifiedPackage.getArtifactName() + "/changed`",
+                                                    clearInRepoInstalls,
+                                                    "if [ -d $CODEBUILD_SRC_DIR_" + verifiedPackage.getArtifactName() + "/repository ]; then cp -r $CODEBUILD_SRC_DIR_" + verifiedPackage.getArtifactName() + "/repository/. /root/.m2/repository/; fi"
+                                            )
+                                    ),
+                                    "build", Map.of(
+                                            "commands", Arrays.asList(
+                                                    "if [ \"$PACKAGE_CHANGED\" = \"true\" ]; then bash scripts/package-benchmarks.sh packages/" + projectName + " "
+                                                            + packageDefinition.getGroupId() + " " + packageDefinition.getArtifactId() + " " + packageDefinition.getVersion() + " "
+                                                            + "s3://" + props.getArtifactBucket().getBucketName() + "/" + baselineKey + " " + props.getBenchmarkTolerancePercent()
+                                                            + "; else echo \"Skipping unchanged package " + projectName + "\"; fi"
+                                            )
+                                    ),
+                                    "post_build", Map.of(
+                                            "commands", Arrays.asList(clearInRepoInstalls)
+                                    )
+                            )
+                    )), "Benchmark", projectName)))
+                    .build();
+
+            props.getBuildMetrics().track(benchmarkProject, "Benchmark", projectName, Duration.hours(1));
+
+            props.getArtifactBucket().grantReadWrite(benchmarkProject, baselineKey);
+            props.getCodeartifactCredentials().grantRead(benchmarkProject);
+        }
+
+        props.getBuildMetrics().track(verifyProject, "Test", projectName, Duration.minutes(buildProfile.getTimeoutMinutes()));
+        props.getBuildMetrics().track(project, "BuildAndPublishPackages", projectName, Duration.hours(1));
+
+        // Published assets and their hashes, read by the publish script
+        project.addToRolePolicy(PolicyStatement.Builder.create()
+                .effect(Effect.ALLOW)
+                .resources(Arrays.asList(Stack.of(this).formatArn(ArnComponents.builder()
+                        .service("codeartifact")
+                        .resource("package")
+                        .resourceName("aws-java-sample-domain/mvn/maven/" + packageDefinition.getGroupId() + "/" + packageDefinition.getArtifactId())
+                        .build())))
+                .actions(Arrays.asList("codeartifact:ListPackageVersionAssets"))
+                .build());
+
+        publishedRevision.grantRead(verifyProject);
+        publishedRevision.grantWrite(project);
+
+        props.getCodeartifactCredentials().grantRead(verifyProject);
+        props.getCodeartifactCredentials().grantPublishRead(project);
+
+        final List<String> bucketObjects = DefaultPolicySuppressions.bucketObjects(props.getArtifactBucket(), "*");
+        bucketObjects.addAll(DefaultPolicySuppressions.bucketObjects(props.getMavenCache().bucket, "*"));
+        if (props.getBuildCache() != null) {
+            props.getBuildCache().grantReadWrite(verifyProject);
+            bucketObjects.addAll(DefaultPolicySuppressions.bucketObjects(props.getBuildCache().bucket, "outputs/*"));
+        }
+        DefaultPolicySuppressions.addToProject(verifyProject, bucketObjects);
+        DefaultPolicySuppressions.addToProject(project, bucketObjects);
+        if (benchmarkProject != null) {
+            DefaultPolicySuppressions.addToProject(benchmarkProject, bucketObjects);
+        }
+    }
+
+    /**
+     * Projects running the buildspecs of {@link SharedPackageBuilds} with its role. The Maven commands of the
+     * package profile are project variables, the grants of the shared role already cover every package.
+     */
+    private void addSharedProjects(final buildAndPublishPackageProps props, final Map<String, BuildEnvironmentVariable> environmentVariables,
+                                   final MavenExecutionOptions mavenExecutionOptions, final MavenCacheMode cacheMode) {
+        final SharedPackageBuilds sharedBuilds = props.getSharedBuilds();
+        final String projectName = props.getProjectName();
+        final BuildProfile buildProfile = props.getBuildProfile();
+
+        final Map<String, BuildEnvironmentVariable> verifyEnvironmentVariables = new HashMap<>(environmentVariables);
+        verifyEnvironmentVariables.put("MAVEN_COMMAND", BuildEnvironmentVariable.builder()
+                .type(BuildEnvironmentVariableType.PLAINTEXT)
+                .value(mavenExecutionOptions.command("install"))
+                .build());
+        if (buildProfile.getStartupImages() != null) {
+            verifyEnvironmentVariables.putAll(buildProfile.getStartupImages().environmentVariables(props.getPackageDefinition()));
+        }
+
+        verifyProject = PipelineProject.Builder.create(this, "Verify")
+                .projectName(sharedBuilds.projectName(projectName, "verify"))
+                .role(sharedBuilds.projectRole())
+                .grantReportGroupPermissions(false)
+                .environment(BuildEnvironment.builder()
+                        .privileged(false)
+                        .computeType(buildProfile.getComputeType())
+                        .buildImage(buildProfile.getArchitecture() == BuildArchitecture.ARM64
+                                ? LinuxArmBuildImage.AMAZON_LINUX_2_STANDARD_2_0
+                                : props.getBuildImage())
+                        .build()
+                )
+                .timeout(Duration.minutes(buildProfile.getTimeoutMinutes()))
+                .encryptionKey(props.getArtifactBucket().getEncryptionKey())
+                .environmentVariables(verifyEnvironmentVariables)
+                .logging(props.getBuildMetrics().logging(projectName + "-verify"))
+                .cache(props.getMavenCache().cache(cacheMode))
+                .buildSpec(sharedBuilds.verifyBuildSpec())
+                .build();
+
+        final Map<String, BuildEnvironmentVariable> publishEnvironmentVariables = new HashMap<>(props.getCodeartifactCredentials().publishProjectEnvironmentVariables());
+        publishEnvironmentVariables.putAll(mavenExecutionOptions.environmentVariables());
+        publishEnvironmentVariables.put("MAVEN_DEPLOY_COMMAND", BuildEnvironmentVariable.builder()
+                .type(BuildEnvironmentVariableType.PLAINTEXT)
+                .value(mavenExecutionOptions.online().command("deploy:deploy-file"))
+                .build());
+
+        project = PipelineProject.Builder.create(this, projectName)
+                .projectName(sharedBuilds.projectName(projectName, "publish"))
+                .role(sharedBuilds.publishRole())
+                .grantReportGroupPermissions(false)
+                .environment(BuildEnvironment.builder()
+                        .privileged(false)
+                        .computeType(ComputeType.SMALL)
+                        .buildImage(props.getBuildImage())
                         .build()
-        );
+                )
+                .encryptionKey(props.getArtifactBucket().getEncryptionKey())
+                .environmentVariables(publishEnvironmentVariables)
+                .logging(props.getBuildMetrics().logging(projectName + "-publish"))
+                .cache(props.getMavenCache().cache())
+                .buildSpec(sharedBuilds.publishBuildSpec())
+                .build();
+
+        if (props.isBenchmarks() && props.getPackageDefinition().hasBenchmarks()) {
+            final Map<String, BuildEnvironmentVariable> benchmarkEnvironmentVariables = new HashMap<>(props.getCodeartifactCredentials().projectEnvironmentVariables());
+            benchmarkEnvironmentVariables.put("PACKAGE_IN_REPO_PATHS", environmentVariables.get("PACKAGE_IN_REPO_PATHS"));
+            benchmarkEnvironmentVariables.putAll(sharedBuilds.benchmarkEnvironmentVariables());
+
+            benchmarkProject = PipelineProject.Builder.create(this, "Benchmark")
+                    .projectName(sharedBuilds.projectName(projectName, "benchmark"))
+                    .role(sharedBuilds.benchmarkRole())
+                    .grantReportGroupPermissions(false)
+                    .environment(BuildEnvironment.builder()
+                            .privileged(false)
+                            .computeType(BENCHMARK_COMPUTE_TYPE)
+                            .buildImage(props.getBuildImage())
+                            .build()
+                    )
+                    .encryptionKey(props.getArtifactBucket().getEncryptionKey())
+                    .environmentVariables(benchmarkEnvironmentVariables)
+                    .logging(props.getBuildMetrics().logging(projectName + "-benchmark"))
+                    .cache(props.getMavenCache().cache())
+                    .buildSpec(sharedBuilds.benchmarkBuildSpec())
+                    .build();
+        }
+    }
+
+    /** Variables the actions of the package pass to its projects, empty unless the projects are shared. */
+    public Map<String, BuildEnvironmentVariable> actionEnvironmentVariables() {
+        return actionEnvironmentVariables;
+    }
+
+    /** Commands of the split action writing the trimmed source of the package to {@link #splitDirectory()}. */
+    public List<String> splitCommands() {
+        return splitCommands;
+    }
+
+    /** {@code split/<name>}, relative to the checkout of the split action. */
+    public String splitDirectory() {
+        return splitDirectory;
     }
 }
@@ -0,0 +1,239 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.buildAndPublishPackage;
+
+import com.myorg.buildCache.BuildCache;
+import com.myorg.buildMetrics.BuildMetrics;
+import com.myorg.codeArtifactCredentials.CodeArtifactCredentials;
+import com.myorg.mavenCache.MavenCache;
+import com.myorg.mavenExecution.MavenExecutionOptions;
+import software.amazon.awscdk.services.codebuild.IBuildImage;
+import software.amazon.awscdk.services.s3.IBucket;
+
+import java.util.Collection;
+import java.util.Collections;
+
+public class buildAndPublishPackageProps {
+
+    private final PackageDefinition packageDefinition;
+    private final Collection<PackageDefinition> dependencyPackages;
+    private final boolean skipUnchanged;
+    private final boolean sparseSource;
+    private final CodeArtifactCredentials codeartifactCredentials;
+    private final IBucket artifactBucket;
+    private final MavenCache mavenCache;
+    private final IBuildImage buildImage;
+    private final BuildProfile buildProfile;
+    private final BuildMetrics buildMetrics;
+    private final MavenExecutionOptions mavenExecutionOptions;
+    private final BuildCache buildCache;
+    private final boolean benchmarks;
+    private final int benchmarkTolerancePercent;
+    private final SharedPackageBuilds sharedBuilds;
+
+    private buildAndPublishPackageProps(final Builder builder) {
+        this.packageDefinition = builder.packageDefinition;
+        this.dependencyPackages = builder.dependencyPackages;
+        this.skipUnchanged = builder.skipUnchanged;
+        this.sparseSource = builder.sparseSource;
+        this.codeartifactCredentials = builder.codeartifactCredentials;
+        this.artifactBucket = builder.artifactBucket;
+        this.mavenCache = builder.mavenCache;
+        this.buildImage = builder.buildImage;
+        this.buildProfile = builder.buildProfile;
+        this.buildMetrics = builder.buildMetrics;
+        this.mavenExecutionOptions = builder.mavenExecutionOptions;
+        this.buildCache = builder.buildCache;
+        this.benchmarks = builder.benchmarks;
+        this.benchmarkTolerancePercent = builder.benchmarkTolerancePercent;
+        this.sharedBuilds = builder.sharedBuilds;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public PackageDefinition getPackageDefinition() {
+        return packageDefinition;
+    }
+
+    /** Directory name of the package below {@code packages/}. */
+    public String getProjectName() {
+        return packageDefinition.getName();
+    }
+
+    /**
+     * In-repo packages the package depends on, directly or not. They are watched together with the package itself,
+     * and handed on with its verified build so downstream packages can build against them.
+     */
+    public Collection<PackageDefinition> getDependencyPackages() {
+        return dependencyPackages;
+    }
+
+    public boolean isSkipUnchanged() {
+        return skipUnchanged;
+    }
+
+    /**
+     * Whether the package builds from its own trimmed source artifact instead of the full clone. The split action
+     * decides whether the package changed, the publish action reads the commit from {@code SOURCE_COMMIT_ID}.
+     */
+    public boolean isSparseSource() {
+        return sparseSource;
+    }
+
+    public CodeArtifactCredentials getCodeartifactCredentials() {
+        return codeartifactCredentials;
+    }
+
+    /** Bucket of the pipeline artifacts, its key encrypts the build outputs. */
+    public IBucket getArtifactBucket() {
+        return artifactBucket;
+    }
+
+    public MavenCache getMavenCache() {
+        return mavenCache;
+    }
+
+    /** Image for x86_64 builds, ARM64 profiles always use the stock ARM image. */
+    public IBuildImage getBuildImage() {
+        return buildImage;
+    }
+
+    public BuildProfile getBuildProfile() {
+        return buildProfile;
+    }
+
+    public BuildMetrics getBuildMetrics() {
+        return buildMetrics;
+    }
+
+    /** Pipeline wide Maven execution options, the build profile of the package may replace them. */
+    public MavenExecutionOptions getMavenExecutionOptions() {
+        return mavenExecutionOptions;
+    }
+
+    /** Remote build cache the verify build restores from, {@code null} to always build. */
+    public BuildCache getBuildCache() {
+        return buildCache;
+    }
+
+    /** Whether the JMH benchmarks of the package, if it has any, must pass before it is published. */
+    public boolean isBenchmarks() {
+        return benchmarks;
+    }
+
+    /** Percentage by which a benchmark score may fall behind its baseline. */
+    public int getBenchmarkTolerancePercent() {
+        return benchmarkTolerancePercent;
+    }
+
+    /** Shared buildspecs, role and nested stacks the projects of the package use, {@code null} for own ones. */
+    public SharedPackageBuilds getSharedBuilds() {
+        return sharedBuilds;
+    }
+
+    public static final class Builder {
+        private PackageDefinition packageDefinition;
+        private Collection<PackageDefinition> dependencyPackages = Collections.emptyList();
+        private boolean skipUnchanged = true;
+        private boolean sparseSource = false;
+        private CodeArtifactCredentials codeartifactCredentials;
+        private IBucket artifactBucket;
+        private MavenCache mavenCache;
+        private IBuildImage buildImage;
+        private BuildProfile buildProfile = BuildProfile.builder().build();
+        private BuildMetrics buildMetrics;
+        private MavenExecutionOptions mavenExecutionOptions = MavenExecutionOptions.builder().build();
+        private BuildCache buildCache;
+        private boolean benchmarks = true;
+        private int benchmarkTolerancePercent = 10;
+        private SharedPackageBuilds sharedBuilds;
+
+        public Builder packageDefinition(final PackageDefinition packageDefinition) {
+            this.packageDefinition = packageDefinition;
+            return this;
+        }
+
+        public Builder dependencyPackages(final Collection<PackageDefinition> dependencyPackages) {
+            this.dependencyPackages = dependencyPackages;
+            return this;
+        }
+
+        public Builder skipUnchanged(final boolean skipUnchanged) {
+            this.skipUnchanged = skipUnchanged;
+            return this;
+        }
+
+        public Builder sparseSource(final boolean sparseSource) {
+            this.sparseSource = sparseSource;
+            return this;
+        }
+
+        public Builder codeartifactCredentials(final CodeArtifactCredentials codeartifactCredentials) {
+            this.codeartifactCredentials = codeartifactCredentials;
+            return this;
+        }
+
+        public Builder artifactBucket(final IBucket artifactBucket) {
+            this.artifactBucket = artifactBucket;
+            return this;
+        }
+
+        public Builder mavenCache(final MavenCache mavenCache) {
+            this.mavenCache = mavenCache;
+            return this;
+        }
+
+        public Builder buildImage(final IBuildImage buildImage) {
+            this.buildImage = buildImage;
+            return this;
+        }
+
+        public Builder buildProfile(final BuildProfile buildProfile) {
+            this.buildProfile = buildProfile;
+            return this;
+        }
+
+        public Builder buildMetrics(final BuildMetrics buildMetrics) {
+            this.buildMetrics = buildMetrics;
+            return this;
+        }
+
+        public Builder mavenExecutionOptions(final MavenExecutionOptions mavenExecutionOptions) {
+            this.mavenExecutionOptions = mavenExecutionOptions;
+            return this;
+        }
+
+        public Builder buildCache(final BuildCache buildCache) {
+            this.buildCache = buildCache;
+            return this;
+        }
+
+        public Builder benchmarks(final boolean benchmarks) {
+            this.benchmarks = benchmarks;
+            return this;
+        }
+
+        public Builder benchmarkTolerancePercent(final int benchmarkTolerancePercent) {
+            this.benchmarkTolerancePercent = benchmarkTolerancePercent;
+            return this;
+        }
+
+        public Builder sharedBuilds(final SharedPackageBuilds sharedBuilds) {
+            this.sharedBuilds = sharedBuilds;
+            return this;
+        }
+
+        public buildAndPublishPackageProps build() {
+            if (packageDefinition == null || codeartifactCredentials == null || artifactBucket == null || mavenCache == null || buildImage == null || buildMetrics == null) {
+                throw new IllegalArgumentException("packageDefinition, codeartifactCredentials, artifactBucket, mavenCache, buildImage and buildMetrics are required");
+            }
+            if (benchmarkTolerancePercent < 1 || benchmarkTolerancePercent > 99) {
+                throw new IllegalArgumentException("benchmarkTolerancePercent must be between 1 and 99, got " + benchmarkTolerancePercent);
+            }
+            return new buildAndPublishPackageProps(this);
+        }
+    }
+}
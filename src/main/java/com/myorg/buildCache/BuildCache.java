@@ -0,0 +1,93 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.buildCache;
+
+import software.amazon.awscdk.Duration;
+import software.amazon.awscdk.RemovalPolicy;
+import software.amazon.awscdk.Stack;
+import software.amazon.awscdk.services.codebuild.BuildEnvironmentVariable;
+import software.amazon.awscdk.services.codebuild.BuildEnvironmentVariableType;
+import software.amazon.awscdk.services.iam.IGrantable;
+import software.amazon.awscdk.services.kms.IKey;
+import software.amazon.awscdk.services.s3.BlockPublicAccess;
+import software.amazon.awscdk.services.s3.Bucket;
+import software.amazon.awscdk.services.s3.BucketEncryption;
+import software.amazon.awscdk.services.s3.IBucket;
+import software.amazon.awscdk.services.s3.LifecycleRule;
+import software.constructs.Construct;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remote cache of Maven build outputs, addressed by a hash of the sources, the pom and the resolved dependencies.
+ *
+ * {@link #cached(String, List, String, String)} wraps a build command so it only runs on a cache miss, and stores
+ * its outputs after it succeeded. The command is part of the key, so other goals or options never restore outputs
+ * of a different build. Entries are archives written by {@code scripts/build-cache.sh}.
+ */
+public class BuildCache extends Construct {
+
+    private static final String SCRIPT = "bash $CODEBUILD_SRC_DIR/scripts/build-cache.sh";
+
+    private static final String PREFIX = "outputs";
+
+    public Bucket bucket;
+
+    public BuildCache(final Construct scope, final String id, final IBucket accessLogsBucket, final IKey encryptionKey, final Duration retention) {
+        super(scope, id);
+
+        bucket = Bucket.Builder.create(this, "Bucket")
+                .bucketName("sample-java-cdk-build-cache-" + Stack.of(this).getAccount())
+                .serverAccessLogsBucket(accessLogsBucket)
+                .blockPublicAccess(BlockPublicAccess.BLOCK_ALL)
+                .encryption(BucketEncryption.KMS)
+                .encryptionKey(encryptionKey)
+                .removalPolicy(RemovalPolicy.DESTROY)
+                .enforceSsl(true)
+                .autoDeleteObjects(true)
+                // Entries of old source states are rarely hit again
+                .lifecycleRules(Arrays.asList(
+                        LifecycleRule.builder()
+                                .expiration(retention)
+                                .build()
+                ))
+                .build();
+    }
+
+    public Map<String, BuildEnvironmentVariable> environmentVariables() {
+        return Map.of(
+                "BUILD_CACHE_LOCATION", BuildEnvironmentVariable.builder()
+                        .type(BuildEnvironmentVariableType.PLAINTEXT)
+                        .value("s3://" + bucket.getBucketName() + "/" + PREFIX)
+                        .build()
+        );
+    }
+
+    public void grantReadWrite(final IGrantable grantee) {
+        bucket.grantReadWrite(grantee, PREFIX + "/*");
+    }
+
+    /**
+     * Command restoring the outputs of a module from the cache, or running the build command and saving them.
+     * Without a key, when the dependencies cannot be resolved, the build command runs uncached.
+     *
+     * @param module directory of the pom, relative to the working directory of the command
+     * @param extraPaths further inputs of the build, such as in-repo dependencies installed from other artifacts
+     * @param outputs directory holding everything the build produces for later commands
+     * @param buildCommand command run on a miss
+     */
+    public String cached(final String module, final List<String> extraPaths, final String outputs, final String buildCommand) {
+        // Expanded by the shell, so commands read from project variables key with their values, except for the
+        // source directory that changes with every build
+        final String keyedCommand = buildCommand.replace("\\", "\\\\").replace("\"", "\\\"").replace("`", "\\`")
+                .replace("$CODEBUILD_SRC_DIR", "\\$CODEBUILD_SRC_DIR");
+        return "export BUILD_CACHE_COMMAND=\"" + keyedCommand + "\" && "
+                + "if BUILD_CACHE_KEY=`" + SCRIPT + " key " + module + (extraPaths.isEmpty() ? "" : " " + String.join(" ", extraPaths)) + "`; then "
+                + "if " + SCRIPT + " restore $BUILD_CACHE_KEY " + outputs + "; then echo \"Restored " + outputs + " from the build cache\"; "
+                + "else " + buildCommand + " && " + SCRIPT + " save $BUILD_CACHE_KEY " + outputs + "; fi; "
+                + "else " + buildCommand + "; fi";
+    }
+}
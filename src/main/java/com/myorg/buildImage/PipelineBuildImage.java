@@ -0,0 +1,69 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.buildImage;
+
+import software.amazon.awscdk.services.codebuild.IBuildImage;
+import software.amazon.awscdk.services.codebuild.LinuxBuildImage;
+import software.amazon.awscdk.services.ecr.assets.DockerImageAsset;
+import software.amazon.awscdk.services.ecr.assets.DockerImageAssetProps;
+import software.amazon.awscdk.services.iam.IGrantable;
+import software.constructs.Construct;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Build image of the pipeline projects: either the image built from {@code build-image/Dockerfile},
+ * published as a Docker image asset, or the stock CodeBuild image.
+ */
+public class PipelineBuildImage extends Construct {
+
+    public IBuildImage image;
+
+    private final boolean custom;
+    private DockerImageAsset asset;
+
+    public PipelineBuildImage(final Construct scope, final String id, final boolean custom, final Path sourceRoot) {
+        super(scope, id);
+
+        this.custom = custom;
+
+        if (custom) {
+            asset = new DockerImageAsset(this, "Asset", DockerImageAssetProps.builder()
+                    .directory(sourceRoot.resolve("build-image").toString())
+                    .build());
+            image = LinuxBuildImage.fromEcrRepository(asset.getRepository(), asset.getImageTag());
+        } else {
+            image = LinuxBuildImage.STANDARD_5_0;
+        }
+    }
+
+    public boolean isCustom() {
+        return custom;
+    }
+
+    /** Lets a role pull the custom image, projects grant it to their own roles when they bind the image. */
+    public void grantPull(final IGrantable grantee) {
+        if (asset != null) {
+            asset.getRepository().grantPull(grantee);
+        }
+    }
+
+    /**
+     * Commands giving SelfMutate a CDK CLI and a Docker daemon for building assets.
+     * The custom image ships the CLI but, unlike the stock image, needs its daemon started.
+     */
+    public List<String> selfMutateInstallCommands() {
+        if (custom) {
+            return Arrays.asList(
+                    "nohup dockerd --host=unix:///var/run/docker.sock --storage-driver=overlay2 > /tmp/dockerd.log 2>&1 &",
+                    "timeout 30 sh -c \"until docker info > /dev/null 2>&1; do sleep 1; done\""
+            );
+        }
+        return Arrays.asList(
+                "npm install -g aws-cdk"
+        );
+    }
+}
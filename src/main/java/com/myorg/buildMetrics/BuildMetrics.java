@@ -0,0 +1,232 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.buildMetrics;
+
+import software.amazon.awscdk.Duration;
+import software.amazon.awscdk.RemovalPolicy;
+import software.amazon.awscdk.services.cloudwatch.*;
+import software.amazon.awscdk.services.codebuild.CloudWatchLoggingOptions;
+import software.amazon.awscdk.services.codebuild.LoggingOptions;
+import software.amazon.awscdk.services.codebuild.Project;
+import software.amazon.awscdk.services.logs.CfnMetricFilter;
+import software.amazon.awscdk.services.logs.LogGroup;
+import software.amazon.awscdk.services.logs.RetentionDays;
+import software.constructs.Construct;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Build metrics of every CodeBuild project of the pipeline, with a dashboard and p95 duration alarms.
+ *
+ * Instrumented buildspecs print embedded metric format lines through {@code scripts/build-metrics.sh}.
+ * CodeBuild does not deliver its logs with the embedded metric format header, so the projects log to
+ * one shared group whose metric filters extract the metrics declared in those lines.
+ */
+public class BuildMetrics extends Construct {
+
+    public static final String NAMESPACE = "JavaSamplePipeline";
+
+    /** Phases in execution order, the first present one marks the start of the build. */
+    private static final List<String> PHASES = Arrays.asList("install", "pre_build", "build", "post_build");
+
+    private static final String SCRIPT = "bash $CODEBUILD_SRC_DIR/scripts/build-metrics.sh";
+
+    /** Share of the project timeout the p95 build duration may reach before its alarm fires. */
+    private static final double PROJECT_ALARM_RATIO = 0.8;
+
+    /**
+     * Projects with a dashboard row of their own. With 4 widgets per row this keeps the dashboard well below its
+     * 500 widgets, later projects only get their alarm and show up in the row of their stage.
+     */
+    static final int MAX_PROJECT_ROWS = 100;
+
+    public LogGroup logGroup;
+
+    public Dashboard dashboard;
+
+    private final Duration stageDurationThreshold;
+    private final Map<String, List<String>> instrumentedPhases = new HashMap<>();
+    private final Set<String> stages = new HashSet<>();
+    private int projectRows;
+
+    public BuildMetrics(final Construct scope, final String id, final Duration stageDurationThreshold) {
+        super(scope, id);
+
+        this.stageDurationThreshold = stageDurationThreshold;
+
+        logGroup = LogGroup.Builder.create(this, "Logs")
+                .retention(RetentionDays.ONE_MONTH)
+                .removalPolicy(RemovalPolicy.DESTROY)
+                .build();
+
+        addMetricFilter("PhaseDuration", "Milliseconds", "Stage", "Project", "Phase");
+        addMetricFilter("BuildDuration", "Milliseconds", "Stage", "Project");
+        addMetricFilter("BuildDuration", "Milliseconds", "Stage");
+        addMetricFilter("CodeArtifactBytesDownloaded", "Bytes", "Stage", "Project");
+        addMetricFilter("MavenCacheHitRatio", "Percent", "Stage", "Project");
+        addMetricFilter("TestCount", "Count", "Stage", "Project");
+        addMetricFilter("TestDuration", "Milliseconds", "Stage", "Project");
+
+        dashboard = Dashboard.Builder.create(this, "Dashboard")
+                .dashboardName("java-sample-pipeline")
+                .build();
+    }
+
+    /**
+     * Returns a copy of the given buildspec that reports the duration of each of its phases and,
+     * at the end of {@code post_build}, the totals of the build.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> addTo(final Map<String, Object> buildSpec, final String stage, final String project) {
+        final Map<String, Object> phases = new LinkedHashMap<>((Map<String, Object>) buildSpec.get("phases"));
+        final List<String> present = PHASES.stream().filter(phases::containsKey).collect(Collectors.toList());
+
+        for (String phase : present) {
+            final Map<String, Object> instrumented = new LinkedHashMap<>((Map<String, Object>) phases.get(phase));
+
+            final List<String> commands = new ArrayList<>();
+            commands.add("export METRICS_PHASE_STARTED_AT=`date +%s%3N`");
+            if (phase.equals(present.get(0))) {
+                commands.add(SCRIPT + " start");
+            }
+            commands.addAll((List<String>) instrumented.getOrDefault("commands", new ArrayList<String>()));
+            instrumented.put("commands", commands);
+
+            final List<String> finallyCommands = new ArrayList<>((List<String>) instrumented.getOrDefault("finally", new ArrayList<String>()));
+            finallyCommands.add(SCRIPT + " phase " + stage + " " + project + " " + phase + " $METRICS_PHASE_STARTED_AT");
+            if (phase.equals("post_build")) {
+                finallyCommands.add(SCRIPT + " build " + stage + " " + project);
+            }
+            instrumented.put("finally", finallyCommands);
+
+            phases.put(phase, instrumented);
+        }
+        if (!phases.containsKey("post_build")) {
+            phases.put("post_build", Map.of(
+                    "commands", Arrays.asList(SCRIPT + " build " + stage + " " + project)
+            ));
+        }
+        instrumentedPhases.put(stage + "/" + project, present);
+
+        final Map<String, Object> result = new LinkedHashMap<>(buildSpec);
+        result.put("phases", phases);
+        return result;
+    }
+
+    /** Logging of a project into the shared log group, in streams prefixed with the project name. */
+    public LoggingOptions logging(final String project) {
+        return LoggingOptions.builder()
+                .cloudWatch(CloudWatchLoggingOptions.builder()
+                        .logGroup(logGroup)
+                        .prefix(project)
+                        .build())
+                .build();
+    }
+
+    /**
+     * Lets an instrumented project write to the shared log group and adds its alarm and, for the first
+     * {@link #MAX_PROJECT_ROWS} projects, its dashboard row. The first project of a stage also adds the alarm of the stage.
+     */
+    public void track(final Project buildProject, final String stage, final String project, final Duration timeout) {
+        logGroup.grantWrite(buildProject);
+
+        trackStage(stage);
+
+        final Map<String, String> dimensions = Map.of("Stage", stage, "Project", project);
+        final double threshold = timeout.toMilliseconds().doubleValue() * PROJECT_ALARM_RATIO;
+        final Alarm projectAlarm = Alarm.Builder.create(this, stage + project + "DurationAlarm")
+                .alarmDescription("p95 build duration of " + project + " in stage " + stage + " approaches its " + timeout.toHumanString() + " timeout")
+                .metric(metric("BuildDuration", "p95", dimensions))
+                .threshold(threshold)
+                .evaluationPeriods(1)
+                .comparisonOperator(ComparisonOperator.GREATER_THAN_THRESHOLD)
+                .treatMissingData(TreatMissingData.NOT_BREACHING)
+                .build();
+
+        if (projectRows == MAX_PROJECT_ROWS) {
+            dashboard.addWidgets(TextWidget.Builder.create()
+                    .markdown("Further projects have no row of their own, see their alarms and the rows of their stages")
+                    .width(24).height(1).build());
+        }
+        if (projectRows++ >= MAX_PROJECT_ROWS) {
+            return;
+        }
+
+        final List<IMetric> phaseMetrics = new ArrayList<>();
+        for (String phase : instrumentedPhases.getOrDefault(stage + "/" + project, new ArrayList<>())) {
+            phaseMetrics.add(metric("PhaseDuration", "p95", Map.of("Stage", stage, "Project", project, "Phase", phase)));
+        }
+
+        dashboard.addWidgets(
+                AlarmWidget.Builder.create().title(project + " build duration p95").alarm(projectAlarm).width(6).build(),
+                GraphWidget.Builder.create().title(project + " phase durations p95").left(phaseMetrics).stacked(true).width(6).build(),
+                GraphWidget.Builder.create().title(project + " Maven downloads and cache hits")
+                        .left(Arrays.asList(metric("CodeArtifactBytesDownloaded", "Sum", dimensions)))
+                        .right(Arrays.asList(metric("MavenCacheHitRatio", "Average", dimensions)))
+                        .width(6).build(),
+                GraphWidget.Builder.create().title(project + " tests")
+                        .left(Arrays.asList(metric("TestCount", "Maximum", dimensions)))
+                        .right(Arrays.asList(metric("TestDuration", "p95", dimensions)))
+                        .width(6).build()
+        );
+    }
+
+    /**
+     * Adds the alarm and dashboard row of a stage, once per stage. Projects shared by many packages only report
+     * here, their builds carry the package name as {@code Project} dimension but get no alarm of their own.
+     */
+    public void trackStage(final String stage) {
+        if (stages.add(stage)) {
+            final Alarm stageAlarm = Alarm.Builder.create(this, stage + "DurationAlarm")
+                    .alarmDescription("p95 build duration of stage " + stage + " exceeds " + stageDurationThreshold.toHumanString())
+                    .metric(metric("BuildDuration", "p95", Map.of("Stage", stage)))
+                    .threshold(stageDurationThreshold.toMilliseconds().doubleValue())
+                    .evaluationPeriods(1)
+                    .comparisonOperator(ComparisonOperator.GREATER_THAN_THRESHOLD)
+                    .treatMissingData(TreatMissingData.NOT_BREACHING)
+                    .build();
+            dashboard.addWidgets(
+                    TextWidget.Builder.create().markdown("## " + stage).width(6).height(6).build(),
+                    AlarmWidget.Builder.create().title(stage + " build duration p95").alarm(stageAlarm).width(18).build()
+            );
+        }
+    }
+
+    private static Metric metric(final String metricName, final String statistic, final Map<String, String> dimensions) {
+        return Metric.Builder.create()
+                .namespace(NAMESPACE)
+                .metricName(metricName)
+                .dimensionsMap(dimensions)
+                .statistic(statistic)
+                .period(Duration.hours(1))
+                .build();
+    }
+
+    private void addMetricFilter(final String metricName, final String unit, final String... dimensions) {
+        CfnMetricFilter.Builder.create(this, metricName + "By" + String.join("", dimensions))
+                .logGroupName(logGroup.getLogGroupName())
+                .filterPattern("{ $." + metricName + " >= 0 }")
+                .metricTransformations(Arrays.asList(CfnMetricFilter.MetricTransformationProperty.builder()
+                        .metricNamespace(NAMESPACE)
+                        .metricName(metricName)
+                        .metricValue("$." + metricName)
+                        .unit(unit)
+                        .dimensions(Arrays.stream(dimensions)
+                                .map(dimension -> CfnMetricFilter.DimensionProperty.builder()
+                                        .key(dimension)
+                                        .value("$." + dimension)
+                                        .build())
+                                .collect(Collectors.toList()))
+                        .build()))
+                .build();
+    }
+}
@@ -0,0 +1,288 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.codeArtifactCredentials;
+
+import com.myorg.buildMetrics.BuildMetrics;
+import com.myorg.nagSuppressions.DefaultPolicySuppressions;
+import software.amazon.awscdk.ArnComponents;
+import software.amazon.awscdk.Duration;
+import software.amazon.awscdk.Stack;
+import software.amazon.awscdk.services.codebuild.*;
+import software.amazon.awscdk.services.codepipeline.Artifact;
+import software.amazon.awscdk.services.codepipeline.actions.CodeBuildAction;
+import software.amazon.awscdk.services.codepipeline.actions.CodeBuildActionProps;
+import software.amazon.awscdk.services.iam.Effect;
+import software.amazon.awscdk.services.iam.IGrantable;
+import software.amazon.awscdk.services.iam.Policy;
+import software.amazon.awscdk.services.iam.PolicyStatement;
+import software.amazon.awscdk.services.kms.IKey;
+import software.amazon.awscdk.services.s3.IBucket;
+import software.constructs.Construct;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves the CodeArtifact repository endpoint and authorization tokens once per pipeline execution.
+ *
+ * The endpoint is exported as a pipeline variable, the tokens are stored as SecureString parameters
+ * encrypted with the artifact key. Downstream projects receive both as environment variables and
+ * need no CodeArtifact permissions of their own, a token carries the permissions of the broker that minted it.
+ * Two brokers with their own roles run side by side: one mints the read-only token every project reads,
+ * the other a token that may publish the in-repo packages, readable only by the publish projects.
+ */
+public class CodeArtifactCredentials extends Construct {
+
+    public static final String TOKEN_PARAMETER_NAME = "/java-sample-pipeline/codeartifact/auth-token";
+    public static final String PUBLISH_TOKEN_PARAMETER_NAME = "/java-sample-pipeline/codeartifact/publish-token";
+
+    private static final String VARIABLES_NAMESPACE = "CodeArtifact";
+    private static final Duration MIN_TOKEN_DURATION = Duration.minutes(15);
+    private static final Duration MAX_TOKEN_DURATION = Duration.hours(12);
+
+    public PipelineProject project;
+    public PipelineProject publishProject;
+
+    private final String tokenParameterArn;
+    private final String publishTokenParameterArn;
+    private final IKey encryptionKey;
+    private List<CodeBuildAction> actions;
+
+    /**
+     * @param publishedGroupIds group ids of the in-repo packages, the publish token may only publish packages of these groups
+     */
+    public CodeArtifactCredentials(final Construct scope, final String id, final String codeartifactDomainArn, final String codeartifactRepoArn, final List<String> publishedGroupIds, final IBucket artifactBucket, final Duration tokenDuration, final IBuildImage buildImage, final BuildMetrics buildMetrics) {
+        super(scope, id);
+
+        if (tokenDuration.toSeconds().doubleValue() < MIN_TOKEN_DURATION.toSeconds().doubleValue()
+                || tokenDuration.toSeconds().doubleValue() > MAX_TOKEN_DURATION.toSeconds().doubleValue()) {
+            throw new IllegalArgumentException("CodeArtifact token duration must be between 15 minutes and 12 hours, got " + tokenDuration.toHumanString());
+        }
+
+        this.encryptionKey = artifactBucket.getEncryptionKey();
+        this.tokenParameterArn = parameterArn(TOKEN_PARAMETER_NAME);
+        this.publishTokenParameterArn = parameterArn(PUBLISH_TOKEN_PARAMETER_NAME);
+
+        project = broker("ResolveCredentials", TOKEN_PARAMETER_NAME, tokenDuration, artifactBucket, buildImage, buildMetrics, Arrays.asList(
+                "export CODEARTIFACT_REPOSITORY_URL=`aws codeartifact get-repository-endpoint --domain aws-java-sample-domain --repository mvn --format maven --query repositoryEndpoint --output text`"
+        ));
+        publishProject = broker("ResolvePublishCredentials", PUBLISH_TOKEN_PARAMETER_NAME, tokenDuration, artifactBucket, buildImage, buildMetrics, Arrays.asList());
+
+        final Policy brokerPolicy = Policy.Builder.create(this, "BrokerPolicy")
+                .statements(Arrays.asList(
+                        bearerTokenStatement(),
+                        PolicyStatement.Builder.create()
+                                .effect(Effect.ALLOW)
+                                .resources(Arrays.asList(codeartifactDomainArn))
+                                .actions(Arrays.asList("codeartifact:GetAuthorizationToken"))
+                                .build(),
+                        PolicyStatement.Builder.create()
+                                .effect(Effect.ALLOW)
+                                .resources(Arrays.asList(codeartifactRepoArn))
+                                .actions(Arrays.asList(
+                                        "codeartifact:ReadFromRepository",
+                                        "codeartifact:GetRepositoryEndpoint",
+                                        "codeartifact:List*"
+                                ))
+                                .build(),
+                        PolicyStatement.Builder.create()
+                                .effect(Effect.ALLOW)
+                                .resources(Arrays.asList(tokenParameterArn))
+                                .actions(Arrays.asList("ssm:PutParameter"))
+                                .build()
+                ))
+                .build();
+        project.getRole().attachInlinePolicy(brokerPolicy);
+
+        // Package ARNs are package/<domain>/<repository>/maven/<groupId>/<artifactId>
+        final List<String> publishedGroups = publishedGroupIds.stream()
+                .distinct()
+                .sorted()
+                .map(groupId -> "aws-java-sample-domain/mvn/maven/" + groupId + "/*")
+                .collect(Collectors.toList());
+        final List<PolicyStatement> publishStatements = new ArrayList<>(Arrays.asList(
+                bearerTokenStatement(),
+                PolicyStatement.Builder.create()
+                        .effect(Effect.ALLOW)
+                        .resources(Arrays.asList(codeartifactDomainArn))
+                        .actions(Arrays.asList("codeartifact:GetAuthorizationToken"))
+                        .build(),
+                PolicyStatement.Builder.create()
+                        .effect(Effect.ALLOW)
+                        .resources(Arrays.asList(codeartifactRepoArn))
+                        .actions(Arrays.asList("codeartifact:ReadFromRepository"))
+                        .build(),
+                PolicyStatement.Builder.create()
+                        .effect(Effect.ALLOW)
+                        .resources(Arrays.asList(publishTokenParameterArn))
+                        .actions(Arrays.asList("ssm:PutParameter"))
+                        .build()
+        ));
+        if (!publishedGroups.isEmpty()) {
+            publishStatements.add(PolicyStatement.Builder.create()
+                    .effect(Effect.ALLOW)
+                    .resources(publishedGroups.stream()
+                            .map(group -> Stack.of(this).formatArn(ArnComponents.builder()
+                                    .service("codeartifact")
+                                    .resource("package")
+                                    .resourceName(group)
+                                    .build()))
+                            .collect(Collectors.toList()))
+                    .actions(Arrays.asList(
+                            "codeartifact:PublishPackageVersion",
+                            "codeartifact:PutPackageMetadata"
+                    ))
+                    .build());
+        }
+        final Policy publishBrokerPolicy = Policy.Builder.create(this, "PublishBrokerPolicy")
+                .statements(publishStatements)
+                .build();
+        publishProject.getRole().attachInlinePolicy(publishBrokerPolicy);
+
+        DefaultPolicySuppressions.addToProject(project, DefaultPolicySuppressions.bucketObjects(artifactBucket, "*"));
+        DefaultPolicySuppressions.addToProject(publishProject, DefaultPolicySuppressions.bucketObjects(artifactBucket, "*"));
+        DefaultPolicySuppressions.addToPolicy(brokerPolicy, Arrays.asList(
+                "Resource::*",
+                "Action::codeartifact:List*"
+        ));
+        final List<String> publishSuppressions = new ArrayList<>(Arrays.asList("Resource::*"));
+        publishedGroups.forEach(group -> publishSuppressions.add("Resource::arn:<AWS::Partition>:codeartifact:<AWS::Region>:<AWS::AccountId>:package/" + group));
+        DefaultPolicySuppressions.addToPolicy(publishBrokerPolicy, publishSuppressions);
+    }
+
+    /**
+     * Pipeline actions running the brokers, they must run before any action using {@link #actionEnvironmentVariables()}.
+     * The read-only broker exports the endpoint.
+     */
+    public List<CodeBuildAction> actions(final Artifact input) {
+        if (actions == null) {
+            actions = Arrays.asList(
+                    new CodeBuildAction(CodeBuildActionProps.builder()
+                            .actionName("resolve-credentials")
+                            .project(project)
+                            .input(input)
+                            .variablesNamespace(VARIABLES_NAMESPACE)
+                            .build()),
+                    new CodeBuildAction(CodeBuildActionProps.builder()
+                            .actionName("resolve-publish-credentials")
+                            .project(publishProject)
+                            .input(input)
+                            .build()));
+        }
+        return actions;
+    }
+
+    /** Project level variables with the read-only token, resolved by CodeBuild when a build starts. */
+    public Map<String, BuildEnvironmentVariable> projectEnvironmentVariables() {
+        return tokenVariable(TOKEN_PARAMETER_NAME);
+    }
+
+    /** Project level variables with the publish token, for projects granted {@link #grantPublishRead(IGrantable)}. */
+    public Map<String, BuildEnvironmentVariable> publishProjectEnvironmentVariables() {
+        return tokenVariable(PUBLISH_TOKEN_PARAMETER_NAME);
+    }
+
+    /** Action level variables, resolved by CodePipeline from the broker action of the same execution. */
+    public Map<String, BuildEnvironmentVariable> actionEnvironmentVariables() {
+        return Map.of(
+                "CODEARTIFACT_REPOSITORY_URL", BuildEnvironmentVariable.builder()
+                        .type(BuildEnvironmentVariableType.PLAINTEXT)
+                        .value("#{" + VARIABLES_NAMESPACE + ".CODEARTIFACT_REPOSITORY_URL}")
+                        .build()
+        );
+    }
+
+    public void grantRead(final IGrantable grantee) {
+        grantRead(grantee, tokenParameterArn);
+    }
+
+    /** Lets the publish projects read the publish token, no other project should be granted this. */
+    public void grantPublishRead(final IGrantable grantee) {
+        grantRead(grantee, publishTokenParameterArn);
+    }
+
+    private void grantRead(final IGrantable grantee, final String parameterArn) {
+        grantee.getGrantPrincipal().addToPrincipalPolicy(PolicyStatement.Builder.create()
+                .effect(Effect.ALLOW)
+                .resources(Arrays.asList(parameterArn))
+                .actions(Arrays.asList("ssm:GetParameters"))
+                .build());
+        encryptionKey.grantDecrypt(grantee);
+    }
+
+    /** Project storing a token minted with the permissions of its own role in the given parameter. */
+    private PipelineProject broker(final String name, final String parameterName, final Duration tokenDuration, final IBucket artifactBucket,
+                                   final IBuildImage buildImage, final BuildMetrics buildMetrics, final List<String> exportCommands) {
+        final List<String> commands = new ArrayList<>(exportCommands);
+        commands.add("aws ssm put-parameter --name " + parameterName + " --type SecureString --key-id $TOKEN_KEY_ARN --overwrite --value `aws codeartifact get-authorization-token --domain aws-java-sample-domain --duration-seconds " + tokenDuration.toSeconds().intValue() + " --query authorizationToken --output text`");
+
+        final Map<String, Object> buildSpec = exportCommands.isEmpty()
+                ? Map.of(
+                        "version", "0.2",
+                        "phases", Map.of("build", Map.of("commands", commands)))
+                : Map.of(
+                        "version", "0.2",
+                        "env", Map.of(
+                                "exported-variables", Arrays.asList(
+                                        "CODEARTIFACT_REPOSITORY_URL"
+                                )
+                        ),
+                        "phases", Map.of("build", Map.of("commands", commands)));
+
+        final PipelineProject broker = PipelineProject.Builder.create(this, name)
+                .environment(BuildEnvironment.builder()
+                        .privileged(false)
+                        .computeType(ComputeType.SMALL)
+                        .buildImage(buildImage)
+                        .build()
+                )
+                .encryptionKey(encryptionKey)
+                .logging(buildMetrics.logging(name))
+                .environmentVariables(Map.of(
+                        "TOKEN_KEY_ARN", BuildEnvironmentVariable.builder()
+                                .type(BuildEnvironmentVariableType.PLAINTEXT)
+                                .value(encryptionKey.getKeyArn())
+                                .build()
+                ))
+                .buildSpec(BuildSpec.fromObject(buildMetrics.addTo(buildSpec, "Credentials", name)))
+                .build();
+
+        buildMetrics.track(broker, "Credentials", name, Duration.hours(1));
+        encryptionKey.grantEncrypt(broker);
+        return broker;
+    }
+
+    private static PolicyStatement bearerTokenStatement() {
+        return PolicyStatement.Builder.create()
+                .effect(Effect.ALLOW)
+                .resources(Arrays.asList("*"))
+                .actions(Arrays.asList("sts:GetServiceBearerToken"))
+                .conditions(Map.of(
+                        "StringEquals", Map.of(
+                                "sts:AWSServiceName", "codeartifact.amazonaws.com"
+                        )
+                ))
+                .build();
+    }
+
+    private String parameterArn(final String parameterName) {
+        return Stack.of(this).formatArn(ArnComponents.builder()
+                .service("ssm")
+                .resource("parameter")
+                .resourceName(parameterName.substring(1))
+                .build());
+    }
+
+    private static Map<String, BuildEnvironmentVariable> tokenVariable(final String parameterName) {
+        return Map.of(
+                "CODEARTIFACT_AUTH_TOKEN", BuildEnvironmentVariable.builder()
+                        .type(BuildEnvironmentVariableType.PARAMETER_STORE)
+                        .value(parameterName)
+                        .build()
+        );
+    }
+}
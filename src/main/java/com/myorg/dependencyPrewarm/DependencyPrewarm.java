@@ -0,0 +1,123 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.dependencyPrewarm;
+
+import com.myorg.buildMetrics.BuildMetrics;
+import com.myorg.nagSuppressions.DefaultPolicySuppressions;
+import software.amazon.awscdk.Duration;
+import software.amazon.awscdk.services.codebuild.*;
+import software.amazon.awscdk.services.codecommit.IRepository;
+import software.amazon.awscdk.services.events.Rule;
+import software.amazon.awscdk.services.events.Schedule;
+import software.amazon.awscdk.services.events.targets.CodeBuildProject;
+import software.amazon.awscdk.services.iam.Effect;
+import software.amazon.awscdk.services.iam.Policy;
+import software.amazon.awscdk.services.iam.PolicyStatement;
+import software.amazon.awscdk.services.kms.IKey;
+import software.constructs.Construct;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Resolves the dependency closure of every pom file of the repository against CodeArtifact on a schedule.
+ *
+ * CodeArtifact fetches packages from Maven Central only when they are first requested. Resolving all of them
+ * outside the pipeline, into an empty local repository, keeps that latency out of the pipeline executions
+ * after a dependency change.
+ */
+public class DependencyPrewarm extends Construct {
+
+    private static final Duration TIMEOUT = Duration.hours(1);
+
+    private static final String LOCAL_REPOSITORY = "/tmp/prewarm-repository";
+
+    public Project project;
+
+    public Rule schedule;
+
+    public DependencyPrewarm(final Construct scope, final String id, final IRepository repository, final String codeartifactDomainArn, final String codeartifactRepoArn, final IKey encryptionKey, final Schedule prewarmSchedule, final IBuildImage buildImage, final BuildMetrics buildMetrics) {
+        super(scope, id);
+
+        project = Project.Builder.create(this, "PrewarmDependencies")
+                .source(Source.codeCommit(CodeCommitSourceProps.builder()
+                        .repository(repository)
+                        .branchOrRef("main")
+                        .build()))
+                .environment(BuildEnvironment.builder()
+                        .privileged(false)
+                        .computeType(ComputeType.MEDIUM)
+                        .buildImage(buildImage)
+                        .build()
+                )
+                .timeout(TIMEOUT)
+                .encryptionKey(encryptionKey)
+                .logging(buildMetrics.logging("PrewarmDependencies"))
+                // Read by the metrics script too, so the downloaded bytes are reported
+                .environmentVariables(Map.of(
+                        "MAVEN_REPOSITORY", BuildEnvironmentVariable.builder()
+                                .type(BuildEnvironmentVariableType.PLAINTEXT)
+                                .value(LOCAL_REPOSITORY)
+                                .build()
+                ))
+                .buildSpec(BuildSpec.fromObject(buildMetrics.addTo(Map.of(
+                        "version", "0.2",
+                        "phases", Map.of(
+                                "pre_build", Map.of(
+                                        "commands", Arrays.asList(
+                                                "export CODEARTIFACT_REPOSITORY_URL=`aws codeartifact get-repository-endpoint --domain aws-java-sample-domain --repository mvn --format maven --query repositoryEndpoint --output text`",
+                                                "export CODEARTIFACT_AUTH_TOKEN=`aws codeartifact get-authorization-token --domain aws-java-sample-domain --duration-seconds " + TIMEOUT.toSeconds().intValue() + " --query authorizationToken --output text`"
+                                        )
+                                ),
+                                "build", Map.of(
+                                        "commands", Arrays.asList(
+                                                "bash scripts/prewarm-dependencies.sh"
+                                        )
+                                )
+                        )
+                ), "Prewarm", "PrewarmDependencies")))
+                .build();
+
+        buildMetrics.track(project, "Prewarm", "PrewarmDependencies", TIMEOUT);
+
+        final Policy readerPolicy = Policy.Builder.create(this, "ReaderPolicy")
+                .statements(Arrays.asList(
+                        PolicyStatement.Builder.create()
+                                .effect(Effect.ALLOW)
+                                .resources(Arrays.asList("*"))
+                                .actions(Arrays.asList("sts:GetServiceBearerToken"))
+                                .conditions(Map.of(
+                                        "StringEquals", Map.of(
+                                                "sts:AWSServiceName", "codeartifact.amazonaws.com"
+                                        )
+                                ))
+                                .build(),
+                        PolicyStatement.Builder.create()
+                                .effect(Effect.ALLOW)
+                                .resources(Arrays.asList(codeartifactDomainArn))
+                                .actions(Arrays.asList("codeartifact:GetAuthorizationToken"))
+                                .build(),
+                        PolicyStatement.Builder.create()
+                                .effect(Effect.ALLOW)
+                                .resources(Arrays.asList(codeartifactRepoArn))
+                                .actions(Arrays.asList(
+                                        "codeartifact:ReadFromRepository",
+                                        "codeartifact:GetRepositoryEndpoint"
+                                ))
+                                .build()
+                ))
+                .build();
+        project.getRole().attachInlinePolicy(readerPolicy);
+
+        schedule = Rule.Builder.create(this, "Schedule")
+                .description("Resolves the dependencies of the Java sample repository against CodeArtifact")
+                .schedule(prewarmSchedule)
+                .targets(Arrays.asList(new CodeBuildProject(project)))
+                .build();
+
+        DefaultPolicySuppressions.addToProject(project, new ArrayList<>());
+        DefaultPolicySuppressions.addToPolicy(readerPolicy, Arrays.asList("Resource::*"));
+    }
+}
@@ -0,0 +1,238 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.localRunner;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs the buildspec of one CodeBuild action with {@code bash}, the way CodeBuild runs version 0.2 buildspecs:
+ * the phases share one environment and working directory, a failing command ends its phase after the
+ * {@code finally} commands, a failed {@code install} or {@code pre_build} skips the remaining phases and a failed
+ * {@code build} still runs {@code post_build} with {@code CODEBUILD_BUILD_SUCCEEDING=0}.
+ *
+ * Every phase runs in its own process, so it is timed on its own. The environment and working directory are handed
+ * on through files in the build directory. {@code /root/} in commands points to the given home directory instead.
+ */
+public class LocalBuild {
+
+    static final List<String> PHASES = Arrays.asList("install", "pre_build", "build", "post_build");
+
+    private final PipelineDefinition.BuildAction action;
+    private final Path buildDirectory;
+    private final Path home;
+
+    public LocalBuild(final PipelineDefinition.BuildAction action, final Path buildDirectory, final Path home) {
+        this.action = action;
+        this.buildDirectory = buildDirectory;
+        this.home = home;
+    }
+
+    /**
+     * Runs the build on a fresh copy of the primary source and copies its artifacts when it succeeded.
+     *
+     * @param sources directory of each input artifact, by name
+     * @param environment resolved variables of the project and the action
+     * @param outputs directory each output artifact is written to, by name
+     */
+    public Result run(final Map<String, Path> sources, final Map<String, String> environment, final Map<String, Path> outputs) throws IOException, InterruptedException {
+        final Path source = buildDirectory.resolve("src");
+        final Path state = buildDirectory.resolve("state");
+        final Path log = buildDirectory.resolve("build.log");
+        delete(buildDirectory);
+        Files.createDirectories(state);
+        copy(sources.get(action.getInputs().get(0)), source);
+
+        final Map<String, String> variables = new LinkedHashMap<>(environment);
+        action.getBuildSpec().path("env").path("variables").fields()
+                .forEachRemaining(variable -> variables.putIfAbsent(variable.getKey(), variable.getValue().asText()));
+        variables.put("CODEBUILD_SRC_DIR", source.toString());
+        for (String input : action.getInputs().subList(1, action.getInputs().size())) {
+            variables.put("CODEBUILD_SRC_DIR_" + input, sources.get(input).toString());
+        }
+        variables.put("CODEBUILD_BUILD_SUCCEEDING", "1");
+        Files.write(state.resolve("env"), variables.entrySet().stream()
+                .map(variable -> "export " + variable.getKey() + "=" + quote(variable.getValue()))
+                .collect(Collectors.toList()), StandardCharsets.UTF_8);
+        Files.write(state.resolve("pwd"), source.toString().getBytes(StandardCharsets.UTF_8));
+
+        final long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(action.getTimeoutMinutes());
+        final Map<String, Long> phaseMillis = new LinkedHashMap<>();
+        String failedPhase = null;
+        for (String phase : PHASES) {
+            final JsonNode commands = action.getBuildSpec().path("phases").path(phase);
+            if (commands.isMissingNode()) {
+                continue;
+            }
+            if (failedPhase != null && !(failedPhase.equals("build") && phase.equals("post_build"))) {
+                break;
+            }
+
+            final Path script = state.resolve(phase + ".sh");
+            Files.write(script, script(commands, state).getBytes(StandardCharsets.UTF_8));
+            final long started = System.nanoTime();
+            final Process process = new ProcessBuilder("bash", script.toString())
+                    .directory(source.toFile())
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.appendTo(log.toFile()))
+                    .start();
+            final boolean finished = process.waitFor(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (!finished) {
+                process.destroyForcibly().waitFor();
+            }
+            phaseMillis.put(phase, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+
+            if (!finished) {
+                Files.write(log, ("Build timed out after " + action.getTimeoutMinutes() + " minutes in phase " + phase + "\n").getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.APPEND);
+                return new Result(false, phaseMillis, log);
+            }
+            if (process.exitValue() != 0 && failedPhase == null) {
+                failedPhase = phase;
+                Files.write(state.resolve("env"), "export CODEBUILD_BUILD_SUCCEEDING=0\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            }
+        }
+
+        final boolean succeeded = failedPhase == null && copyArtifacts(source, outputs, log);
+        return new Result(succeeded, phaseMillis, log);
+    }
+
+    /** Commands of a phase, stopping at the first failure, followed by its {@code finally} commands. */
+    private String script(final JsonNode phase, final Path state) {
+        final StringBuilder script = new StringBuilder();
+        script.append(". ").append(quote(state.resolve("env").toString())).append('\n');
+        script.append("cd \"$(cat ").append(quote(state.resolve("pwd").toString())).append(")\"\n");
+        script.append("runner_status=0\n");
+        for (JsonNode command : phase.path("commands")) {
+            script.append("if [ $runner_status -eq 0 ]; then\n")
+                    .append(localPaths(command.asText())).append('\n')
+                    .append("runner_status=$?\n")
+                    .append("fi\n");
+        }
+        for (JsonNode command : phase.path("finally")) {
+            script.append(localPaths(command.asText())).append('\n');
+        }
+        script.append("export -p > ").append(quote(state.resolve("env").toString())).append('\n');
+        script.append("pwd > ").append(quote(state.resolve("pwd").toString())).append('\n');
+        script.append("exit $runner_status\n");
+        return script.toString();
+    }
+
+    private String localPaths(final String command) {
+        return command.replace("/root/", home.toAbsolutePath() + "/");
+    }
+
+    /** Copies the files of the {@code artifacts} and {@code secondary-artifacts} sections, relative to the source. */
+    private boolean copyArtifacts(final Path source, final Map<String, Path> outputs, final Path log) throws IOException {
+        final JsonNode artifacts = action.getBuildSpec().path("artifacts");
+        for (int index = 0; index < action.getOutputs().size(); index++) {
+            final String name = action.getOutputs().get(index);
+            final JsonNode spec = artifacts.path("secondary-artifacts").has(name)
+                    ? artifacts.path("secondary-artifacts").path(name)
+                    : index == 0 ? artifacts : null;
+            if (spec == null || !spec.has("files")) {
+                Files.write(log, ("No artifact definition for output " + name + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+                return false;
+            }
+
+            final Path base = source.resolve(spec.path("base-directory").asText("."));
+            if (!Files.isDirectory(base)) {
+                Files.write(log, ("No base directory " + base + " for output " + name + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+                return false;
+            }
+            final List<PathMatcher> matchers = new ArrayList<>();
+            spec.path("files").forEach(pattern -> matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern.asText())));
+
+            final Path target = outputs.get(name);
+            delete(target);
+            Files.createDirectories(target);
+            try (Stream<Path> files = Files.walk(base)) {
+                for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                    final Path relative = base.relativize(file);
+                    // CodeBuild's **/ also matches no directory at all, Java's requires one
+                    if (matchers.stream().anyMatch(matcher -> matcher.matches(relative) || matcher.matches(Paths.get("_").resolve(relative)))) {
+                        Files.createDirectories(target.resolve(relative).getParent());
+                        Files.copy(file, target.resolve(relative), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    static void copy(final Path from, final Path to) throws IOException {
+        try (Stream<Path> paths = Files.walk(from)) {
+            for (Path path : paths.collect(Collectors.toList())) {
+                final Path target = to.resolve(from.relativize(path).toString());
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.copy(path, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+            }
+        }
+    }
+
+    static void delete(final Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static String quote(final String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+    /** Outcome and phase durations of a build, its output is in {@link #getLog()}. */
+    public static final class Result {
+        private final boolean succeeded;
+        private final Map<String, Long> phaseMillis;
+        private final Path log;
+
+        Result(final boolean succeeded, final Map<String, Long> phaseMillis, final Path log) {
+            this.succeeded = succeeded;
+            this.phaseMillis = phaseMillis;
+            this.log = log;
+        }
+
+        public boolean isSucceeded() {
+            return succeeded;
+        }
+
+        /** Wall time of every phase that ran, in phase order. */
+        public Map<String, Long> getPhaseMillis() {
+            return phaseMillis;
+        }
+
+        public long getMillis() {
+            return phaseMillis.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        public Path getLog() {
+            return log;
+        }
+    }
+}
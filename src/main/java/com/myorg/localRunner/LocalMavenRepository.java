@@ -0,0 +1,153 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.localRunner;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP Maven repository standing in for the {@code mvn} CodeArtifact repository of local runs.
+ *
+ * Files are kept below a directory. {@code PUT} stores a file, as {@code deploy} and
+ * {@code scripts/publish-package.sh} do. {@code GET} and {@code HEAD} serve a stored file or, like the
+ * {@code maven-central-store} upstream, fetch a missing one from the upstream repository and keep it.
+ * Credentials are accepted but not checked.
+ */
+public class LocalMavenRepository implements AutoCloseable {
+
+    public static final String MAVEN_CENTRAL = "https://repo.maven.apache.org/maven2";
+
+    private final Path directory;
+    private final String upstream;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicLong upstreamDownloads = new AtomicLong();
+    private final AtomicLong upstreamBytes = new AtomicLong();
+
+    /**
+     * Starts the repository on a free port of the loopback interface.
+     *
+     * @param upstream base URL of the repository missing files are fetched from, {@code null} to answer 404
+     */
+    public LocalMavenRepository(final Path directory, final String upstream) {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.upstream = upstream != null && upstream.endsWith("/") ? upstream.substring(0, upstream.length() - 1) : upstream;
+        try {
+            Files.createDirectories(this.directory);
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start the local Maven repository", e);
+        }
+        server.createContext("/", this::handle);
+        // Parallel builds resolve their dependencies concurrently
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /** URL builds use as {@code CODEARTIFACT_REPOSITORY_URL}. */
+    public String getUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /** Files fetched from the upstream repository since the start, each is fetched once. */
+    public long getUpstreamDownloads() {
+        return upstreamDownloads.get();
+    }
+
+    public long getUpstreamBytes() {
+        return upstreamBytes.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            final String path = exchange.getRequestURI().getPath().replaceFirst("^/+", "");
+            final Path file = directory.resolve(path).normalize();
+            if (path.isEmpty() || !file.startsWith(directory)) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            switch (exchange.getRequestMethod()) {
+                case "PUT":
+                    Files.createDirectories(file.getParent());
+                    final Path upload = Files.createTempFile(file.getParent(), ".upload", null);
+                    try (InputStream body = exchange.getRequestBody()) {
+                        Files.copy(body, upload, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    Files.move(upload, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    exchange.sendResponseHeaders(201, -1);
+                    return;
+                case "GET":
+                case "HEAD":
+                    if (!Files.isRegularFile(file) && !fetch(path, file)) {
+                        exchange.sendResponseHeaders(404, -1);
+                        return;
+                    }
+                    if (exchange.getRequestMethod().equals("HEAD")) {
+                        exchange.getResponseHeaders().set("Content-Length", Long.toString(Files.size(file)));
+                        exchange.sendResponseHeaders(200, -1);
+                        return;
+                    }
+                    exchange.sendResponseHeaders(200, Files.size(file));
+                    try (OutputStream body = exchange.getResponseBody()) {
+                        Files.copy(file, body);
+                    }
+                    return;
+                default:
+                    exchange.sendResponseHeaders(405, -1);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /** Copies a file of the upstream repository, returns {@code false} when it has none. */
+    private boolean fetch(final String path, final Path file) throws IOException {
+        // Snapshots are only ever deployed locally
+        if (upstream == null || path.contains("-SNAPSHOT/")) {
+            return false;
+        }
+        final HttpURLConnection connection = (HttpURLConnection) new URL(upstream + "/" + path).openConnection();
+        try {
+            if (connection.getResponseCode() != 200) {
+                return false;
+            }
+            Files.createDirectories(file.getParent());
+            final Path download = Files.createTempFile(file.getParent(), ".download", null);
+            try (InputStream body = connection.getInputStream()) {
+                upstreamBytes.addAndGet(Files.copy(body, download, StandardCopyOption.REPLACE_EXISTING));
+            }
+            Files.move(download, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            upstreamDownloads.incrementAndGet();
+            return true;
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,380 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.localRunner;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.JavaCdkCicdCodeartifactStack;
+import com.myorg.PipelineOptions;
+import com.myorg.codeArtifactCredentials.CodeArtifactCredentials;
+import com.myorg.mavenCache.MavenCacheMode;
+import software.amazon.awscdk.App;
+import software.amazon.awscdk.AppProps;
+import software.amazon.awscdk.StackProps;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs the CodeBuild actions of the synthesized pipeline on this machine, to time changes to buildspecs, Maven
+ * settings and scripts without a deployment.
+ *
+ * The stack is synthesized with the given options, then the stages run in pipeline order on a copy of the
+ * checkout. Actions of a stage with the same run order run side by side. {@link LocalMavenRepository} stands in for
+ * CodeArtifact and {@code scripts/local-aws.sh} for the AWS CLI. Stages that only talk to AWS, {@code Credentials}
+ * and {@code UpdatePipeline}, are skipped. The wall time of every stage, action and phase is printed and written to
+ * {@code report.json} in the work directory.
+ *
+ * Builds share one Maven home, like the {@code LOCAL} cache on a warm host, unless the cache mode is {@code NONE}.
+ * A second run therefore shows the warm numbers.
+ */
+public class LocalPipelineRunner {
+
+    static final String STACK_NAME = "JavaCdkCicdCodeartifactStack";
+    static final List<String> SKIPPED_STAGES = Arrays.asList("Credentials", "UpdatePipeline");
+
+    private static final String USAGE = String.join("\n",
+            "Usage: run-local-pipeline.sh [<option>...]",
+            "",
+            "  --work <dir>                      work directory, target/local-pipeline by default",
+            "  --parallelism <n>                 actions run at the same time, the number of processors by default",
+            "  --upstream <url>|none             repository missing dependencies are fetched from, Maven Central by default",
+            "  --skip-stage <name>               stage not to run, besides Credentials and UpdatePipeline, repeatable",
+            "  --maven-cache-mode <mode>         S3, LOCAL or NONE, NONE gives every build an empty Maven home",
+            "  --test-shard-count <n>",
+            "  --sparse-source-artifacts",
+            "  --remote-build-cache",
+            "  --no-skip-unchanged-packages");
+
+    private static final Pattern PIPELINE_VARIABLE = Pattern.compile("#\\{[^.}]+\\.([^}]+)}");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Path sourceRoot;
+    private final Path workDirectory;
+    private final int parallelism;
+    private final String upstream;
+    private final Set<String> skippedStages;
+    private final boolean sharedHome;
+    private final String executionId = UUID.randomUUID().toString();
+    private String commitId;
+    private LocalMavenRepository repository;
+
+    /**
+     * @param upstream repository missing dependencies are fetched from, {@code null} for none
+     * @param sharedHome whether builds share one Maven home instead of starting with an empty one
+     */
+    public LocalPipelineRunner(final Path sourceRoot, final Path workDirectory, final int parallelism, final String upstream,
+                               final Set<String> skippedStages, final boolean sharedHome) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1, got " + parallelism);
+        }
+        this.sourceRoot = sourceRoot.toAbsolutePath().normalize();
+        this.workDirectory = workDirectory.toAbsolutePath().normalize();
+        this.parallelism = parallelism;
+        this.upstream = upstream;
+        this.skippedStages = skippedStages;
+        this.sharedHome = sharedHome;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final PipelineOptions.Builder options = PipelineOptions.builder();
+        Path workDirectory = Paths.get("target", "local-pipeline");
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        String upstream = LocalMavenRepository.MAVEN_CENTRAL;
+        final Set<String> skippedStages = new LinkedHashSet<>(SKIPPED_STAGES);
+        MavenCacheMode mavenCacheMode = MavenCacheMode.LOCAL;
+        try {
+            for (int index = 0; index < args.length; index++) {
+                switch (args[index]) {
+                    case "--work":
+                        workDirectory = Paths.get(value(args, ++index));
+                        break;
+                    case "--parallelism":
+                        parallelism = Integer.parseInt(value(args, ++index));
+                        break;
+                    case "--upstream":
+                        upstream = value(args, ++index);
+                        upstream = upstream.equals("none") ? null : upstream;
+                        break;
+                    case "--skip-stage":
+                        skippedStages.add(value(args, ++index));
+                        break;
+                    case "--maven-cache-mode":
+                        mavenCacheMode = MavenCacheMode.valueOf(value(args, ++index));
+                        break;
+                    case "--test-shard-count":
+                        options.testShardCount(Integer.parseInt(value(args, ++index)));
+                        break;
+                    case "--sparse-source-artifacts":
+                        options.sparseSourceArtifacts(true);
+                        break;
+                    case "--remote-build-cache":
+                        options.remoteBuildCache(true);
+                        break;
+                    case "--no-skip-unchanged-packages":
+                        options.skipUnchangedPackages(false);
+                        break;
+                    case "--help":
+                        System.out.println(USAGE);
+                        return;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[index]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + "\n\n" + USAGE);
+            System.exit(2);
+        }
+
+        final PipelineOptions pipelineOptions = options.mavenCacheMode(mavenCacheMode).build();
+        final LocalPipelineRunner runner = new LocalPipelineRunner(pipelineOptions.getSourceRoot(), workDirectory, parallelism, upstream,
+                skippedStages, mavenCacheMode != MavenCacheMode.NONE);
+        final Path template = synthesize(pipelineOptions, runner.workDirectory.resolve("cdk.out"));
+        System.exit(runner.run(PipelineDefinition.read(template)) ? 0 : 1);
+    }
+
+    private static String value(final String[] args, final int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Option " + args[index - 1] + " needs a value");
+        }
+        return args[index];
+    }
+
+    /** Synthesizes the pipeline stack into the given directory and returns its template. */
+    static Path synthesize(final PipelineOptions options, final Path outdir) {
+        final App app = new App(AppProps.builder().outdir(outdir.toString()).build());
+        new JavaCdkCicdCodeartifactStack(app, STACK_NAME, StackProps.builder().build(), options);
+        return Paths.get(app.synth().getStackByName(STACK_NAME).getTemplateFullPath());
+    }
+
+    /**
+     * Runs the stages in order and stops after the first one with a failed action.
+     *
+     * @return whether every action that ran succeeded
+     */
+    public boolean run(final PipelineDefinition definition) throws IOException, InterruptedException {
+        prepare(definition);
+        final List<Map<String, Object>> stageReports = new ArrayList<>();
+        boolean succeeded = true;
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try (LocalMavenRepository repository = new LocalMavenRepository(workDirectory.resolve("repository"), upstream)) {
+            this.repository = repository;
+            for (PipelineDefinition.Stage stage : definition.getStages()) {
+                if (stage.getActions().isEmpty() || skippedStages.contains(stage.getName())) {
+                    System.out.printf("%-40s skipped%n", stage.getName());
+                    continue;
+                }
+                final Map<String, Object> stageReport = runStage(stage, executor);
+                stageReports.add(stageReport);
+                if (!(Boolean) stageReport.get("succeeded")) {
+                    succeeded = false;
+                    break;
+                }
+            }
+
+            final Map<String, Object> report = new LinkedHashMap<>();
+            report.put("succeeded", succeeded);
+            report.put("stages", stageReports);
+            report.put("upstreamDownloads", repository.getUpstreamDownloads());
+            report.put("upstreamBytes", repository.getUpstreamBytes());
+            MAPPER.writerWithDefaultPrettyPrinter().writeValue(workDirectory.resolve("report.json").toFile(), report);
+            System.out.printf("%nUpstream downloads: %d files, %d bytes%nReport: %s%n",
+                    repository.getUpstreamDownloads(), repository.getUpstreamBytes(), workDirectory.resolve("report.json"));
+        } finally {
+            executor.shutdownNow();
+        }
+        return succeeded;
+    }
+
+    /** Copies the checkout as the source artifact, and sets up the stand-ins the builds call. */
+    private void prepare(final PipelineDefinition definition) throws IOException, InterruptedException {
+        LocalBuild.delete(workDirectory.resolve("artifacts"));
+        LocalBuild.delete(workDirectory.resolve("builds"));
+        final Set<String> outputs = new HashSet<>();
+        final Set<String> sources = new HashSet<>();
+        for (PipelineDefinition.Stage stage : definition.getStages()) {
+            for (PipelineDefinition.BuildAction action : stage.getActions()) {
+                outputs.addAll(action.getOutputs());
+                sources.addAll(action.getInputs());
+            }
+        }
+        // Inputs no action produces come from the source action
+        sources.removeAll(outputs);
+        for (String source : sources) {
+            copySource(workDirectory.resolve("artifacts").resolve(source));
+        }
+
+        final Path bin = Files.createDirectories(workDirectory.resolve("bin"));
+        Files.write(bin.resolve("aws"), Arrays.asList(
+                "#!/usr/bin/env bash",
+                "exec bash '" + sourceRoot.resolve("scripts/local-aws.sh") + "' \"$@\""), StandardCharsets.UTF_8);
+        bin.resolve("aws").toFile().setExecutable(true);
+
+        // The Credentials stage is skipped, builds read the tokens it would have stored
+        for (String parameterName : Arrays.asList(CodeArtifactCredentials.TOKEN_PARAMETER_NAME, CodeArtifactCredentials.PUBLISH_TOKEN_PARAMETER_NAME)) {
+            final Path token = workDirectory.resolve("aws/ssm").resolve(parameterName.substring(1));
+            Files.createDirectories(token.getParent());
+            Files.write(token, "local-token\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        final Process git = new ProcessBuilder("git", "rev-parse", "HEAD").directory(sourceRoot.toFile()).start();
+        final String head = new String(git.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        commitId = git.waitFor() == 0 && !head.isEmpty() ? head : "local";
+    }
+
+    private void copySource(final Path target) throws IOException {
+        try (Stream<Path> paths = Files.list(sourceRoot)) {
+            for (Path path : paths.collect(Collectors.toList())) {
+                final String name = path.getFileName().toString();
+                if (name.equals("target") || name.equals("cdk.out") || workDirectory.startsWith(path)) {
+                    continue;
+                }
+                LocalBuild.copy(path, target.resolve(name));
+            }
+        }
+    }
+
+    private Map<String, Object> runStage(final PipelineDefinition.Stage stage, final ExecutorService executor) throws IOException, InterruptedException {
+        final Map<Integer, List<PipelineDefinition.BuildAction>> runOrders = new TreeMap<>();
+        stage.getActions().forEach(action -> runOrders.computeIfAbsent(action.getRunOrder(), runOrder -> new ArrayList<>()).add(action));
+
+        final long started = System.nanoTime();
+        final List<Map<String, Object>> actionReports = new ArrayList<>();
+        final List<String> failures = new ArrayList<>();
+        for (List<PipelineDefinition.BuildAction> actions : runOrders.values()) {
+            final Map<PipelineDefinition.BuildAction, Future<LocalBuild.Result>> builds = new LinkedHashMap<>();
+            for (PipelineDefinition.BuildAction action : actions) {
+                builds.put(action, executor.submit(() -> runAction(stage, action)));
+            }
+            for (Map.Entry<PipelineDefinition.BuildAction, Future<LocalBuild.Result>> build : builds.entrySet()) {
+                final LocalBuild.Result result;
+                try {
+                    result = build.getValue().get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Action " + build.getKey().getName() + " could not run", e.getCause());
+                }
+                final Map<String, Object> actionReport = new LinkedHashMap<>();
+                actionReport.put("name", build.getKey().getName());
+                actionReport.put("runOrder", build.getKey().getRunOrder());
+                actionReport.put("succeeded", result.isSucceeded());
+                actionReport.put("millis", result.getMillis());
+                actionReport.put("phaseMillis", result.getPhaseMillis());
+                actionReports.add(actionReport);
+                if (!result.isSucceeded()) {
+                    failures.add(build.getKey().getName() + " failed, see " + result.getLog());
+                }
+            }
+            // Like CodePipeline, later run orders do not start after a failure
+            if (!failures.isEmpty()) {
+                break;
+            }
+        }
+        final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        System.out.printf("%-40s %8.1f s%n", stage.getName(), millis / 1000.0);
+        for (Map<String, Object> actionReport : actionReports) {
+            @SuppressWarnings("unchecked")
+            final Map<String, Long> phaseMillis = (Map<String, Long>) actionReport.get("phaseMillis");
+            System.out.printf("  %-38s %8.1f s  %s%n", actionReport.get("name"), (Long) actionReport.get("millis") / 1000.0,
+                    phaseMillis.entrySet().stream()
+                            .map(phase -> String.format("%s %.1f s", phase.getKey(), phase.getValue() / 1000.0))
+                            .collect(Collectors.joining(", ")));
+        }
+        failures.forEach(failure -> System.out.println("  " + failure));
+
+        final Map<String, Object> stageReport = new LinkedHashMap<>();
+        stageReport.put("name", stage.getName());
+        stageReport.put("succeeded", failures.isEmpty());
+        stageReport.put("millis", millis);
+        stageReport.put("actions", actionReports);
+        return stageReport;
+    }
+
+    private LocalBuild.Result runAction(final PipelineDefinition.Stage stage, final PipelineDefinition.BuildAction action) throws IOException, InterruptedException {
+        final Path buildDirectory = workDirectory.resolve("builds").resolve(stage.getName()).resolve(action.getName());
+        final Path home = sharedHome ? workDirectory.resolve("home") : workDirectory.resolve("homes").resolve(stage.getName() + "-" + action.getName());
+        if (!sharedHome) {
+            LocalBuild.delete(home);
+        }
+        Files.createDirectories(home);
+
+        final Map<String, Path> sources = new LinkedHashMap<>();
+        action.getInputs().forEach(input -> sources.put(input, workDirectory.resolve("artifacts").resolve(input)));
+        final Map<String, Path> outputs = new LinkedHashMap<>();
+        action.getOutputs().forEach(output -> outputs.put(output, workDirectory.resolve("artifacts").resolve(output)));
+        return new LocalBuild(action, buildDirectory, home).run(sources, environment(action, buildDirectory, home), outputs);
+    }
+
+    /** Variables CodeBuild would set, followed by those of the project and the action with references resolved. */
+    private Map<String, String> environment(final PipelineDefinition.BuildAction action, final Path buildDirectory, final Path home) throws IOException {
+        final Map<String, String> environment = new LinkedHashMap<>();
+        environment.put("HOME", home.toString());
+        environment.put("PATH", workDirectory.resolve("bin") + ":" + System.getenv("PATH"));
+        environment.put("LOCAL_AWS_STATE", workDirectory.resolve("aws").toString());
+        environment.put("LOCAL_MAVEN_REPOSITORY", repository.getDirectory().toString());
+        environment.put("MAVEN_REPOSITORY", home.resolve(".m2/repository").toString());
+        environment.put("BUILD_METRICS_STATE_DIR", buildDirectory.resolve("metrics").toString());
+        environment.put("CODEBUILD_BUILD_ID", action.getProjectId() + ":" + executionId);
+        environment.put("CODEBUILD_RESOLVED_SOURCE_VERSION", commitId);
+
+        for (Map.Entry<String, PipelineDefinition.EnvironmentVariable> variable : action.getEnvironment().entrySet()) {
+            final String value = variable.getValue().getValue();
+            if (variable.getValue().getType().equals("PARAMETER_STORE")) {
+                final Path parameter = workDirectory.resolve("aws/ssm").resolve(value.replaceFirst("^/", ""));
+                environment.put(variable.getKey(), Files.isRegularFile(parameter)
+                        ? new String(Files.readAllBytes(parameter), StandardCharsets.UTF_8).trim()
+                        : "");
+            } else {
+                environment.put(variable.getKey(), pipelineVariables(value));
+            }
+        }
+        return environment;
+    }
+
+    /** Replaces {@code #{namespace.variable}} references with the values of this run. */
+    private String pipelineVariables(final String value) {
+        final Matcher matcher = PIPELINE_VARIABLE.matcher(value);
+        final StringBuffer resolved = new StringBuffer();
+        while (matcher.find()) {
+            final String replacement;
+            switch (matcher.group(1)) {
+                case "CODEARTIFACT_REPOSITORY_URL":
+                    replacement = repository.getUrl();
+                    break;
+                case "CommitId":
+                    replacement = commitId;
+                    break;
+                case "PipelineExecutionId":
+                    replacement = executionId;
+                    break;
+                default:
+                    replacement = "";
+            }
+            matcher.appendReplacement(resolved, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(resolved);
+        return resolved.toString();
+    }
+}
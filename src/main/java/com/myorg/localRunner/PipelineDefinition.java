@@ -0,0 +1,257 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.localRunner;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stages and CodeBuild actions of the pipeline in a synthesized template, with the buildspec and environment of
+ * the project each action runs.
+ *
+ * References to other resources and pseudo parameters are replaced by placeholders such as {@code local-<id>},
+ * the runner never calls AWS. Actions of other providers, such as the CodeCommit source, are not listed.
+ */
+public final class PipelineDefinition {
+
+    private static final Map<String, String> PSEUDO_PARAMETERS = Map.of(
+            "AWS::AccountId", "000000000000",
+            "AWS::Region", "local",
+            "AWS::Partition", "aws",
+            "AWS::URLSuffix", "amazonaws.com",
+            "AWS::StackName", "local"
+    );
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final List<Stage> stages;
+
+    private PipelineDefinition(final List<Stage> stages) {
+        this.stages = stages;
+    }
+
+    public static PipelineDefinition read(final Path templateFile) {
+        try {
+            return of(MAPPER.readTree(templateFile.toFile()));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid template " + templateFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    static PipelineDefinition of(final JsonNode template) {
+        final JsonNode resources = template.path("Resources");
+        JsonNode pipeline = null;
+        final Iterator<Map.Entry<String, JsonNode>> entries = resources.fields();
+        while (entries.hasNext()) {
+            final JsonNode resource = entries.next().getValue();
+            if (resource.path("Type").asText().equals("AWS::CodePipeline::Pipeline")) {
+                if (pipeline != null) {
+                    throw new IllegalArgumentException("The template holds more than one pipeline");
+                }
+                pipeline = resource;
+            }
+        }
+        if (pipeline == null) {
+            throw new IllegalArgumentException("The template holds no pipeline");
+        }
+
+        final List<Stage> stages = new ArrayList<>();
+        for (JsonNode stage : pipeline.path("Properties").path("Stages")) {
+            final List<BuildAction> actions = new ArrayList<>();
+            for (JsonNode action : stage.path("Actions")) {
+                if (action.path("ActionTypeId").path("Provider").asText().equals("CodeBuild")) {
+                    actions.add(buildAction(resources, action));
+                }
+            }
+            stages.add(new Stage(stage.path("Name").asText(), actions));
+        }
+        return new PipelineDefinition(stages);
+    }
+
+    public List<Stage> getStages() {
+        return stages;
+    }
+
+    private static BuildAction buildAction(final JsonNode resources, final JsonNode action) {
+        final String name = action.path("Name").asText();
+        final JsonNode configuration = action.path("Configuration");
+        final String projectId = configuration.path("ProjectName").path("Ref").asText(null);
+        final JsonNode project = projectId != null ? resources.path(projectId) : null;
+        if (project == null || !project.path("Type").asText().equals("AWS::CodeBuild::Project")) {
+            throw new IllegalArgumentException("Action " + name + " runs a project outside the template, shared package builds cannot run locally");
+        }
+        final JsonNode properties = project.path("Properties");
+
+        final JsonNode buildSpec;
+        try {
+            buildSpec = MAPPER.readTree(resolve(properties.path("Source").path("BuildSpec")));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Project " + projectId + " of action " + name + " has no inline buildspec", e);
+        }
+
+        final Map<String, EnvironmentVariable> environment = new LinkedHashMap<>();
+        for (JsonNode variable : properties.path("Environment").path("EnvironmentVariables")) {
+            environment.put(variable.path("Name").asText(), new EnvironmentVariable(variable.path("Type").asText("PLAINTEXT"), resolve(variable.path("Value"))));
+        }
+        // Action variables override those of the project
+        if (configuration.has("EnvironmentVariables")) {
+            try {
+                for (JsonNode variable : MAPPER.readTree(resolve(configuration.path("EnvironmentVariables")))) {
+                    environment.put(variable.path("name").asText(), new EnvironmentVariable(variable.path("type").asText("PLAINTEXT"), variable.path("value").asText()));
+                }
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Action " + name + " has invalid environment variables", e);
+            }
+        }
+
+        return new BuildAction(name,
+                action.path("RunOrder").asInt(1),
+                projectId,
+                buildSpec,
+                environment,
+                artifactNames(action.path("InputArtifacts")),
+                artifactNames(action.path("OutputArtifacts")),
+                properties.path("TimeoutInMinutes").asInt(60));
+    }
+
+    private static List<String> artifactNames(final JsonNode artifacts) {
+        final List<String> names = new ArrayList<>();
+        artifacts.forEach(artifact -> names.add(artifact.path("Name").asText()));
+        return names;
+    }
+
+    /** Renders a template value as text, intrinsic functions resolve to placeholders. */
+    static String resolve(final JsonNode value) {
+        if (value.isTextual() || value.isNumber() || value.isBoolean()) {
+            return value.asText();
+        }
+        if (value.has("Fn::Join")) {
+            final StringBuilder joined = new StringBuilder();
+            final String separator = value.path("Fn::Join").path(0).asText();
+            final Iterator<JsonNode> parts = value.path("Fn::Join").path(1).elements();
+            while (parts.hasNext()) {
+                joined.append(resolve(parts.next()));
+                if (parts.hasNext()) {
+                    joined.append(separator);
+                }
+            }
+            return joined.toString();
+        }
+        if (value.has("Ref")) {
+            final String reference = value.path("Ref").asText();
+            return PSEUDO_PARAMETERS.getOrDefault(reference, "local-" + reference.toLowerCase());
+        }
+        if (value.has("Fn::GetAtt")) {
+            return "local-" + value.path("Fn::GetAtt").path(0).asText().toLowerCase() + "-" + value.path("Fn::GetAtt").path(1).asText().toLowerCase();
+        }
+        return "local";
+    }
+
+    /** Stage of the pipeline with its CodeBuild actions, in template order. */
+    public static final class Stage {
+        private final String name;
+        private final List<BuildAction> actions;
+
+        Stage(final String name, final List<BuildAction> actions) {
+            this.name = name;
+            this.actions = Collections.unmodifiableList(actions);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<BuildAction> getActions() {
+            return actions;
+        }
+    }
+
+    /** CodeBuild action together with the project it runs. */
+    public static final class BuildAction {
+        private final String name;
+        private final int runOrder;
+        private final String projectId;
+        private final JsonNode buildSpec;
+        private final Map<String, EnvironmentVariable> environment;
+        private final List<String> inputs;
+        private final List<String> outputs;
+        private final int timeoutMinutes;
+
+        BuildAction(final String name, final int runOrder, final String projectId, final JsonNode buildSpec, final Map<String, EnvironmentVariable> environment,
+                    final List<String> inputs, final List<String> outputs, final int timeoutMinutes) {
+            this.name = name;
+            this.runOrder = runOrder;
+            this.projectId = projectId;
+            this.buildSpec = buildSpec;
+            this.environment = Collections.unmodifiableMap(environment);
+            this.inputs = Collections.unmodifiableList(inputs);
+            this.outputs = Collections.unmodifiableList(outputs);
+            this.timeoutMinutes = timeoutMinutes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** Actions of a stage with the same run order run side by side, after those with a lower one. */
+        public int getRunOrder() {
+            return runOrder;
+        }
+
+        /** Logical id of the CodeBuild project. */
+        public String getProjectId() {
+            return projectId;
+        }
+
+        public JsonNode getBuildSpec() {
+            return buildSpec;
+        }
+
+        /** Variables of the project and of the action, the latter still holding {@code #{namespace.variable}} references. */
+        public Map<String, EnvironmentVariable> getEnvironment() {
+            return environment;
+        }
+
+        /** Input artifacts, the first one is the primary source. */
+        public List<String> getInputs() {
+            return inputs;
+        }
+
+        public List<String> getOutputs() {
+            return outputs;
+        }
+
+        public int getTimeoutMinutes() {
+            return timeoutMinutes;
+        }
+    }
+
+    /** Variable of type {@code PLAINTEXT} or {@code PARAMETER_STORE}, the value of the latter is the parameter name. */
+    public static final class EnvironmentVariable {
+        private final String type;
+        private final String value;
+
+        EnvironmentVariable(final String type, final String value) {
+            this.type = type;
+            this.value = value;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.mavenCache;
+
+import software.amazon.awscdk.Duration;
+import software.amazon.awscdk.RemovalPolicy;
+import software.amazon.awscdk.Stack;
+import software.amazon.awscdk.services.codebuild.BucketCacheOptions;
+import software.amazon.awscdk.services.codebuild.Cache;
+import software.amazon.awscdk.services.codebuild.LocalCacheMode;
+import software.amazon.awscdk.services.kms.IKey;
+import software.amazon.awscdk.services.s3.BlockPublicAccess;
+import software.amazon.awscdk.services.s3.Bucket;
+import software.amazon.awscdk.services.s3.BucketEncryption;
+import software.amazon.awscdk.services.s3.IBucket;
+import software.amazon.awscdk.services.s3.LifecycleRule;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+import software.constructs.Construct;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Local Maven repository cache shared by every CodeBuild project of the pipeline.
+ *
+ * In S3 mode the cache lives under a prefix derived from the third-party dependencies, plugins and properties
+ * declared in the pom files of the repository, so a dependency change starts a fresh cache instead of growing the
+ * old one forever. Versions of the in-repo packages are left out, releasing a package keeps the cache.
+ */
+public class MavenCache extends Construct {
+
+    public static final List<String> CACHE_PATHS = Arrays.asList("/root/.m2/**/*");
+
+    public Bucket bucket;
+
+    private final MavenCacheMode mode;
+    private final String prefix;
+
+    public MavenCache(final Construct scope, final String id, final MavenCacheMode mode, final Path sourceRoot, final IBucket accessLogsBucket, final IKey encryptionKey) {
+        super(scope, id);
+
+        this.mode = mode;
+        this.prefix = "maven/" + hashDependencyDeclarations(sourceRoot);
+
+        if (mode == MavenCacheMode.S3) {
+            bucket = Bucket.Builder.create(this, "Bucket")
+                    .bucketName("sample-java-cdk-maven-cache-" + Stack.of(this).getAccount())
+                    .serverAccessLogsBucket(accessLogsBucket)
+                    .blockPublicAccess(BlockPublicAccess.BLOCK_ALL)
+                    .encryption(BucketEncryption.KMS)
+                    .encryptionKey(encryptionKey)
+                    .removalPolicy(RemovalPolicy.DESTROY)
+                    .enforceSsl(true)
+                    .autoDeleteObjects(true)
+                    // Caches of superseded dependency hashes are never read again
+                    .lifecycleRules(Arrays.asList(
+                            LifecycleRule.builder()
+                                    .expiration(Duration.days(30))
+                                    .build()
+                    ))
+                    .build();
+        }
+    }
+
+    public MavenCacheMode getMode() {
+        return mode;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public Cache cache() {
+        return cache(mode);
+    }
+
+    /** Cache of a project deviating from the pipeline wide mode, S3 is only available when the pipeline uses it. */
+    public Cache cache(final MavenCacheMode projectMode) {
+        if (projectMode == MavenCacheMode.S3 && bucket == null) {
+            throw new IllegalArgumentException("The S3 Maven cache requires the pipeline mavenCacheMode S3, it is " + mode);
+        }
+        switch (projectMode) {
+            case S3:
+                return Cache.bucket(bucket, BucketCacheOptions.builder()
+                        .prefix(prefix)
+                        .build());
+            case LOCAL:
+                return Cache.local(LocalCacheMode.CUSTOM);
+            default:
+                return Cache.none();
+        }
+    }
+
+    /**
+     * Returns a copy of the given buildspec with the Maven repository declared as cache path.
+     */
+    public Map<String, Object> addTo(final Map<String, Object> buildSpec) {
+        return addTo(buildSpec, mode);
+    }
+
+    public Map<String, Object> addTo(final Map<String, Object> buildSpec, final MavenCacheMode projectMode) {
+        final Map<String, Object> result = new LinkedHashMap<>(buildSpec);
+        if (projectMode != MavenCacheMode.NONE) {
+            result.put("cache", Map.of("paths", CACHE_PATHS));
+        }
+        return result;
+    }
+
+    static String hashDependencyDeclarations(final Path sourceRoot) {
+        try {
+            final List<Document> poms = new ArrayList<>();
+            for (Path pom : pomFiles(sourceRoot)) {
+                poms.add(parse(pom));
+            }
+            // In-repo packages are published by the pipeline, their versions change with every release
+            final Set<String> inRepoCoordinates = new HashSet<>();
+            for (Document pom : poms) {
+                final Element project = pom.getDocumentElement();
+                final Element parent = child(project, "parent");
+                final String groupId = text(project, "groupId") != null || parent == null ? text(project, "groupId") : text(parent, "groupId");
+                inRepoCoordinates.add(groupId + ":" + text(project, "artifactId"));
+            }
+
+            final Set<String> declarations = new TreeSet<>();
+            for (Document pom : poms) {
+                for (String tag : Arrays.asList("parent", "dependency", "plugin", "extension")) {
+                    final NodeList elements = pom.getElementsByTagName(tag);
+                    for (int index = 0; index < elements.getLength(); index++) {
+                        final Element element = (Element) elements.item(index);
+                        final String coordinates = text(element, "groupId") + ":" + text(element, "artifactId");
+                        if (!inRepoCoordinates.contains(coordinates)) {
+                            declarations.add(tag + " " + coordinates + ":" + text(element, "version"));
+                        }
+                    }
+                }
+                // Versions are often declared as properties
+                final NodeList properties = pom.getElementsByTagName("properties");
+                for (int index = 0; index < properties.getLength(); index++) {
+                    for (Node node = properties.item(index).getFirstChild(); node != null; node = node.getNextSibling()) {
+                        if (node instanceof Element) {
+                            declarations.add("property " + node.getNodeName() + "=" + node.getTextContent().trim());
+                        }
+                    }
+                }
+            }
+
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String declaration : declarations) {
+                digest.update((declaration + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            final StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.substring(0, 16);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not hash pom files under " + sourceRoot, e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Document parse(final Path pom) throws IOException {
+        try {
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            return factory.newDocumentBuilder().parse(pom.toFile());
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IllegalArgumentException("Could not parse " + pom, e);
+        }
+    }
+
+    private static Element child(final Element element, final String name) {
+        for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element && name.equals(node.getNodeName())) {
+                return (Element) node;
+            }
+        }
+        return null;
+    }
+
+    private static String text(final Element element, final String name) {
+        final Element child = child(element, name);
+        return child == null ? null : child.getTextContent().trim();
+    }
+
+    private static List<Path> pomFiles(final Path sourceRoot) throws IOException {
+        final List<Path> poms = new ArrayList<>();
+        final Path rootPom = sourceRoot.resolve("pom.xml");
+        if (Files.isRegularFile(rootPom)) {
+            poms.add(rootPom);
+        }
+        final Path packages = sourceRoot.resolve("packages");
+        if (Files.isDirectory(packages)) {
+            try (Stream<Path> children = Files.list(packages)) {
+                poms.addAll(children
+                        .map(child -> child.resolve("pom.xml"))
+                        .filter(Files::isRegularFile)
+                        .sorted()
+                        .collect(Collectors.toList()));
+            }
+        }
+        return poms;
+    }
+}
@@ -0,0 +1,13 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.mavenCache;
+
+public enum MavenCacheMode {
+    /** Local Maven repository archived to a shared S3 bucket between builds. */
+    S3,
+    /** Local Maven repository kept on the CodeBuild host, only reused when the host is warm. */
+    LOCAL,
+    /** Every build starts with an empty local Maven repository. */
+    NONE
+}
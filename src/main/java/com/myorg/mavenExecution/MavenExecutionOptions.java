@@ -0,0 +1,198 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.mavenExecution;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import software.amazon.awscdk.services.codebuild.BuildEnvironmentVariable;
+import software.amazon.awscdk.services.codebuild.BuildEnvironmentVariableType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * How the buildspecs run Maven: reactor threads, surefire forks, JVM heap and garbage collector,
+ * and offline mode. {@link #command(String)} renders the {@code mvn} command line and
+ * {@link #environmentVariables()} the matching {@code MAVEN_OPTS}.
+ *
+ * Thread and fork counts take the Maven notation, a number or a multiple of the cores like {@code 1C}. Unset options
+ * keep the defaults of Maven and surefire, a single reactor thread and one reused fork, and add nothing to the command.
+ */
+@JsonDeserialize(builder = MavenExecutionOptions.Builder.class)
+public class MavenExecutionOptions {
+
+    private static final Pattern COUNT = Pattern.compile("[1-9][0-9]*C?|[0-9]*\\.[0-9]+C");
+    private static final Pattern HEAP = Pattern.compile("[1-9][0-9]*[kKmMgG]");
+
+    private final String threads;
+    private final String forkCount;
+    private final boolean reuseForks;
+    private final String heap;
+    private final String gcFlags;
+    private final boolean offline;
+
+    private MavenExecutionOptions(final Builder builder) {
+        this.threads = builder.threads;
+        this.forkCount = builder.forkCount;
+        this.reuseForks = builder.reuseForks;
+        this.heap = builder.heap;
+        this.gcFlags = builder.gcFlags;
+        this.offline = builder.offline;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** Reactor threads, {@code -T}, {@code null} for the single thread of Maven. */
+    public String getThreads() {
+        return threads;
+    }
+
+    /** Surefire {@code forkCount}, {@code null} for the single fork of surefire. */
+    public String getForkCount() {
+        return forkCount;
+    }
+
+    /** Surefire {@code reuseForks}. */
+    public boolean isReuseForks() {
+        return reuseForks;
+    }
+
+    /** Maximum heap of the Maven JVM, {@code 3g} for {@code -Xmx3g}, {@code null} to keep the JVM default. */
+    public String getHeap() {
+        return heap;
+    }
+
+    /** Garbage collector flags of the Maven JVM, {@code null} to keep the JVM default. */
+    public String getGcFlags() {
+        return gcFlags;
+    }
+
+    /**
+     * Whether Maven runs with {@code -o}. Only for projects whose cache already holds every dependency,
+     * {@link #online()} drops it for commands that need the network such as deploys.
+     */
+    public boolean isOffline() {
+        return offline;
+    }
+
+    /** The same options without offline mode. */
+    public MavenExecutionOptions online() {
+        return toBuilder().offline(false).build();
+    }
+
+    public Builder toBuilder() {
+        return builder()
+                .threads(threads)
+                .forkCount(forkCount)
+                .reuseForks(reuseForks)
+                .heap(heap)
+                .gcFlags(gcFlags)
+                .offline(offline);
+    }
+
+    /** {@code mvn} command running the given goals and arguments with the repository settings. */
+    public String command(final String goals) {
+        final List<String> command = new ArrayList<>();
+        command.add("mvn " + goals);
+        if (offline) {
+            command.add("-o");
+        }
+        if (threads != null) {
+            command.add("-T " + threads);
+        }
+        command.add("--settings settings.xml");
+        if (forkCount != null) {
+            command.add("-DforkCount=" + forkCount);
+        }
+        if (!reuseForks) {
+            command.add("-DreuseForks=false");
+        }
+        return String.join(" ", command);
+    }
+
+    /** {@code MAVEN_OPTS} for the heap and garbage collector flags, {@code null} when neither is set. */
+    public String mavenOpts() {
+        final List<String> opts = new ArrayList<>();
+        if (heap != null) {
+            opts.add("-Xmx" + heap);
+        }
+        if (gcFlags != null) {
+            opts.add(gcFlags);
+        }
+        return opts.isEmpty() ? null : String.join(" ", opts);
+    }
+
+    /** Project environment variables carrying {@link #mavenOpts()}, empty when it is {@code null}. */
+    public Map<String, BuildEnvironmentVariable> environmentVariables() {
+        final Map<String, BuildEnvironmentVariable> environmentVariables = new HashMap<>();
+        if (mavenOpts() != null) {
+            environmentVariables.put("MAVEN_OPTS", BuildEnvironmentVariable.builder()
+                    .type(BuildEnvironmentVariableType.PLAINTEXT)
+                    .value(mavenOpts())
+                    .build());
+        }
+        return environmentVariables;
+    }
+
+    @JsonPOJOBuilder(withPrefix = "")
+    public static final class Builder {
+        private String threads;
+        private String forkCount;
+        private boolean reuseForks = true;
+        private String heap;
+        private String gcFlags;
+        private boolean offline = false;
+
+        public Builder threads(final String threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public Builder forkCount(final String forkCount) {
+            this.forkCount = forkCount;
+            return this;
+        }
+
+        public Builder reuseForks(final boolean reuseForks) {
+            this.reuseForks = reuseForks;
+            return this;
+        }
+
+        public Builder heap(final String heap) {
+            this.heap = heap;
+            return this;
+        }
+
+        public Builder gcFlags(final String gcFlags) {
+            this.gcFlags = gcFlags;
+            return this;
+        }
+
+        public Builder offline(final boolean offline) {
+            this.offline = offline;
+            return this;
+        }
+
+        public MavenExecutionOptions build() {
+            if (threads != null && !COUNT.matcher(threads).matches()) {
+                throw new IllegalArgumentException("threads must be a count like 4 or 1C, got " + threads);
+            }
+            if (forkCount != null && !COUNT.matcher(forkCount).matches()) {
+                throw new IllegalArgumentException("forkCount must be a count like 4 or 1C, got " + forkCount);
+            }
+            if (heap != null && !HEAP.matcher(heap).matches()) {
+                throw new IllegalArgumentException("heap must be a size like 512m or 3g, got " + heap);
+            }
+            if (gcFlags != null && !gcFlags.startsWith("-XX:")) {
+                throw new IllegalArgumentException("gcFlags must be -XX: JVM flags, got " + gcFlags);
+            }
+            return new MavenExecutionOptions(this);
+        }
+    }
+}
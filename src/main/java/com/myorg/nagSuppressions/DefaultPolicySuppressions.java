@@ -0,0 +1,90 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.nagSuppressions;
+
+import io.github.cdklabs.cdknag.NagPackSuppression;
+import io.github.cdklabs.cdknag.NagSuppressions;
+import software.amazon.awscdk.CfnElement;
+import software.amazon.awscdk.Stack;
+import software.amazon.awscdk.services.codebuild.Project;
+import software.amazon.awscdk.services.s3.IBucket;
+import software.constructs.IConstruct;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * AwsSolutions-IAM5 suppressions for the wildcards of the default policies the CDK generates.
+ *
+ * Suppressions are attached to the constructs themselves, with logical ids read from the construct tree,
+ * so no path lookup is needed and renaming a construct cannot leave a stale suppression behind.
+ */
+public final class DefaultPolicySuppressions {
+
+    private static final List<String> ARTIFACT_ACCESS = Arrays.asList(
+            "Action::s3:Abort*",
+            "Action::s3:DeleteObject*",
+            "Action::s3:GetBucket*",
+            "Action::s3:GetObject*",
+            "Action::s3:List*",
+            "Action::kms:GenerateDataKey*",
+            "Action::kms:ReEncrypt*"
+    );
+
+    private DefaultPolicySuppressions() {
+    }
+
+    /** Pipelines and roles that read and write objects of the given buckets. */
+    public static void addToArtifactAccess(final IConstruct scope, final List<String> bucketObjects) {
+        final List<String> appliesTo = new ArrayList<>(ARTIFACT_ACCESS);
+        appliesTo.addAll(bucketObjects);
+        add(scope, appliesTo);
+    }
+
+    /**
+     * CodeBuild projects: their log group and report group wildcards, {@code Resource::*} of the image pull,
+     * and access to objects of the given buckets.
+     */
+    public static void addToProject(final Project project, final List<String> bucketObjects) {
+        final String projectLogicalId = logicalId(project);
+
+        final List<String> appliesTo = new ArrayList<>(Arrays.asList(
+                "Resource::arn:<AWS::Partition>:logs:<AWS::Region>:<AWS::AccountId>:log-group:/aws/codebuild/<" + projectLogicalId + ">:*",
+                "Resource::arn:<AWS::Partition>:codebuild:<AWS::Region>:<AWS::AccountId>:report-group/<" + projectLogicalId + ">-*",
+                "Resource::*"
+        ));
+        appliesTo.addAll(ARTIFACT_ACCESS);
+        appliesTo.addAll(bucketObjects);
+        add(project.getRole(), appliesTo);
+    }
+
+    /** Policies attached by this repository, with the wildcards they declare on purpose. */
+    public static void addToPolicy(final IConstruct policy, final List<String> appliesTo) {
+        add(policy, appliesTo);
+    }
+
+    /** {@code Resource::<BucketLogicalId.Arn>/<keyPattern>} of a bucket, or nothing for a bucket that was not created. */
+    public static List<String> bucketObjects(final IBucket bucket, final String keyPattern) {
+        if (bucket == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(Arrays.asList("Resource::<" + logicalId(bucket) + ".Arn>/" + keyPattern));
+    }
+
+    private static String logicalId(final IConstruct construct) {
+        return Stack.of(construct).getLogicalId((CfnElement) construct.getNode().getDefaultChild());
+    }
+
+    private static void add(final IConstruct scope, final List<String> appliesTo) {
+        NagSuppressions.addResourceSuppressions(scope,
+                Arrays.asList(
+                        new NagPackSuppression.Builder()
+                                .id("AwsSolutions-IAM5")
+                                .reason("Defined by a default policy")
+                                .appliesTo(appliesTo)
+                                .build()
+                ), true);
+    }
+}
@@ -0,0 +1,15 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.pipelineExecution;
+
+/**
+ * Execution modes of CodePipeline the stack supports. {@code PARALLEL} is left out, concurrent executions would
+ * deploy the pipeline in {@code SelfMutate} and write the shared published revision parameters at the same time.
+ */
+public enum PipelineExecutionMode {
+    /** A newer execution replaces the one waiting at a stage transition, so a burst of commits is published once. */
+    SUPERSEDED,
+    /** Executions run one after the other in the order they started, none is replaced. */
+    QUEUED
+}
@@ -0,0 +1,118 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.pipelineExecution;
+
+import com.myorg.buildMetrics.BuildMetrics;
+import com.myorg.nagSuppressions.DefaultPolicySuppressions;
+import software.amazon.awscdk.Duration;
+import software.amazon.awscdk.services.codebuild.*;
+import software.amazon.awscdk.services.codecommit.IRepository;
+import software.amazon.awscdk.services.codepipeline.IPipeline;
+import software.amazon.awscdk.services.events.EventField;
+import software.amazon.awscdk.services.events.EventPattern;
+import software.amazon.awscdk.services.events.Rule;
+import software.amazon.awscdk.services.events.RuleTargetInput;
+import software.amazon.awscdk.services.events.targets.CodeBuildProject;
+import software.amazon.awscdk.services.events.targets.CodeBuildProjectProps;
+import software.amazon.awscdk.services.iam.Effect;
+import software.amazon.awscdk.services.iam.PolicyStatement;
+import software.amazon.awscdk.services.kms.IKey;
+import software.constructs.Construct;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Starts the pipeline for pushes to a branch unless they only change excluded files.
+ *
+ * CodePipeline filters trigger file paths only for source connections, not for CodeCommit. The push event
+ * therefore starts this project instead of the pipeline, {@code scripts/trigger-pipeline.sh} lists the changed
+ * files and starts the pipeline when one of them is not excluded. The source action must not start the
+ * pipeline itself.
+ */
+public class PipelineTrigger extends Construct {
+
+    private static final Duration TIMEOUT = Duration.minutes(10);
+
+    public Project project;
+
+    public Rule rule;
+
+    public PipelineTrigger(final Construct scope, final String id, final IRepository repository, final String branch, final IPipeline pipeline, final List<String> excludedPaths, final IKey encryptionKey, final IBuildImage buildImage, final BuildMetrics buildMetrics) {
+        super(scope, id);
+
+        if (excludedPaths.isEmpty() || excludedPaths.stream().anyMatch(path -> path.isEmpty() || path.contains("'"))) {
+            throw new IllegalArgumentException("Excluded trigger paths must be non-empty patterns without single quotes, got " + excludedPaths);
+        }
+
+        project = Project.Builder.create(this, "TriggerPipeline")
+                .source(Source.codeCommit(CodeCommitSourceProps.builder()
+                        .repository(repository)
+                        .branchOrRef(branch)
+                        .build()))
+                .environment(BuildEnvironment.builder()
+                        .privileged(false)
+                        .computeType(ComputeType.SMALL)
+                        .buildImage(buildImage)
+                        .build()
+                )
+                .timeout(TIMEOUT)
+                .encryptionKey(encryptionKey)
+                .logging(buildMetrics.logging("TriggerPipeline"))
+                .buildSpec(BuildSpec.fromObject(buildMetrics.addTo(Map.of(
+                        "version", "0.2",
+                        "phases", Map.of(
+                                "build", Map.of(
+                                        "commands", Arrays.asList(
+                                                "bash scripts/trigger-pipeline.sh " + pipeline.getPipelineName() + " " + repository.getRepositoryName() + " \"$OLD_COMMIT_ID\" \"$COMMIT_ID\" "
+                                                        + excludedPaths.stream().map(path -> "'" + path + "'").collect(Collectors.joining(" "))
+                                        )
+                                )
+                        )
+                ), "Trigger", "TriggerPipeline")))
+                .build();
+
+        buildMetrics.track(project, "Trigger", "TriggerPipeline", TIMEOUT);
+
+        project.addToRolePolicy(PolicyStatement.Builder.create()
+                .effect(Effect.ALLOW)
+                .resources(Arrays.asList(repository.getRepositoryArn()))
+                .actions(Arrays.asList("codecommit:GetDifferences"))
+                .build());
+        project.addToRolePolicy(PolicyStatement.Builder.create()
+                .effect(Effect.ALLOW)
+                .resources(Arrays.asList(pipeline.getPipelineArn()))
+                .actions(Arrays.asList("codepipeline:StartPipelineExecution"))
+                .build());
+
+        // Branch creations carry no old commit, the script starts the pipeline for them
+        rule = Rule.Builder.create(this, "Push")
+                .description("Starts the Java sample pipeline unless a push only changes excluded files")
+                .eventPattern(EventPattern.builder()
+                        .source(Arrays.asList("aws.codecommit"))
+                        .resources(Arrays.asList(repository.getRepositoryArn()))
+                        .detailType(Arrays.asList("CodeCommit Repository State Change"))
+                        .detail(Map.of(
+                                "event", Arrays.asList("referenceCreated", "referenceUpdated"),
+                                "referenceType", Arrays.asList("branch"),
+                                "referenceName", Arrays.asList(branch)
+                        ))
+                        .build())
+                .targets(Arrays.asList(new CodeBuildProject(project, CodeBuildProjectProps.builder()
+                        .event(RuleTargetInput.fromObject(Map.of(
+                                "sourceVersion", EventField.fromPath("$.detail.commitId"),
+                                "environmentVariablesOverride", Arrays.asList(
+                                        Map.of("name", "OLD_COMMIT_ID", "type", "PLAINTEXT", "value", EventField.fromPath("$.detail.oldCommitId")),
+                                        Map.of("name", "COMMIT_ID", "type", "PLAINTEXT", "value", EventField.fromPath("$.detail.commitId"))
+                                )
+                        )))
+                        .build())))
+                .build();
+
+        DefaultPolicySuppressions.addToProject(project, new ArrayList<>());
+    }
+}
@@ -0,0 +1,105 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.sourceSplit;
+
+import com.myorg.buildAndPublishPackage.buildAndPublishPackage;
+import com.myorg.buildMetrics.BuildMetrics;
+import com.myorg.nagSuppressions.DefaultPolicySuppressions;
+import software.amazon.awscdk.Duration;
+import software.amazon.awscdk.services.codebuild.*;
+import software.amazon.awscdk.services.codepipeline.Artifact;
+import software.amazon.awscdk.services.codepipeline.IAction;
+import software.amazon.awscdk.services.codepipeline.actions.CodeBuildAction;
+import software.amazon.awscdk.services.codepipeline.actions.CodeBuildActionProps;
+import software.amazon.awscdk.services.s3.IBucket;
+import software.constructs.Construct;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the full clone of the repository into one trimmed source artifact per package, holding the package,
+ * its in-repo dependencies, {@code settings.xml} and {@code scripts/}. The package actions then download only
+ * their own tree instead of cloning the whole repository.
+ *
+ * A CodeBuild action emits at most five artifacts, so every five packages get their own split project and action.
+ */
+public class SourceSplit extends Construct {
+
+    private static final int MAX_OUTPUTS = 5;
+
+    public List<PipelineProject> projects = new ArrayList<>();
+
+    private final List<List<buildAndPublishPackage>> chunks = new ArrayList<>();
+
+    public SourceSplit(final Construct scope, final String id, final List<buildAndPublishPackage> packageProjects, final IBucket artifactBucket, final IBuildImage buildImage, final BuildMetrics buildMetrics) {
+        super(scope, id);
+
+        for (int start = 0; start < packageProjects.size(); start += MAX_OUTPUTS) {
+            chunks.add(packageProjects.subList(start, Math.min(start + MAX_OUTPUTS, packageProjects.size())));
+        }
+
+        for (int chunkIndex = 0; chunkIndex < chunks.size(); chunkIndex++) {
+            final String projectName = "SplitSources" + (chunkIndex + 1);
+            final List<String> commands = new ArrayList<>();
+            final Map<String, Object> secondaryArtifacts = new LinkedHashMap<>();
+            for (buildAndPublishPackage packageProject : chunks.get(chunkIndex)) {
+                commands.addAll(packageProject.splitCommands());
+                secondaryArtifacts.put(packageProject.sourceArtifact.getArtifactName(), Map.of(
+                        "files", Arrays.asList("**/*"),
+                        "base-directory", packageProject.splitDirectory()
+                ));
+            }
+
+            final PipelineProject project = PipelineProject.Builder.create(this, projectName)
+                    .environment(BuildEnvironment.builder()
+                            .privileged(false)
+                            .computeType(ComputeType.SMALL)
+                            .buildImage(buildImage)
+                            .build()
+                    )
+                    .encryptionKey(artifactBucket.getEncryptionKey())
+                    .logging(buildMetrics.logging(projectName))
+                    .buildSpec(BuildSpec.fromObject(buildMetrics.addTo(Map.of(
+                            "version", "0.2",
+                            "phases", Map.of(
+                                    "build", Map.of(
+                                            "commands", commands
+                                    )
+                            ),
+                            "artifacts", Map.of(
+                                    "secondary-artifacts", secondaryArtifacts
+                            )
+                    ), "SplitSources", projectName)))
+                    .build();
+
+            buildMetrics.track(project, "SplitSources", projectName, Duration.hours(1));
+
+            // The split decides which packages changed since their last deploy
+            chunks.get(chunkIndex).forEach(packageProject -> packageProject.publishedRevision.grantRead(project));
+
+            DefaultPolicySuppressions.addToProject(project, DefaultPolicySuppressions.bucketObjects(artifactBucket, "*"));
+            projects.add(project);
+        }
+    }
+
+    /** One split action per five packages, all in the same run order. */
+    public List<IAction> actions(final Artifact input) {
+        final List<IAction> actions = new ArrayList<>();
+        for (int chunkIndex = 0; chunkIndex < chunks.size(); chunkIndex++) {
+            final List<Artifact> outputs = new ArrayList<>();
+            chunks.get(chunkIndex).forEach(packageProject -> outputs.add(packageProject.sourceArtifact));
+            actions.add(new CodeBuildAction(CodeBuildActionProps.builder()
+                    .actionName("split-sources-" + (chunkIndex + 1))
+                    .project(projects.get(chunkIndex))
+                    .input(input)
+                    .outputs(outputs)
+                    .build()));
+        }
+        return actions;
+    }
+}
@@ -0,0 +1,189 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.testShards;
+
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Splits the test classes of the repository across shards, balanced by the durations of earlier runs.
+ *
+ * Runs inside the test shard builds, so every shard computes the same plan from the same inputs. It only uses the
+ * JDK, so the builds launch it from source before anything is compiled:
+ *
+ * <pre>
+ * java src/main/java/com/myorg/testShards/TestShardPlanner.java plan timings.txt src/test/java 0 4
+ * java src/main/java/com/myorg/testShards/TestShardPlanner.java timings reports
+ * </pre>
+ *
+ * {@code plan} prints the comma separated classes of one shard for {@code -Dtest}, {@code timings} prints
+ * the durations found in surefire reports in the {@code <class> <seconds>} format read by {@code plan}.
+ */
+public final class TestShardPlanner {
+
+    /** Duration assumed for every class while no timings have been recorded yet. */
+    static final double DEFAULT_SECONDS = 1.0;
+
+    private TestShardPlanner() {
+    }
+
+    public static void main(final String[] args) {
+        if (args.length == 5 && args[0].equals("plan")) {
+            final List<List<String>> shards = plan(
+                    discoverTestClasses(Paths.get(args[2])),
+                    readTimings(Paths.get(args[1])),
+                    Integer.parseInt(args[4]));
+            System.out.println(String.join(",", shards.get(Integer.parseInt(args[3]))));
+        } else if (args.length == 2 && args[0].equals("timings")) {
+            writeTimings(readReports(Paths.get(args[1])), System.out);
+        } else {
+            System.err.println("Usage: plan <timings file> <test source root> <shard index> <shard count> | timings <reports directory>");
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Longest processing time first: classes are handed out by descending duration, each to the least loaded shard.
+     * Classes without a recorded duration are assumed to take the average of the known ones.
+     */
+    static List<List<String>> plan(final List<String> testClasses, final Map<String, Double> timings, final int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be positive, got " + shardCount);
+        }
+        final double defaultSeconds = timings.values().stream()
+                .mapToDouble(Double::doubleValue)
+                .average()
+                .orElse(DEFAULT_SECONDS);
+
+        final List<String> ordered = testClasses.stream()
+                .distinct()
+                .sorted(Comparator.<String>comparingDouble(testClass -> timings.getOrDefault(testClass, defaultSeconds))
+                        .reversed()
+                        .thenComparing(Comparator.naturalOrder()))
+                .collect(Collectors.toList());
+
+        final List<List<String>> shards = new ArrayList<>();
+        final double[] loads = new double[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new ArrayList<>());
+        }
+        for (String testClass : ordered) {
+            int lightest = 0;
+            for (int i = 1; i < shardCount; i++) {
+                if (loads[i] < loads[lightest]) {
+                    lightest = i;
+                }
+            }
+            shards.get(lightest).add(testClass);
+            loads[lightest] += timings.getOrDefault(testClass, defaultSeconds);
+        }
+        shards.forEach(shard -> shard.sort(Comparator.naturalOrder()));
+        return shards;
+    }
+
+    /** Test classes below the test source root, matching the default surefire includes. */
+    static List<String> discoverTestClasses(final Path testSourceRoot) {
+        if (!Files.isDirectory(testSourceRoot)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.walk(testSourceRoot)) {
+            return files
+                    .filter(Files::isRegularFile)
+                    .filter(file -> isTestClass(file.getFileName().toString()))
+                    .map(file -> {
+                        final String relative = testSourceRoot.relativize(file).toString();
+                        return relative.substring(0, relative.length() - ".java".length()).replace(file.getFileSystem().getSeparator(), ".");
+                    })
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list " + testSourceRoot, e);
+        }
+    }
+
+    private static boolean isTestClass(final String fileName) {
+        if (!fileName.endsWith(".java")) {
+            return false;
+        }
+        final String name = fileName.substring(0, fileName.length() - ".java".length());
+        return name.startsWith("Test") || name.endsWith("Test") || name.endsWith("Tests") || name.endsWith("TestCase");
+    }
+
+    /** Reads a timings file, a missing file means no run has recorded timings yet. */
+    static Map<String, Double> readTimings(final Path file) {
+        final Map<String, Double> timings = new TreeMap<>();
+        if (!Files.isRegularFile(file)) {
+            return timings;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                final String[] fields = line.trim().split("\\s+");
+                if (fields.length == 2) {
+                    timings.put(fields[0], Double.parseDouble(fields[1]));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + file, e);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid timings file " + file, e);
+        }
+        return timings;
+    }
+
+    /** Durations per test class from the {@code TEST-*.xml} reports below a directory. */
+    static Map<String, Double> readReports(final Path reportsDirectory) {
+        final Map<String, Double> timings = new TreeMap<>();
+        if (!Files.isDirectory(reportsDirectory)) {
+            return timings;
+        }
+        final List<Path> reports;
+        try (Stream<Path> files = Files.walk(reportsDirectory)) {
+            reports = files
+                    .filter(file -> file.getFileName().toString().startsWith("TEST-") && file.getFileName().toString().endsWith(".xml"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list " + reportsDirectory, e);
+        }
+        for (Path report : reports) {
+            try {
+                final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+                factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+                final Element testsuite = factory.newDocumentBuilder().parse(report.toFile()).getDocumentElement();
+                // Surefire groups thousands, e.g. time="1,234.5"
+                final String time = testsuite.getAttribute("time").replace(",", "");
+                if (!testsuite.getAttribute("name").isEmpty() && !time.isEmpty()) {
+                    timings.merge(testsuite.getAttribute("name"), Double.parseDouble(time), Double::sum);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + report, e);
+            } catch (ParserConfigurationException | SAXException | NumberFormatException e) {
+                throw new IllegalArgumentException("Could not parse " + report, e);
+            }
+        }
+        return timings;
+    }
+
+    static void writeTimings(final Map<String, Double> timings, final PrintStream out) {
+        timings.forEach((testClass, seconds) -> out.println(testClass + " " + String.format(Locale.ROOT, "%.3f", seconds)));
+    }
+}
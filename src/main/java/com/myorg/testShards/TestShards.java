@@ -0,0 +1,203 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.testShards;
+
+import com.myorg.buildMetrics.BuildMetrics;
+import com.myorg.codeArtifactCredentials.CodeArtifactCredentials;
+import com.myorg.mavenCache.MavenCache;
+import com.myorg.mavenExecution.MavenExecutionOptions;
+import com.myorg.nagSuppressions.DefaultPolicySuppressions;
+import software.amazon.awscdk.Duration;
+import software.amazon.awscdk.RemovalPolicy;
+import software.amazon.awscdk.services.codebuild.*;
+import software.amazon.awscdk.services.codepipeline.Artifact;
+import software.amazon.awscdk.services.codepipeline.IAction;
+import software.amazon.awscdk.services.codepipeline.actions.CodeBuildAction;
+import software.amazon.awscdk.services.codepipeline.actions.CodeBuildActionProps;
+import software.amazon.awscdk.services.s3.Bucket;
+import software.amazon.awscdk.services.s3.LifecycleRule;
+import software.constructs.Construct;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the unit tests of the pipeline as parallel shards, followed by a merge action.
+ *
+ * Every shard plans its subset of test classes with {@code TestShardPlanner} from the durations recorded
+ * by the last merge under {@code test-timings/} in the artifact bucket, and uploads its surefire reports
+ * for the execution. The merge publishes the reports of all shards to one report group and records
+ * their durations for the next execution.
+ */
+public class TestShards extends Construct {
+
+    public static final int MAX_SHARD_COUNT = 20;
+
+    private static final String TIMINGS_PREFIX = "test-timings";
+    private static final String PLANNER_SOURCE = "src/main/java/com/myorg/testShards/TestShardPlanner.java";
+
+    public PipelineProject shardProject;
+
+    public PipelineProject mergeProject;
+
+    public ReportGroup reportGroup;
+
+    private final int shardCount;
+    private final CodeArtifactCredentials codeartifactCredentials;
+
+    public TestShards(final Construct scope, final String id, final int shardCount, final Bucket artifactBucket, final CodeArtifactCredentials codeartifactCredentials, final MavenCache mavenCache, final MavenExecutionOptions mavenExecutionOptions, final IBuildImage buildImage, final BuildMetrics buildMetrics) {
+        super(scope, id);
+
+        if (shardCount < 2 || shardCount > MAX_SHARD_COUNT) {
+            throw new IllegalArgumentException("Test shard count must be between 2 and " + MAX_SHARD_COUNT + ", got " + shardCount);
+        }
+
+        this.shardCount = shardCount;
+        this.codeartifactCredentials = codeartifactCredentials;
+
+        final Map<String, BuildEnvironmentVariable> environmentVariables = new HashMap<>(codeartifactCredentials.projectEnvironmentVariables());
+        environmentVariables.putAll(mavenExecutionOptions.environmentVariables());
+        environmentVariables.put("TIMINGS_LOCATION", BuildEnvironmentVariable.builder()
+                .type(BuildEnvironmentVariableType.PLAINTEXT)
+                .value("s3://" + artifactBucket.getBucketName() + "/" + TIMINGS_PREFIX)
+                .build());
+        environmentVariables.put("SHARD_COUNT", BuildEnvironmentVariable.builder()
+                .type(BuildEnvironmentVariableType.PLAINTEXT)
+                .value(String.valueOf(shardCount))
+                .build());
+
+        shardProject = PipelineProject.Builder.create(this, "Shard")
+                .environment(BuildEnvironment.builder()
+                        .privileged(false)
+                        .computeType(ComputeType.MEDIUM)
+                        .buildImage(buildImage)
+                        .build()
+                )
+                .encryptionKey(artifactBucket.getEncryptionKey())
+                .environmentVariables(environmentVariables)
+                .logging(buildMetrics.logging("RunTestShard"))
+                .cache(mavenCache.cache())
+                .buildSpec(BuildSpec.fromObject(buildMetrics.addTo(mavenCache.addTo(Map.of(
+                        "version", "0.2",
+                        "phases", Map.of(
+                                "pre_build", Map.of(
+                                        "commands", Arrays.asList(
+                                                "aws s3 cp $TIMINGS_LOCATION/timings.txt timings.txt || echo \"No test timings recorded yet\"",
+                                                // Launched from source, so the shard compiles once in its single Maven run
+                                                "export TEST_CLASSES=`java " + PLANNER_SOURCE + " plan timings.txt src/test/java $SHARD_INDEX $SHARD_COUNT`",
+                                                "echo \"Shard $SHARD_INDEX of $SHARD_COUNT runs $TEST_CLASSES\""
+                                        )
+                                ),
+                                "build", Map.of(
+                                        "commands", Arrays.asList(
+                                                "if [ -n \"$TEST_CLASSES\" ]; then " + mavenExecutionOptions.command("test -Dtest=$TEST_CLASSES -Dsurefire.failIfNoSpecifiedTests=false") + "; else echo \"No test classes planned for shard $SHARD_INDEX\"; fi"
+                                        )
+                                ),
+                                "post_build", Map.of(
+                                        "commands", Arrays.asList(
+                                                "if [ -d target/surefire-reports ]; then aws s3 cp target/surefire-reports $TIMINGS_LOCATION/executions/$PIPELINE_EXECUTION_ID/shard-$SHARD_INDEX --recursive --exclude \"*\" --include \"TEST-*.xml\"; fi"
+                                        )
+                                )
+                        )
+                )), "Test", "RunTestShard")))
+                .build();
+
+        reportGroup = ReportGroup.Builder.create(this, "Reports")
+                .removalPolicy(RemovalPolicy.DESTROY)
+                .build();
+
+        mergeProject = PipelineProject.Builder.create(this, "Merge")
+                .environment(BuildEnvironment.builder()
+                        .privileged(false)
+                        .computeType(ComputeType.SMALL)
+                        .buildImage(buildImage)
+                        .build()
+                )
+                .encryptionKey(artifactBucket.getEncryptionKey())
+                .environmentVariables(environmentVariables)
+                .logging(buildMetrics.logging("MergeTestReports"))
+                .cache(mavenCache.cache())
+                .buildSpec(BuildSpec.fromObject(buildMetrics.addTo(mavenCache.addTo(Map.of(
+                        "version", "0.2",
+                        "phases", Map.of(
+                                "build", Map.of(
+                                        "commands", Arrays.asList(
+                                                // The shards only run the tests, the merge keeps the packaging check of the unsharded stage
+                                                mavenExecutionOptions.command("package -DskipTests"),
+                                                "aws s3 cp $TIMINGS_LOCATION/executions/$PIPELINE_EXECUTION_ID reports --recursive",
+                                                "java " + PLANNER_SOURCE + " timings reports > timings.txt",
+                                                "aws s3 cp timings.txt $TIMINGS_LOCATION/timings.txt"
+                                        )
+                                )
+                        ),
+                        "reports", Map.of(
+                                reportGroup.getReportGroupArn(), Map.of(
+                                        "files", Arrays.asList("**/TEST-*.xml"),
+                                        "base-directory", "reports",
+                                        "file-format", "JUNITXML"
+                                )
+                        )
+                )), "Test", "MergeTestReports")))
+                .build();
+
+        buildMetrics.track(shardProject, "Test", "RunTestShard", Duration.hours(1));
+        buildMetrics.track(mergeProject, "Test", "MergeTestReports", Duration.hours(1));
+
+        // Reports of single executions are only read by the merge of the same execution
+        artifactBucket.addLifecycleRule(LifecycleRule.builder()
+                .prefix(TIMINGS_PREFIX + "/executions/")
+                .expiration(Duration.days(7))
+                .build());
+
+        final List<String> bucketObjects = DefaultPolicySuppressions.bucketObjects(artifactBucket, "*");
+        bucketObjects.addAll(DefaultPolicySuppressions.bucketObjects(artifactBucket, TIMINGS_PREFIX + "/*"));
+        bucketObjects.addAll(DefaultPolicySuppressions.bucketObjects(mavenCache.bucket, "*"));
+
+        for (PipelineProject project : Arrays.asList(shardProject, mergeProject)) {
+            artifactBucket.grantReadWrite(project, TIMINGS_PREFIX + "/*");
+            codeartifactCredentials.grantRead(project);
+            DefaultPolicySuppressions.addToProject(project, bucketObjects);
+        }
+        reportGroup.grantWrite(mergeProject);
+    }
+
+    /** Shard actions in run order 1 and the merge action in run order 2 of the same stage. */
+    public List<IAction> actions(final Artifact input) {
+        final List<IAction> actions = new ArrayList<>();
+        for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+            final Map<String, BuildEnvironmentVariable> environmentVariables = actionEnvironmentVariables();
+            environmentVariables.put("SHARD_INDEX", BuildEnvironmentVariable.builder()
+                    .type(BuildEnvironmentVariableType.PLAINTEXT)
+                    .value(String.valueOf(shardIndex))
+                    .build());
+            actions.add(new CodeBuildAction(CodeBuildActionProps.builder()
+                    .actionName("run-unit-tests-" + (shardIndex + 1))
+                    .project(shardProject)
+                    .input(input)
+                    .environmentVariables(environmentVariables)
+                    .runOrder(1)
+                    .build()));
+        }
+        actions.add(new CodeBuildAction(CodeBuildActionProps.builder()
+                .actionName("merge-test-reports")
+                .project(mergeProject)
+                .input(input)
+                .environmentVariables(actionEnvironmentVariables())
+                .runOrder(2)
+                .build()));
+        return actions;
+    }
+
+    private Map<String, BuildEnvironmentVariable> actionEnvironmentVariables() {
+        final Map<String, BuildEnvironmentVariable> environmentVariables = new HashMap<>(codeartifactCredentials.actionEnvironmentVariables());
+        environmentVariables.put("PIPELINE_EXECUTION_ID", BuildEnvironmentVariable.builder()
+                .type(BuildEnvironmentVariableType.PLAINTEXT)
+                .value("#{codepipeline.PipelineExecutionId}")
+                .build());
+        return environmentVariables;
+    }
+}
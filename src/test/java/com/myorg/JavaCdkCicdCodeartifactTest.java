@@ -3,14 +3,27 @@
 
 package com.myorg;
 
+ import com.myorg.mavenCache.MavenCacheMode;
+ import com.myorg.mavenExecution.MavenExecutionOptions;
+ import com.myorg.pipelineExecution.PipelineExecutionMode;
  import software.amazon.awscdk.App;
+ import software.amazon.awscdk.NestedStack;
+ import software.amazon.awscdk.assertions.Match;
  import software.amazon.awscdk.assertions.Template;
  import java.io.IOException;
 
+ import java.util.Arrays;
  import java.util.HashMap;
+ import java.util.List;
+ import java.util.Map;
+ import java.util.stream.Collectors;
 
  import org.junit.jupiter.api.Test;
 
+ import static org.junit.jupiter.api.Assertions.assertEquals;
+ import static org.junit.jupiter.api.Assertions.assertThrows;
+ import static org.junit.jupiter.api.Assertions.assertTrue;
+
  public class JavaCdkCicdCodeartifactTest {
 
      @Test
@@ -24,4 +37,700 @@ package com.myorg;
            put("RepositoryName", "JavaSampleRepository");
          }});
      }
- }
+
+     @Test
+     @SuppressWarnings("unchecked")
+     public void testMavenCacheOnEveryMavenProject() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack");
+
+         Template template = Template.fromStack(stack);
+
+         int mavenProjects = 0;
+         for (Object resource : template.findResources("AWS::CodeBuild::Project").values()) {
+             Map<String, Object> properties = (Map<String, Object>) ((Map<String, Object>) resource).get("Properties");
+             String buildSpec = String.valueOf(((Map<String, Object>) properties.get("Source")).get("BuildSpec"));
+             // Maven projects read the token from Parameter Store, the credentials and pre-warm projects resolve their own
+             if (!String.valueOf(properties.get("Environment")).contains("CODEARTIFACT_AUTH_TOKEN")) {
+                 continue;
+             }
+             mavenProjects++;
+             Map<String, Object> cache = (Map<String, Object>) properties.get("Cache");
+             assertEquals("S3", cache.get("Type"));
+             assertTrue(String.valueOf(cache.get("Location")).contains("maven/"));
+             assertTrue(buildSpec.contains("/root/.m2/**/*"));
+         }
+         assertTrue(mavenProjects >= 3);
+     }
+
+     @Test
+     public void testMavenCacheDisabled() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack", null,
+                 PipelineOptions.builder().mavenCacheMode(MavenCacheMode.NONE).build());
+
+         Template template = Template.fromStack(stack);
+
+         template.resourceCountIs("AWS::S3::Bucket", 2);
+     }
+
+     @Test
+     public void testPackagesAreDiscovered() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack");
+
+         Template template = Template.fromStack(stack);
+
+         template.hasResourceProperties("AWS::CodePipeline::Pipeline", Match.objectLike(Map.of(
+                 "Stages", Match.arrayWith(Arrays.asList(Match.objectLike(Map.of(
+                         "Name", "BuildAndPublishPackages",
+                         "Actions", Match.arrayWith(Arrays.asList(Match.objectLike(Map.of(
+                                 "Name", "sample-package",
+                                 "RunOrder", 1
+                         ))))
+                 ))))
+         )));
+     }
+
+     @Test
+     public void testPublishReusesVerifiedBuild() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack");
+
+         Template template = Template.fromStack(stack);
+
+         template.hasResourceProperties("AWS::CodePipeline::Pipeline", Match.objectLike(Map.of(
+                 "Stages", Match.arrayWith(Arrays.asList(
+                         Match.objectLike(Map.of(
+                                 "Name", "Test",
+                                 "Actions", Match.arrayWith(Arrays.asList(Match.objectLike(Map.of(
+                                         "Name", "verify-sample-package",
+                                         "OutputArtifacts", Arrays.asList(Map.of("Name", "VerifiedSamplePackage"))
+                                 ))))
+                         )),
+                         Match.objectLike(Map.of(
+                                 "Name", "BuildAndPublishPackages",
+                                 "Actions", Match.arrayWith(Arrays.asList(Match.objectLike(Map.of(
+                                         "Name", "sample-package",
+                                         "InputArtifacts", Arrays.asList(Map.of("Name", "SourceArtifact"), Map.of("Name", "VerifiedSamplePackage"))
+                                 ))))
+                         ))
+                 ))
+         )));
+         template.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Source", Match.objectLike(Map.of(
+                         "BuildSpec", Match.stringLikeRegexp("publish-package\\.sh com\\.myorg sample-hello-world-maven 0\\.2\\.0 ")
+                 ))
+         )));
+         assertEquals(0, template.findResources("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Properties", Match.objectLike(Map.of(
+                         "Source", Match.objectLike(Map.of(
+                                 "BuildSpec", Match.stringLikeRegexp("mvn deploy --settings")
+                         ))
+                 ))
+         ))).size());
+     }
+
+     @Test
+     public void testUnchangedPackagesAreSkipped() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack");
+
+         Template template = Template.fromStack(stack);
+
+         template.hasResourceProperties("AWS::SSM::Parameter", Map.of(
+                 "Name", "/java-sample-pipeline/published/sample-package",
+                 "Value", "none"
+         ));
+         template.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Source", Match.objectLike(Map.of(
+                         "BuildSpec", Match.stringLikeRegexp("package-changed\\.sh /java-sample-pipeline/published/sample-package packages/sample-package")
+                 ))
+         )));
+     }
+
+     @Test
+     public void testCodeArtifactCredentialsResolvedOncePerExecution() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack");
+
+         Template template = Template.fromStack(stack);
+
+         template.hasResourceProperties("AWS::CodePipeline::Pipeline", Match.objectLike(Map.of(
+                 "Stages", Match.arrayWith(Arrays.asList(
+                         Match.objectLike(Map.of("Name", "Source")),
+                         Match.objectLike(Map.of(
+                                 "Name", "Credentials",
+                                 "Actions", Arrays.asList(
+                                         Match.objectLike(Map.of(
+                                                 "Name", "resolve-credentials",
+                                                 "Namespace", "CodeArtifact"
+                                         )),
+                                         Match.objectLike(Map.of("Name", "resolve-publish-credentials"))
+                                 )
+                         ))
+                 ))
+         )));
+         template.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Environment", Match.objectLike(Map.of(
+                         "EnvironmentVariables", Match.arrayWith(Arrays.asList(Map.of(
+                                 "Name", "CODEARTIFACT_AUTH_TOKEN",
+                                 "Type", "PARAMETER_STORE",
+                                 "Value", "/java-sample-pipeline/codeartifact/auth-token"
+                         )))
+                 ))
+         )));
+         // The read-only and publish brokers, the scheduled pre-warm project runs outside the pipeline and mints its own token
+         assertEquals(2, template.findResources("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Properties", Match.objectLike(Map.of(
+                         "Source", Match.objectLike(Map.of(
+                                 "Type", "CODEPIPELINE",
+                                 "BuildSpec", Match.stringLikeRegexp("get-authorization-token")
+                         ))
+                 ))
+         ))).size());
+     }
+
+     @Test
+     @SuppressWarnings("unchecked")
+     public void testSelfMutateRunsBeforeTestsAndSkipsUnchangedTemplates() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack");
+
+         Template template = Template.fromStack(stack);
+
+         Map<String, Object> pipeline = (Map<String, Object>) template.findResources("AWS::CodePipeline::Pipeline").values().iterator().next();
+         List<Map<String, Object>> stages = (List<Map<String, Object>>) ((Map<String, Object>) pipeline.get("Properties")).get("Stages");
+         List<Object> stageNames = stages.stream().map(stage -> stage.get("Name")).collect(Collectors.toList());
+         assertTrue(stageNames.indexOf("UpdatePipeline") < stageNames.indexOf("Test"));
+
+         // The synthesized template is compared with the one CloudFormation holds, no hash is kept aside
+         assertTrue(template.findResources("AWS::SSM::Parameter", Match.objectLike(Map.of(
+                 "Properties", Match.objectLike(Map.of("Name", "/java-sample-pipeline/self-mutate/template-hash"))
+         ))).isEmpty());
+         template.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Source", Match.objectLike(Map.of(
+                         "BuildSpec", Match.stringLikeRegexp("aws cloudformation get-template --stack-name JavaCdkCicdCodeartifactStack --template-stage Original.*cdk deploy --app cdk.out --require-approval=never; fi")
+                 ))
+         )));
+         template.hasResourceProperties("AWS::IAM::Policy", Match.objectLike(Map.of(
+                 "PolicyDocument", Match.objectLike(Map.of(
+                         "Statement", Match.arrayWith(Arrays.asList(Match.objectLike(Map.of(
+                                 "Action", "cloudformation:GetTemplate",
+                                 "Resource", Map.of("Ref", "AWS::StackId")
+                         ))))
+                 ))
+         )));
+     }
+
+     @Test
+     public void testProjectsUseCustomBuildImage() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack");
+
+         Template template = Template.fromStack(stack);
+
+         assertEquals(0, template.findResources("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Properties", Match.objectLike(Map.of(
+                         "Environment", Match.objectLike(Map.of("Image", "aws/codebuild/standard:5.0"))
+                 ))
+         ))).size());
+         template.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Environment", Match.objectLike(Map.of(
+                         "ImagePullCredentialsType", "SERVICE_ROLE",
+                         "PrivilegedMode", true
+                 )),
+                 "Source", Match.objectLike(Map.of(
+                         "BuildSpec", Match.stringLikeRegexp("dockerd")
+                 ))
+         )));
+     }
+
+     @Test
+     public void testStockBuildImageFallback() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack", null,
+                 PipelineOptions.builder().customBuildImage(false).build());
+
+         Template template = Template.fromStack(stack);
+
+         assertEquals(0, template.findResources("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Properties", Match.objectLike(Map.of(
+                         "Environment", Match.objectLike(Map.of("ImagePullCredentialsType", "SERVICE_ROLE"))
+                 ))
+         ))).size());
+         template.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Source", Match.objectLike(Map.of(
+                         "BuildSpec", Match.stringLikeRegexp("npm install -g aws-cdk")
+                 ))
+         )));
+     }
+
+     @Test
+     @SuppressWarnings("unchecked")
+     public void testTestsAreSharded() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack", null,
+                 PipelineOptions.builder().testShardCount(3).build());
+
+         Template template = Template.fromStack(stack);
+
+         Map<String, Object> pipeline = (Map<String, Object>) template.findResources("AWS::CodePipeline::Pipeline").values().iterator().next();
+         List<Map<String, Object>> stages = (List<Map<String, Object>>) ((Map<String, Object>) pipeline.get("Properties")).get("Stages");
+         Map<String, Object> testStage = stages.stream().filter(stage -> stage.get("Name").equals("Test")).findFirst().get();
+         List<Map<String, Object>> actions = (List<Map<String, Object>>) testStage.get("Actions");
+         assertEquals(4, actions.size());
+         assertEquals(3, actions.stream().filter(action -> Integer.valueOf(1).equals(action.get("RunOrder"))).count());
+         assertEquals(2, actions.stream().filter(action -> action.get("Name").equals("merge-test-reports")).findFirst().get().get("RunOrder"));
+
+         template.resourceCountIs("AWS::CodeBuild::ReportGroup", 1);
+         template.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Source", Match.objectLike(Map.of(
+                         "BuildSpec", Match.stringLikeRegexp("java src/main/java/com/myorg/testShards/TestShardPlanner\\.java plan")
+                 ))
+         )));
+         // The planner runs from source, the shard compiles in its single test run
+         assertTrue(template.findResources("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Properties", Match.objectLike(Map.of(
+                         "Source", Match.objectLike(Map.of(
+                                 "BuildSpec", Match.stringLikeRegexp("test-compile")
+                         ))
+                 ))
+         ))).isEmpty());
+     }
+
+     @Test
+     @SuppressWarnings("unchecked")
+     public void testEveryPolicyCarriesItsSuppressions() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack");
+
+         Template template = Template.fromStack(stack);
+
+         Map<String, Map<String, Object>> policies = template.findResources("AWS::IAM::Policy");
+         assertTrue(policies.size() > 0);
+         policies.forEach((logicalId, policy) -> {
+             Map<String, Object> metadata = (Map<String, Object>) policy.get("Metadata");
+             assertTrue(metadata != null && metadata.containsKey("cdk_nag"), logicalId + " has no cdk-nag suppressions");
+         });
+     }
+
+     @Test
+     public void testBuildsReportMetrics() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack");
+
+         Template template = Template.fromStack(stack);
+
+         template.hasResourceProperties("AWS::CloudWatch::Dashboard", Map.of("DashboardName", "java-sample-pipeline"));
+         template.resourceCountIs("AWS::Logs::MetricFilter", 7);
+         template.hasResourceProperties("AWS::CloudWatch::Alarm", Match.objectLike(Map.of(
+                 "ExtendedStatistic", "p95",
+                 "Dimensions", Match.arrayWith(Arrays.asList(Map.of("Name", "Stage", "Value", "Test")))
+         )));
+         template.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Source", Match.objectLike(Map.of(
+                         "BuildSpec", Match.stringLikeRegexp("build-metrics\\.sh build Test RunUnitTests")
+                 ))
+         )));
+     }
+
+     @Test
+     public void testDependenciesArePrewarmedThroughUpstream() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack");
+
+         Template template = Template.fromStack(stack);
+
+         template.hasResourceProperties("AWS::CodeArtifact::Repository", Map.of(
+                 "RepositoryName", "maven-central-store",
+                 "ExternalConnections", Arrays.asList("public:maven-central")
+         ));
+         template.hasResourceProperties("AWS::CodeArtifact::Repository", Match.objectLike(Map.of(
+                 "RepositoryName", "mvn",
+                 "Upstreams", Arrays.asList("maven-central-store"),
+                 "ExternalConnections", Match.absent()
+         )));
+         template.hasResourceProperties("AWS::Events::Rule", Match.objectLike(Map.of(
+                 "ScheduleExpression", "cron(0 2 * * ? *)"
+         )));
+         template.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Source", Match.objectLike(Map.of(
+                         "Type", "CODECOMMIT",
+                         "BuildSpec", Match.stringLikeRegexp("prewarm-dependencies\\.sh")
+                 ))
+         )));
+     }
+
+     @Test
+     public void testMavenRunsWithExecutionOptions() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack", null,
+                 PipelineOptions.builder().mavenExecutionOptions(MavenExecutionOptions.builder().threads("2C").heap("2g").build()).build());
+
+         Template template = Template.fromStack(stack);
+
+         template.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Environment", Match.objectLike(Map.of(
+                         "EnvironmentVariables", Match.arrayWith(Arrays.asList(Match.objectLike(Map.of("Name", "MAVEN_OPTS", "Value", "-Xmx2g"))))
+                 )),
+                 "Source", Match.objectLike(Map.of(
+                         "BuildSpec", Match.stringLikeRegexp("mvn package -T 2C --settings settings.xml\"")
+                 ))
+         )));
+         template.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Source", Match.objectLike(Map.of(
+                         "BuildSpec", Match.stringLikeRegexp("mvn install -T 2C")
+                 ))
+         )));
+         assertThrows(IllegalArgumentException.class, () -> new JavaCdkCicdCodeartifactStack(new App(), "OfflineWithoutCache", null,
+                 PipelineOptions.builder()
+                         .mavenCacheMode(MavenCacheMode.NONE)
+                         .mavenExecutionOptions(MavenExecutionOptions.builder().offline(true).build())
+                         .build()));
+     }
+
+     @Test
+     public void testPackagesBuildFromTrimmedSources() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack", null,
+                 PipelineOptions.builder().sparseSourceArtifacts(true).build());
+
+         Template template = Template.fromStack(stack);
+
+         template.hasResourceProperties("AWS::CodePipeline::Pipeline", Match.objectLike(Map.of(
+                 "Stages", Match.arrayWith(Arrays.asList(
+                         Match.objectLike(Map.of(
+                                 "Name", "SplitSources",
+                                 "Actions", Arrays.asList(Match.objectLike(Map.of(
+                                         "Name", "split-sources-1",
+                                         "InputArtifacts", Arrays.asList(Map.of("Name", "SourceArtifact")),
+                                         "OutputArtifacts", Arrays.asList(Map.of("Name", "SourceSamplePackage"))
+                                 )))
+                         )),
+                         Match.objectLike(Map.of(
+                                 "Name", "Test",
+                                 "Actions", Match.arrayWith(Arrays.asList(Match.objectLike(Map.of(
+                                         "Name", "verify-sample-package",
+                                         "InputArtifacts", Arrays.asList(Map.of("Name", "SourceSamplePackage"))
+                                 ))))
+                         ))
+                 ))
+         )));
+         template.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Source", Match.objectLike(Map.of(
+                         "BuildSpec", Match.stringLikeRegexp("split-sources\\.sh split/sample-package packages/sample-package")
+                 ))
+         )));
+         template.hasResourceProperties("AWS::S3::Bucket", Match.objectLike(Map.of(
+                 "LifecycleConfiguration", Match.objectLike(Map.of(
+                         "Rules", Match.arrayWith(Arrays.asList(Match.objectLike(Map.of(
+                                 "Prefix", "java-sample-pipeline/",
+                                 "ExpirationInDays", 30
+                         ))))
+                 ))
+         )));
+     }
+
+     @Test
+     public void testBuildsRestoreFromBuildCache() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack", null,
+                 PipelineOptions.builder().remoteBuildCache(true).build());
+
+         Template template = Template.fromStack(stack);
+
+         template.hasResourceProperties("AWS::S3::Bucket", Match.objectLike(Map.of(
+                 "BucketEncryption", Match.objectLike(Map.of(
+                         "ServerSideEncryptionConfiguration", Match.arrayWith(Arrays.asList(Match.objectLike(Map.of(
+                                 "ServerSideEncryptionByDefault", Match.objectLike(Map.of("SSEAlgorithm", "aws:kms"))
+                         ))))
+                 )),
+                 "BucketName", Match.objectLike(Map.of(
+                         "Fn::Join", Match.arrayWith(Arrays.asList(Match.arrayWith(Arrays.asList("sample-java-cdk-build-cache-"))))
+                 ))
+         )));
+         template.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Source", Match.objectLike(Map.of(
+                         "BuildSpec", Match.stringLikeRegexp("export BUILD_CACHE_COMMAND=\\\\\"mvn package --settings settings\\.xml\\\\\" && if BUILD_CACHE_KEY=`bash \\$CODEBUILD_SRC_DIR/scripts/build-cache\\.sh key \\. scripts packages build-image`.*build-cache\\.sh restore \\$BUILD_CACHE_KEY target")
+                 ))
+         )));
+         template.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Source", Match.objectLike(Map.of(
+                         "BuildSpec", Match.stringLikeRegexp("build-cache\\.sh restore \\$BUILD_CACHE_KEY /root/\\.m2/repository/com/myorg/sample-hello-world-maven/0\\.2\\.0")
+                 ))
+         )));
+     }
+
+     @Test
+     @SuppressWarnings("unchecked")
+     public void testBenchmarksGatePublishing() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack", null,
+                 PipelineOptions.builder().benchmarkTolerancePercent(15).build());
+
+         Template template = Template.fromStack(stack);
+
+         Map<String, Object> pipeline = (Map<String, Object>) template.findResources("AWS::CodePipeline::Pipeline").values().iterator().next();
+         List<Map<String, Object>> stages = (List<Map<String, Object>>) ((Map<String, Object>) pipeline.get("Properties")).get("Stages");
+         List<Object> stageNames = stages.stream().map(stage -> stage.get("Name")).collect(Collectors.toList());
+         assertTrue(stageNames.indexOf("Test") < stageNames.indexOf("Benchmark"));
+         assertTrue(stageNames.indexOf("Benchmark") < stageNames.indexOf("BuildAndPublishPackages"));
+
+         template.hasResourceProperties("AWS::CodePipeline::Pipeline", Match.objectLike(Map.of(
+                 "Stages", Match.arrayWith(Arrays.asList(Match.objectLike(Map.of(
+                         "Name", "Benchmark",
+                         "Actions", Arrays.asList(Match.objectLike(Map.of(
+                                 "Name", "benchmark-sample-package",
+                                 "InputArtifacts", Arrays.asList(Map.of("Name", "SourceArtifact"), Map.of("Name", "VerifiedSamplePackage"))
+                         )))
+                 ))))
+         )));
+         template.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Environment", Match.objectLike(Map.of("ComputeType", "BUILD_GENERAL1_LARGE")),
+                 "Source", Match.objectLike(Map.of(
+                         "BuildSpec", Match.objectLike(Map.of(
+                                 "Fn::Join", Match.arrayWith(Arrays.asList(Match.arrayWith(Arrays.asList(
+                                         Match.stringLikeRegexp("package-benchmarks\\.sh packages/sample-package com\\.myorg sample-hello-world-maven 0\\.2\\.0 s3://"),
+                                         Match.stringLikeRegexp("/benchmark-baselines/sample-package\\.json 15;")
+                                 ))))
+                         ))
+                 ))
+         )));
+
+         Template withoutBenchmarks = Template.fromStack(new JavaCdkCicdCodeartifactStack(new App(), "WithoutBenchmarks", null,
+                 PipelineOptions.builder().packageBenchmarks(false).build()));
+         Map<String, Object> pipelineWithoutBenchmarks = (Map<String, Object>) withoutBenchmarks.findResources("AWS::CodePipeline::Pipeline").values().iterator().next();
+         assertTrue(((List<Map<String, Object>>) ((Map<String, Object>) pipelineWithoutBenchmarks.get("Properties")).get("Stages")).stream()
+                 .noneMatch(stage -> stage.get("Name").equals("Benchmark")));
+     }
+
+     @Test
+     public void testExecutionModeAndTriggerFilters() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack", null,
+                 PipelineOptions.builder()
+                         .executionMode(PipelineExecutionMode.QUEUED)
+                         .triggerExcludedPaths(Arrays.asList("README.md", "docs/*"))
+                         .build());
+
+         Template template = Template.fromStack(stack);
+
+         template.hasResourceProperties("AWS::CodePipeline::Pipeline", Match.objectLike(Map.of(
+                 "PipelineType", "V2",
+                 "ExecutionMode", "QUEUED",
+                 "Stages", Match.arrayWith(Arrays.asList(Match.objectLike(Map.of(
+                         "Name", "Source",
+                         "Actions", Arrays.asList(Match.objectLike(Map.of(
+                                 "Configuration", Match.objectLike(Map.of("PollForSourceChanges", false))
+                         )))
+                 ))))
+         )));
+         template.hasResourceProperties("AWS::Events::Rule", Match.objectLike(Map.of(
+                 "EventPattern", Match.objectLike(Map.of(
+                         "detail", Map.of(
+                                 "event", Arrays.asList("referenceCreated", "referenceUpdated"),
+                                 "referenceType", Arrays.asList("branch"),
+                                 "referenceName", Arrays.asList("main")
+                         )
+                 )),
+                 "Targets", Arrays.asList(Match.objectLike(Map.of(
+                         "InputTransformer", Match.objectLike(Map.of(
+                                 "InputPathsMap", Match.objectLike(Map.of("detail-oldCommitId", "$.detail.oldCommitId"))
+                         ))
+                 )))
+         )));
+         template.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Source", Match.objectLike(Map.of(
+                         "Type", "CODECOMMIT",
+                         "BuildSpec", Match.objectLike(Map.of(
+                                 "Fn::Join", Match.arrayWith(Arrays.asList(Match.arrayWith(Arrays.asList(
+                                         Match.stringLikeRegexp("COMMIT_ID.* 'README\\.md' 'docs/\\*'")
+                                 ))))
+                         ))
+                 ))
+         )));
+
+         // Without filters the source action keeps starting the pipeline, as a V1 pipeline in SUPERSEDED mode
+         Template defaults = Template.fromStack(new JavaCdkCicdCodeartifactStack(new App(), "Defaults"));
+         defaults.hasResourceProperties("AWS::CodePipeline::Pipeline", Match.objectLike(Map.of(
+                 "PipelineType", Match.absent(),
+                 "ExecutionMode", Match.absent()
+         )));
+         assertEquals(0, defaults.findResources("AWS::Events::Rule", Match.objectLike(Map.of(
+                 "Properties", Match.objectLike(Map.of(
+                         "Targets", Match.arrayWith(Arrays.asList(Match.objectLike(Map.of("InputTransformer", Match.anyValue()))))
+                 ))
+         ))).size());
+     }
+
+     @Test
+     @SuppressWarnings("unchecked")
+     public void testPackagesShareBuildsInNestedStacks() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack", null,
+                 PipelineOptions.builder().sharedPackageBuilds(true).build());
+
+         Template template = Template.fromStack(stack);
+         Template defaults = Template.fromStack(new JavaCdkCicdCodeartifactStack(new App(), "Defaults"));
+
+         // Verify, publish and benchmark of the sample package moved to the nested stack
+         template.resourceCountIs("AWS::CloudFormation::Stack", 1);
+         assertEquals(defaults.findResources("AWS::CodeBuild::Project").size() - 3, template.findResources("AWS::CodeBuild::Project").size());
+
+         Map<String, Object> pipeline = (Map<String, Object>) template.findResources("AWS::CodePipeline::Pipeline").values().iterator().next();
+         List<Map<String, Object>> actions = ((List<Map<String, Object>>) ((Map<String, Object>) pipeline.get("Properties")).get("Stages")).stream()
+                 .flatMap(stage -> ((List<Map<String, Object>>) stage.get("Actions")).stream())
+                 .collect(Collectors.toList());
+         Map<String, Map<String, Object>> packageActions = new HashMap<>();
+         actions.stream()
+                 .filter(action -> Arrays.asList("verify-sample-package", "benchmark-sample-package", "sample-package").contains(action.get("Name")))
+                 .forEach(action -> packageActions.put((String) action.get("Name"), action));
+         assertEquals(3, packageActions.size());
+         packageActions.values().forEach(action -> {
+             String environmentVariables = String.valueOf(((Map<String, Object>) action.get("Configuration")).get("EnvironmentVariables"));
+             assertTrue(environmentVariables.contains("PACKAGE_NAME") && environmentVariables.contains("sample-package"), environmentVariables);
+             assertEquals(packageActions.get("verify-sample-package").get("RoleArn"), action.get("RoleArn"));
+         });
+
+         NestedStack packageStack = stack.getNode().findAll().stream()
+                 .filter(NestedStack.class::isInstance)
+                 .map(NestedStack.class::cast)
+                 .findFirst()
+                 .get();
+         Template nested = Template.fromStack(packageStack);
+         nested.resourceCountIs("AWS::IAM::Role", 0);
+         nested.resourceCountIs("AWS::IAM::Policy", 0);
+         for (Object project : nested.findResources("AWS::CodeBuild::Project").values()) {
+             String buildSpec = String.valueOf(((Map<String, Object>) ((Map<String, Object>) ((Map<String, Object>) project).get("Properties")).get("Source")).get("BuildSpec"));
+             assertTrue(buildSpec.contains(":s3:::") && !buildSpec.contains("phases"), buildSpec);
+         }
+     }
+
+     @Test
+     public void testStartupImagesArePublishedWithTheJar() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack");
+
+         Template template = Template.fromStack(stack);
+
+         // The sample package opts in through its build profile, the images follow the install
+         template.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Source", Match.objectLike(Map.of(
+                         "BuildSpec", Match.stringLikeRegexp("install[^;]* && STARTUP_RUNS=5 bash \\$CODEBUILD_SRC_DIR/scripts/startup-images\\.sh com\\.myorg sample-hello-world-maven 0\\.2\\.0 hello\\.HelloWorld;")
+                 ))
+         )));
+
+         Template shared = Template.fromStack(new JavaCdkCicdCodeartifactStack(new App(), "Shared", null,
+                 PipelineOptions.builder().sharedPackageBuilds(true).build()).getNode().findAll().stream()
+                 .filter(NestedStack.class::isInstance)
+                 .map(NestedStack.class::cast)
+                 .findFirst()
+                 .get());
+         shared.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Environment", Match.objectLike(Map.of(
+                         "EnvironmentVariables", Match.arrayWith(Arrays.asList(Match.objectLike(Map.of(
+                                 "Name", "STARTUP_IMAGES",
+                                 "Value", "com.myorg sample-hello-world-maven 0.2.0 hello.HelloWorld"
+                         ))))
+                 ))
+         )));
+     }
+
+     @Test
+     public void testPublishTokenIsOnlyReadByPublishProjects() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack");
+
+         Template template = Template.fromStack(stack);
+
+         // Only the publish project of the sample package reads the publish token
+         List<String> publishTokenProjects = template.findResources("AWS::CodeBuild::Project").entrySet().stream()
+                 .filter(entry -> String.valueOf(entry.getValue().get("Properties")).contains("/java-sample-pipeline/codeartifact/publish-token"))
+                 .map(Map.Entry::getKey)
+                 .collect(Collectors.toList());
+         assertEquals(1, publishTokenProjects.size());
+         assertTrue(publishTokenProjects.get(0).startsWith("BuildSamplePackage"), publishTokenProjects.get(0));
+
+         // Publishing is limited to the packages of the in-repo group ids
+         List<String> publishPolicies = template.findResources("AWS::IAM::Policy").values().stream()
+                 .map(String::valueOf)
+                 .filter(policy -> policy.contains("codeartifact:PublishPackageVersion"))
+                 .collect(Collectors.toList());
+         assertEquals(1, publishPolicies.size());
+         assertTrue(publishPolicies.get(0).contains("package/aws-java-sample-domain/mvn/maven/com.myorg/*"), publishPolicies.get(0));
+     }
+
+     @Test
+     public void testInRepoInstallsNeverComeFromTheMavenCache() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack");
+
+         Template template = Template.fromStack(stack);
+
+         // Cleared before the verified inputs are copied in and again once the install is collected
+         template.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Source", Match.objectLike(Map.of(
+                         "BuildSpec", Match.stringLikeRegexp("\"rm -rf /root/\\.m2/repository/com/myorg/sample-hello-world-maven/0\\.2\\.0\",\\s*\"for input ")
+                 ))
+         )));
+         template.hasResourceProperties("AWS::CodeBuild::Project", Match.objectLike(Map.of(
+                 "Source", Match.objectLike(Map.of(
+                         "BuildSpec", Match.stringLikeRegexp("verified/repository/com/myorg/sample-hello-world-maven/0\\.2\\.0/; fi\",\\s*\"rm -rf /root/\\.m2/repository/com/myorg/sample-hello-world-maven/0\\.2\\.0\"")
+                 ))
+         )));
+     }
+
+     @Test
+     public void testExecutionModesExcludeParallelWithSelfMutate() {
+         assertEquals(Arrays.asList(PipelineExecutionMode.SUPERSEDED, PipelineExecutionMode.QUEUED), Arrays.asList(PipelineExecutionMode.values()));
+
+         Template template = Template.fromStack(new JavaCdkCicdCodeartifactStack(new App(), "JavaCdkCicdCodeartifactStack", null,
+                 PipelineOptions.builder().build()));
+
+         template.hasResourceProperties("AWS::CodePipeline::Pipeline", Match.objectLike(Map.of(
+                 "ExecutionMode", Match.absent(),
+                 "Stages", Match.arrayWith(Arrays.asList(Match.objectLike(Map.of("Name", "UpdatePipeline"))))
+         )));
+     }
+
+     @Test
+     @SuppressWarnings("unchecked")
+     public void testSharedRolesAreScopedToTheirProjects() {
+         App app = new App();
+         JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, "JavaCdkCicdCodeartifactStack", null,
+                 PipelineOptions.builder().sharedPackageBuilds(true).build());
+
+         Template template = Template.fromStack(stack);
+
+         // The package actions may only start the shared package projects
+         List<String> startBuildPolicies = template.findResources("AWS::IAM::Policy").values().stream()
+                 .map(String::valueOf)
+                 .filter(policy -> policy.contains("codebuild:StartBuild") && policy.contains("SharedPackageBuildsActionRole"))
+                 .collect(Collectors.toList());
+         assertEquals(1, startBuildPolicies.size());
+         assertTrue(startBuildPolicies.get(0).contains(":project/java-sample-package-*") && !startBuildPolicies.get(0).contains(":project/*"), startBuildPolicies.get(0));
+         Template nested = Template.fromStack(stack.getNode().findAll().stream()
+                 .filter(NestedStack.class::isInstance)
+                 .map(NestedStack.class::cast)
+                 .findFirst()
+                 .get());
+         nested.findResources("AWS::CodeBuild::Project").values().forEach(project -> assertTrue(
+                 String.valueOf(((Map<String, Object>) project.get("Properties")).get("Name")).startsWith("java-sample-package-sample-package-"), String.valueOf(project)));
+
+         // Only the publish role records published revisions
+         List<String> putParameterPolicies = template.findResources("AWS::IAM::Policy").values().stream()
+                 .map(String::valueOf)
+                 .filter(policy -> policy.contains("ssm:PutParameter") && policy.contains("parameter/java-sample-pipeline/published/"))
+                 .collect(Collectors.toList());
+         assertEquals(1, putParameterPolicies.size());
+         assertTrue(putParameterPolicies.get(0).contains("SharedPackageBuildsPublishRole"), putParameterPolicies.get(0));
+
+         // The projects clone the full source, their roles cannot receive the pull grant from the pipeline
+         for (String role : Arrays.asList("SharedPackageBuildsProjectRole", "SharedPackageBuildsBenchmarkRole", "SharedPackageBuildsPublishRole")) {
+             assertTrue(template.findResources("AWS::IAM::Policy").values().stream()
+                     .map(String::valueOf)
+                     .anyMatch(policy -> policy.contains("codecommit:GitPull") && policy.contains("CodeCommitRepository") && policy.contains(role)), role);
+         }
+     }
+}
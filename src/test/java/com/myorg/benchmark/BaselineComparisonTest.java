@@ -0,0 +1,82 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.benchmark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** Runs {@code scripts/BaselineComparison.java} from source on JMH results. */
+public class BaselineComparisonTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testThroughputRegressesWhenItDrops() throws Exception {
+        Path baseline = result("baseline.json", "hello.HelloWorldBenchmark.greeting", "", 1000.0, "ops/ms", null);
+
+        assertEquals("", run(0, result("faster.json", "hello.HelloWorldBenchmark.greeting", "", 1500.0, "ops/ms", null), baseline, "10"));
+        assertEquals("", run(0, result("within.json", "hello.HelloWorldBenchmark.greeting", "", 950.0, "ops/ms", null), baseline, "10"));
+        assertEquals("hello.HelloWorldBenchmark.greeting [ops/ms] regressed from 1000.0 to 800.0 (-20%)\n",
+                run(1, result("slower.json", "hello.HelloWorldBenchmark.greeting", "", 800.0, "ops/ms", null), baseline, "10"));
+    }
+
+    @Test
+    public void testTimeAndAllocationRegressWhenTheyRise() throws Exception {
+        Path baseline = result("baseline.json", "com.myorg.benchmark.StackSynthBenchmark.synth", "\"packageCount\": \"1\"", 100.0, "ms/op", 2000.0);
+
+        assertEquals("com.myorg.benchmark.StackSynthBenchmark.synth packageCount=1 [B/op] regressed from 2000.0 to 2500.0 (+25%)\n",
+                run(1, result("result.json", "com.myorg.benchmark.StackSynthBenchmark.synth", "\"packageCount\": \"1\"", 80.0, "ms/op", 2500.0), baseline, "10"));
+    }
+
+    @Test
+    public void testScoresWithoutBaselineAreIgnored() throws Exception {
+        Path baseline = result("baseline.json", "hello.HelloWorldBenchmark.greeting", "", 1000.0, "ops/ms", null);
+
+        assertEquals("", run(0, result("result.json", "hello.NewBenchmark.run", "", 1.0, "ops/s", null), baseline, "10"));
+    }
+
+    @Test
+    public void testMissingBaselineOnlyFailsWhenRequired() throws Exception {
+        Path result = result("result.json", "hello.HelloWorldBenchmark.greeting", "", 1000.0, "ops/ms", null);
+        Path baseline = directory.resolve("missing.json");
+
+        run(0, result, baseline, "20");
+        run(0, result, baseline, "20", "false");
+        run(1, result, baseline, "20", "true");
+    }
+
+    /** Writes a JMH result with one run, allocation as the profiler metric JMH 1.35 names with a middle dot. */
+    private Path result(final String name, final String benchmark, final String params, final double score, final String unit, final Double allocation) throws IOException {
+        Path file = directory.resolve(name);
+        Files.write(file, ("[{"
+                + "\"benchmark\": \"" + benchmark + "\","
+                + "\"params\": {" + params + "},"
+                + "\"primaryMetric\": {\"score\": " + score + ", \"scoreUnit\": \"" + unit + "\", \"scoreConfidence\": [1.0E2, 2.0E3]},"
+                + "\"secondaryMetrics\": {"
+                + "\"\u00b7gc.alloc.rate\": {\"score\": 900.0, \"scoreUnit\": \"MB/sec\"}"
+                + (allocation == null ? "" : ", \"\u00b7gc.alloc.rate.norm\": {\"score\": " + allocation + ", \"scoreUnit\": \"B/op\"}")
+                + "}}]").getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private String run(final int expectedStatus, final Path result, final Path baseline, final String... arguments) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(Arrays.asList("java", "scripts/BaselineComparison.java", result.toString(), baseline.toString()));
+        command.addAll(Arrays.asList(arguments));
+        Process process = new ProcessBuilder(command).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(expectedStatus, process.waitFor(), output);
+        return output.startsWith("No benchmark baseline") ? "" : output;
+    }
+}
@@ -0,0 +1,100 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.buildAndPublishPackage;
+
+import com.myorg.mavenCache.MavenCacheMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awscdk.services.codebuild.ComputeType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BuildProfileTest {
+
+    @TempDir
+    Path packageDirectory;
+
+    @Test
+    public void testDefaultsWithoutProfile() {
+        BuildProfile profile = BuildProfile.load(packageDirectory);
+
+        assertEquals(ComputeType.MEDIUM, profile.getComputeType());
+        assertEquals(BuildArchitecture.X86_64, profile.getArchitecture());
+        assertEquals(60, profile.getTimeoutMinutes());
+        assertNull(profile.getCacheMode());
+        assertNull(profile.getMavenOpts());
+        assertNull(profile.getMaven());
+    }
+
+    @Test
+    public void testProfileIsRead() throws IOException {
+        writeProfile("{\"computeType\": \"LARGE\", \"architecture\": \"ARM64\", \"timeoutMinutes\": 30, \"cacheMode\": \"LOCAL\", \"mavenOpts\": \"-Xmx3g\"}");
+
+        BuildProfile profile = BuildProfile.load(packageDirectory);
+
+        assertEquals(ComputeType.LARGE, profile.getComputeType());
+        assertEquals(BuildArchitecture.ARM64, profile.getArchitecture());
+        assertEquals(30, profile.getTimeoutMinutes());
+        assertEquals(MavenCacheMode.LOCAL, profile.getCacheMode());
+        assertEquals("-Xmx3g", profile.getMavenOpts());
+    }
+
+    @Test
+    public void testMavenExecutionOptionsAreRead() throws IOException {
+        writeProfile("{\"maven\": {\"threads\": \"2C\", \"forkCount\": \"3\", \"offline\": true}}");
+
+        BuildProfile profile = BuildProfile.load(packageDirectory);
+
+        assertEquals("2C", profile.getMaven().getThreads());
+        assertEquals("3", profile.getMaven().getForkCount());
+        assertTrue(profile.getMaven().isReuseForks());
+        assertTrue(profile.getMaven().isOffline());
+
+        writeProfile("{\"maven\": {\"threads\": \"all\"}}");
+        assertThrows(IllegalArgumentException.class, () -> BuildProfile.load(packageDirectory));
+    }
+
+    @Test
+    public void testStartupImagesAreRead() throws IOException {
+        assertNull(BuildProfile.load(packageDirectory).getStartupImages());
+
+        writeProfile("{\"startupImages\": {\"mainClass\": \"hello.HelloWorld\", \"trainingArguments\": [\"--count=3\"], \"runs\": 9}}");
+
+        StartupImages startupImages = BuildProfile.load(packageDirectory).getStartupImages();
+        assertEquals("hello.HelloWorld", startupImages.getMainClass());
+        assertEquals(Arrays.asList("--count=3"), startupImages.getTrainingArguments());
+        assertEquals(9, startupImages.getRuns());
+
+        writeProfile("{\"startupImages\": {\"trainingArguments\": [\"--count=3\"]}}");
+        assertThrows(IllegalArgumentException.class, () -> BuildProfile.load(packageDirectory));
+
+        writeProfile("{\"startupImages\": {\"mainClass\": \"hello.HelloWorld\", \"trainingArguments\": [\"two words\"]}}");
+        assertThrows(IllegalArgumentException.class, () -> BuildProfile.load(packageDirectory));
+    }
+
+    @Test
+    public void testInvalidProfilesAreRejected() throws IOException {
+        writeProfile("{\"architecture\": \"ARM64\"}");
+        assertThrows(IllegalArgumentException.class, () -> BuildProfile.load(packageDirectory));
+
+        writeProfile("{\"timeoutMinutes\": 600}");
+        assertThrows(IllegalArgumentException.class, () -> BuildProfile.load(packageDirectory));
+
+        writeProfile("{\"computeTyp\": \"LARGE\"}");
+        assertThrows(IllegalArgumentException.class, () -> BuildProfile.load(packageDirectory));
+    }
+
+    private void writeProfile(final String json) throws IOException {
+        Files.write(packageDirectory.resolve(BuildProfile.FILE_NAME), json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,90 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.buildAndPublishPackage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PackageGraphTest {
+
+    @TempDir
+    Path sourceRoot;
+
+    @Test
+    public void testRunOrderFollowsInRepoDependencies() throws IOException {
+        writePom("core", "core");
+        writePom("client", "client", "core");
+        writePom("cli", "cli", "client", "joda-time");
+        writePom("standalone", "standalone");
+
+        PackageGraph graph = PackageGraph.discover(sourceRoot);
+
+        assertEquals(1, graph.getRunOrder("core"));
+        assertEquals(2, graph.getRunOrder("client"));
+        assertEquals(3, graph.getRunOrder("cli"));
+        assertEquals(1, graph.getRunOrder("standalone"));
+        assertEquals(Set.of("client", "core"), graph.getTransitiveDependencies("cli"));
+        assertEquals("Cli", graph.getPackage("cli").getConstructName());
+    }
+
+    @Test
+    public void testCyclicDependenciesAreRejected() throws IOException {
+        writePom("a", "a", "b");
+        writePom("b", "b", "a");
+
+        assertThrows(IllegalStateException.class, () -> PackageGraph.discover(sourceRoot));
+    }
+
+    @Test
+    public void testConstructNameCollisionsAreRejected() throws IOException {
+        writePom("foo-bar", "foo-bar");
+        writePom("foo_bar", "foo_bar");
+
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> PackageGraph.discover(sourceRoot));
+        assertTrue(error.getMessage().contains("FooBar"), error.getMessage());
+    }
+
+    @Test
+    public void testWideDiamondsResolveInLinearTime() throws IOException {
+        // Every layer depends on both packages of the layer below, 2^30 paths lead to the bottom
+        writePom("a0", "a0");
+        writePom("b0", "b0");
+        for (int layer = 1; layer <= 30; layer++) {
+            writePom("a" + layer, "a" + layer, "a" + (layer - 1), "b" + (layer - 1));
+            writePom("b" + layer, "b" + layer, "a" + (layer - 1), "b" + (layer - 1));
+        }
+
+        PackageGraph graph = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> PackageGraph.discover(sourceRoot));
+
+        assertEquals(60, assertTimeoutPreemptively(Duration.ofSeconds(10), () -> graph.getTransitiveDependencies("a30")).size());
+        assertEquals(31, graph.getRunOrder("a30"));
+    }
+
+    private void writePom(final String directory, final String artifactId, final String... dependencies) throws IOException {
+        StringBuilder pom = new StringBuilder()
+                .append("<project><modelVersion>4.0.0</modelVersion>")
+                .append("<groupId>com.myorg</groupId><artifactId>").append(artifactId).append("</artifactId>")
+                .append("<version>0.1.0</version><dependencies>");
+        Arrays.stream(dependencies).forEach(dependency -> pom
+                .append("<dependency><groupId>com.myorg</groupId><artifactId>").append(dependency)
+                .append("</artifactId><version>0.1.0</version></dependency>"));
+        pom.append("</dependencies></project>");
+
+        Files.createDirectories(sourceRoot.resolve("packages").resolve(directory));
+        Files.write(sourceRoot.resolve("packages").resolve(directory).resolve("pom.xml"), pom.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
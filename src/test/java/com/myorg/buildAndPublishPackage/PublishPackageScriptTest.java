@@ -0,0 +1,125 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.buildAndPublishPackage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Runs the publish script against an already published version, with stand-ins for the aws CLI and curl. */
+public class PublishPackageScriptTest {
+
+    private static final String POM = "<project/>";
+
+    @TempDir
+    Path directory;
+
+    private Path version;
+    private Path published;
+
+    @BeforeEach
+    public void publishVersion() throws Exception {
+        version = Files.createDirectories(directory.resolve("repository/com/example/app/1.0"));
+        published = directory.resolve("published.jar");
+        writeJar(published, 1_600_000_000_000L, "class App {}", "#Generated by Maven\n#Mon Jan 01 00:00:00 UTC 2024\nversion=1.0\n");
+        write(version.resolve("app-1.0.pom"), POM);
+
+        Path bin = Files.createDirectories(directory.resolve("bin"));
+        write(bin.resolve("aws"), "printf 'app-1.0.jar\\t%s\\napp-1.0.pom\\t%s\\napp-1.0-appcds.jsa\\t%s\\n' "
+                + sha256(Files.readAllBytes(published)) + " " + sha256(POM.getBytes(StandardCharsets.UTF_8)) + " " + sha256(new byte[] {1}));
+        write(bin.resolve("curl"), "while [ $# -gt 0 ]; do [ \"$1\" = --output ] && cp \"" + published + "\" \"$2\"; shift; done");
+        bin.resolve("aws").toFile().setExecutable(true);
+        bin.resolve("curl").toFile().setExecutable(true);
+    }
+
+    @Test
+    public void testRebuiltJarWithThePublishedContentIsSkipped() throws Exception {
+        writeJar(version.resolve("app-1.0.jar"), 1_700_000_000_000L, "class App {}", "#Generated by Maven\n#Tue Feb 02 00:00:00 UTC 2027\nversion=1.0\n");
+
+        Process process = start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+
+        assertEquals(0, process.waitFor(), output);
+        assertTrue(output.contains("already published with identical content"), output);
+    }
+
+    @Test
+    public void testRebuiltStartupImagesOnlyNeedToBePublished() throws Exception {
+        Files.copy(published, version.resolve("app-1.0.jar"));
+        Files.write(version.resolve("app-1.0-appcds.jsa"), new byte[] {2});
+
+        Process process = start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+
+        assertEquals(0, process.waitFor(), output);
+        assertTrue(output.contains("already published with identical content"), output);
+
+        Files.write(version.resolve("app-1.0-runtime.tar.gz"), new byte[] {3});
+
+        process = start();
+        output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+
+        assertEquals(1, process.waitFor(), output);
+        assertTrue(output.contains("already published with different content: app-1.0-runtime.tar.gz"), output);
+    }
+
+    @Test
+    public void testRebuiltJarWithOtherContentFails() throws Exception {
+        writeJar(version.resolve("app-1.0.jar"), 1_700_000_000_000L, "class App { }", "version=1.0\n");
+
+        Process process = start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+
+        assertEquals(1, process.waitFor(), output);
+        assertTrue(output.contains("already published with different content: app-1.0.jar"), output);
+    }
+
+    private Process start() throws IOException {
+        ProcessBuilder processBuilder = new ProcessBuilder("bash", "scripts/publish-package.sh", "com.example", "app", "1.0", version.toString());
+        processBuilder.environment().put("PATH", directory.resolve("bin") + ":" + System.getenv("PATH"));
+        processBuilder.environment().put("CODEARTIFACT_REPOSITORY_URL", "https://example.com/maven/mvn/");
+        processBuilder.environment().put("CODEARTIFACT_AUTH_TOKEN", "token");
+        processBuilder.redirectErrorStream(true);
+        return processBuilder.start();
+    }
+
+    private static void writeJar(final Path jar, final long time, final String source, final String pomProperties) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(jar))) {
+            putEntry(zip, "App.java", time, source);
+            putEntry(zip, "META-INF/maven/com.example/app/pom.properties", time, pomProperties);
+        }
+    }
+
+    private static void putEntry(final ZipOutputStream zip, final String name, final long time, final String content) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTime(time);
+        zip.putNextEntry(entry);
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    private static String sha256(final byte[] content) throws NoSuchAlgorithmException {
+        StringBuilder hash = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+            hash.append(String.format("%02x", b));
+        }
+        return hash.toString();
+    }
+
+    private static void write(final Path file, final String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,118 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.buildCache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/** Runs the cache script against a file system location, with a stand-in for the dependency resolution of mvn. */
+public class BuildCacheScriptTest {
+
+    @TempDir
+    Path directory;
+
+    private Path module;
+
+    @BeforeEach
+    public void createModule() throws IOException {
+        Path bin = Files.createDirectories(directory.resolve("bin"));
+        write(bin.resolve("mvn"), "[ -z \"${DEPENDENCY_FAILURE:-}\" ] || exit 1\necho \"com.example:library:jar:${DEPENDENCY_VERSION:-1.0}:compile\"");
+        bin.resolve("mvn").toFile().setExecutable(true);
+
+        module = Files.createDirectories(directory.resolve("module"));
+        write(module.resolve("pom.xml"), "<project/>");
+        Files.createDirectories(module.resolve("src/main/java"));
+        write(module.resolve("src/main/java/App.java"), "class App {}");
+    }
+
+    @Test
+    public void testKeyFollowsSourcesAndDependencies() throws Exception {
+        String key = run(Map.of(), "key", module.toString()).trim();
+
+        assertEquals(key, run(Map.of(), "key", module.toString()).trim());
+        assertNotEquals(key, run(Map.of("DEPENDENCY_VERSION", "2.0"), "key", module.toString()).trim());
+
+        write(module.resolve("src/main/java/App.java"), "class App { }");
+        assertNotEquals(key, run(Map.of(), "key", module.toString()).trim());
+    }
+
+    @Test
+    public void testKeyFollowsBuildCommandAndProfile() throws Exception {
+        String key = run(Map.of("BUILD_CACHE_COMMAND", "mvn install"), "key", module.toString()).trim();
+
+        assertNotEquals(key, run(Map.of("BUILD_CACHE_COMMAND", "mvn install -DskipTests"), "key", module.toString()).trim());
+
+        write(module.resolve("build-profile.json"), "{ \"computeType\": \"LARGE\" }");
+        assertNotEquals(key, run(Map.of("BUILD_CACHE_COMMAND", "mvn install"), "key", module.toString()).trim());
+    }
+
+    @Test
+    public void testKeyFollowsExtraPaths() throws Exception {
+        Path scripts = Files.createDirectories(directory.resolve("scripts"));
+        write(scripts.resolve("publish.sh"), "echo publish");
+        String key = run(Map.of(), "key", module.toString(), scripts.toString()).trim();
+
+        write(scripts.resolve("publish.sh"), "echo publish all");
+        assertNotEquals(key, run(Map.of(), "key", module.toString(), scripts.toString()).trim());
+    }
+
+    @Test
+    public void testUnresolvedDependenciesHaveNoKey() throws Exception {
+        assertEquals(1, exitCode(Map.of("DEPENDENCY_FAILURE", "true"), "key", module.toString()));
+    }
+
+    @Test
+    public void testOutputsAreRestoredAfterSave() throws Exception {
+        Path outputs = Files.createDirectories(directory.resolve("target"));
+        write(outputs.resolve("app.jar"), "jar");
+        Path restored = directory.resolve("restored");
+
+        assertEquals(1, exitCode(Map.of(), "restore", "abc", restored.toString()));
+
+        run(Map.of(), "save", "abc", outputs.toString());
+        run(Map.of(), "restore", "abc", restored.toString());
+
+        assertEquals("jar", new String(Files.readAllBytes(restored.resolve("app.jar")), StandardCharsets.UTF_8));
+    }
+
+    private String run(final Map<String, String> environment, final String... arguments) throws IOException, InterruptedException {
+        Process process = start(environment, arguments);
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(0, process.waitFor());
+        return output;
+    }
+
+    private int exitCode(final Map<String, String> environment, final String... arguments) throws IOException, InterruptedException {
+        Process process = start(environment, arguments);
+        process.getInputStream().readAllBytes();
+        return process.waitFor();
+    }
+
+    private Process start(final Map<String, String> environment, final String... arguments) throws IOException {
+        List<String> command = new ArrayList<>(Arrays.asList("bash", "scripts/build-cache.sh"));
+        command.addAll(Arrays.asList(arguments));
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.environment().putAll(environment);
+        processBuilder.environment().put("PATH", directory.resolve("bin") + ":" + System.getenv("PATH"));
+        processBuilder.environment().put("BUILD_CACHE_LOCATION", "file://" + directory.resolve("cache"));
+        return processBuilder.start();
+    }
+
+    private static void write(final Path file, final String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
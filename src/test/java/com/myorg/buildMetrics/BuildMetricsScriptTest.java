@@ -0,0 +1,98 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.buildMetrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BuildMetricsScriptTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testPhaseMetricIsEmbeddedMetricFormat() throws Exception {
+        JsonNode line = run("phase", "Test", "RunUnitTests", "build", String.valueOf(System.currentTimeMillis() - 1000));
+
+        assertValidEmbeddedMetric(line);
+        assertEquals("JavaSamplePipeline", line.at("/_aws/CloudWatchMetrics/0/Namespace").asText());
+        assertEquals("build", line.get("Phase").asText());
+        assertTrue(line.get("PhaseDuration").asLong() >= 1000);
+    }
+
+    @Test
+    public void testBuildMetricsCoverDownloadsCacheAndTests() throws Exception {
+        Path repository = directory.resolve("repository");
+        Files.createDirectories(repository.resolve("cached"));
+        Files.write(repository.resolve("cached/cached-1.0.jar"), new byte[10]);
+        run("start");
+        Thread.sleep(1100);
+        Files.createDirectories(repository.resolve("downloaded"));
+        Files.write(repository.resolve("downloaded/downloaded-1.0.jar"), new byte[100]);
+        Files.write(repository.resolve("downloaded/downloaded-1.0.pom"), new byte[20]);
+        Files.write(repository.resolve("downloaded/_remote.repositories"),
+                "downloaded-1.0.jar>aws-java-sample-domain-mvn=\ndownloaded-1.0.pom>aws-java-sample-domain-mvn=\n".getBytes(StandardCharsets.UTF_8));
+        // Installed by the build, or copied in from a verified input, neither was downloaded
+        Files.createDirectories(repository.resolve("com/myorg/installed"));
+        Files.write(repository.resolve("com/myorg/installed/installed-1.0.jar"), new byte[1000]);
+        Files.write(repository.resolve("com/myorg/installed/_remote.repositories"), "installed-1.0.jar>=\n".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(repository.resolve("com/myorg/copied"));
+        Files.write(repository.resolve("com/myorg/copied/copied-1.0.jar"), new byte[1000]);
+
+        Path reports = directory.resolve("source/target/surefire-reports");
+        Files.createDirectories(reports);
+        Files.write(reports.resolve("TEST-com.myorg.StackTest.xml"),
+                "<testsuite name=\"com.myorg.StackTest\" time=\"1,234.5\" tests=\"3\"></testsuite>".getBytes(StandardCharsets.UTF_8));
+
+        JsonNode line = run("build", "Test", "RunUnitTests");
+
+        assertValidEmbeddedMetric(line);
+        assertEquals(120, line.get("CodeArtifactBytesDownloaded").asLong());
+        assertEquals(33.3, line.get("MavenCacheHitRatio").asDouble());
+        assertEquals(3, line.get("TestCount").asInt());
+        assertEquals(1234500, line.get("TestDuration").asLong());
+    }
+
+    private JsonNode run(final String... arguments) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(Arrays.asList("bash", "scripts/build-metrics.sh"));
+        command.addAll(Arrays.asList(arguments));
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        Map<String, String> environment = processBuilder.environment();
+        environment.put("BUILD_METRICS_STATE_DIR", directory.resolve("state").toString());
+        environment.put("MAVEN_REPOSITORY", directory.resolve("repository").toString());
+        environment.put("CODEBUILD_SRC_DIR", directory.resolve("source").toString());
+        Process process = processBuilder.start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        assertEquals(0, process.waitFor());
+        return output.isEmpty() ? null : new ObjectMapper().readTree(output);
+    }
+
+    /** Checks the structure CloudWatch requires of an embedded metric format line. */
+    private static void assertValidEmbeddedMetric(final JsonNode line) {
+        assertTrue(line.at("/_aws/Timestamp").isNumber());
+        for (JsonNode directive : line.at("/_aws/CloudWatchMetrics")) {
+            assertTrue(directive.get("Namespace").isTextual());
+            for (JsonNode dimensionSet : directive.get("Dimensions")) {
+                dimensionSet.forEach(dimension -> assertTrue(line.path(dimension.asText()).isTextual(), "dimension " + dimension));
+            }
+            for (JsonNode metric : directive.get("Metrics")) {
+                assertTrue(line.path(metric.get("Name").asText()).isNumber(), "metric " + metric);
+            }
+        }
+    }
+}
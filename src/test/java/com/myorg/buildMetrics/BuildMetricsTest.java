@@ -0,0 +1,45 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.buildMetrics;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awscdk.App;
+import software.amazon.awscdk.Duration;
+import software.amazon.awscdk.Stack;
+import software.amazon.awscdk.assertions.Template;
+import software.amazon.awscdk.services.codebuild.BuildSpec;
+import software.amazon.awscdk.services.codebuild.PipelineProject;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BuildMetricsTest {
+
+    @Test
+    public void testDashboardRowsAreCapped() {
+        Stack stack = new Stack(new App(), "Metrics");
+        BuildMetrics buildMetrics = new BuildMetrics(stack, "BuildMetrics", Duration.hours(1));
+
+        int projects = BuildMetrics.MAX_PROJECT_ROWS + 5;
+        for (int index = 0; index < projects; index++) {
+            PipelineProject project = PipelineProject.Builder.create(stack, "Project" + index)
+                    .buildSpec(BuildSpec.fromObject(buildMetrics.addTo(Map.of(
+                            "version", "0.2",
+                            "phases", Map.of("build", Map.of("commands", Arrays.asList("true")))), "Test", "project-" + index)))
+                    .build();
+            buildMetrics.track(project, "Test", "project-" + index, Duration.hours(1));
+        }
+
+        Template template = Template.fromStack(stack);
+
+        // Every project keeps its alarm, the stage adds one more
+        template.resourceCountIs("AWS::CloudWatch::Alarm", projects + 1);
+        Map<String, Map<String, Object>> dashboards = template.findResources("AWS::CloudWatch::Dashboard");
+        String body = String.valueOf(dashboards.values().iterator().next().get("Properties"));
+        // Two widgets of the stage row, four per project row and the note on the omitted projects
+        assertEquals(2 + 4 * BuildMetrics.MAX_PROJECT_ROWS + 1, body.split("\"width\":", -1).length - 1);
+    }
+}
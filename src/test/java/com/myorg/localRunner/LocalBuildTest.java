@@ -0,0 +1,98 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.localRunner;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Runs buildspecs on a small source directory and checks the phases behave as on CodeBuild. */
+public class LocalBuildTest {
+
+    @TempDir
+    Path directory;
+
+    private Path source;
+
+    @BeforeEach
+    public void createSource() throws IOException {
+        source = Files.createDirectories(directory.resolve("source"));
+        write(source.resolve("input.txt"), "input");
+    }
+
+    @Test
+    public void testPhasesShareEnvironmentAndDirectory() throws Exception {
+        LocalBuild.Result result = run("{\"version\": \"0.2\","
+                + " \"env\": {\"variables\": {\"GREETING\": \"hello\"}},"
+                + " \"phases\": {"
+                + "   \"install\": {\"commands\": [\"export VALUE=$GREETING-$PROJECT_VALUE\", \"mkdir out\", \"cd out\"]},"
+                + "   \"build\": {\"commands\": [\"echo $VALUE > value.txt\", \"cp ../input.txt .\"]}},"
+                + " \"artifacts\": {\"base-directory\": \"out\", \"files\": [\"**/*\"]}}");
+
+        assertTrue(result.isSucceeded());
+        assertEquals(List.of("install", "build"), new ArrayList<>(result.getPhaseMillis().keySet()));
+        assertEquals("hello-project\n", read(directory.resolve("output/value.txt")));
+        assertEquals("input", read(directory.resolve("output/input.txt")));
+        // The build works on a copy
+        assertFalse(Files.exists(source.resolve("out")));
+    }
+
+    @Test
+    public void testFailedBuildStillRunsPostBuild() throws Exception {
+        LocalBuild.Result result = run("{\"version\": \"0.2\", \"phases\": {"
+                + " \"build\": {\"commands\": [\"false\", \"echo skipped > skipped.txt\"], \"finally\": [\"echo finally > finally.txt\"]},"
+                + " \"post_build\": {\"commands\": [\"echo $CODEBUILD_BUILD_SUCCEEDING > succeeding.txt\"]}},"
+                + " \"artifacts\": {\"files\": [\"*.txt\"]}}");
+
+        Path build = directory.resolve("build/src");
+        assertFalse(result.isSucceeded());
+        assertFalse(Files.exists(build.resolve("skipped.txt")));
+        assertEquals("finally\n", read(build.resolve("finally.txt")));
+        assertEquals("0\n", read(build.resolve("succeeding.txt")));
+        // Nothing is handed on from a failed build
+        assertFalse(Files.exists(directory.resolve("output")));
+    }
+
+    @Test
+    public void testFailedInstallSkipsTheOtherPhases() throws Exception {
+        LocalBuild.Result result = run("{\"version\": \"0.2\", \"phases\": {"
+                + " \"install\": {\"commands\": [\"exit 3\"]},"
+                + " \"build\": {\"commands\": [\"true\"]},"
+                + " \"post_build\": {\"commands\": [\"true\"]}}}");
+
+        assertFalse(result.isSucceeded());
+        assertEquals(List.of("install"), new ArrayList<>(result.getPhaseMillis().keySet()));
+    }
+
+    private LocalBuild.Result run(final String buildSpec) throws IOException, InterruptedException {
+        PipelineDefinition.BuildAction action = new PipelineDefinition.BuildAction("build", 1, "Project", new ObjectMapper().readTree(buildSpec),
+                Collections.emptyMap(), List.of("SourceArtifact"), List.of("BuildArtifact"), 5);
+        return new LocalBuild(action, directory.resolve("build"), directory.resolve("home")).run(
+                Map.of("SourceArtifact", source),
+                Map.of("PROJECT_VALUE", "project"),
+                Map.of("BuildArtifact", directory.resolve("output")));
+    }
+
+    private static String read(final Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private static void write(final Path file, final String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
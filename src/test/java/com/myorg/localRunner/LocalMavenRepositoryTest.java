@@ -0,0 +1,69 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.localRunner;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LocalMavenRepositoryTest {
+
+    private static final String POM = "com/example/library/1.0/library-1.0.pom";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testDeployedFilesAreServed() throws IOException {
+        try (LocalMavenRepository repository = new LocalMavenRepository(directory.resolve("repository"), null)) {
+            assertEquals(404, request(repository.getUrl() + POM, "GET", null));
+            assertEquals(201, request(repository.getUrl() + POM, "PUT", "<project/>"));
+            assertEquals(200, request(repository.getUrl() + POM, "GET", null));
+            assertEquals(400, request(repository.getUrl() + "../outside", "GET", null));
+        }
+    }
+
+    @Test
+    public void testMissingFilesAreFetchedOnceFromUpstream() throws IOException {
+        try (LocalMavenRepository upstream = new LocalMavenRepository(directory.resolve("upstream"), null);
+             LocalMavenRepository repository = new LocalMavenRepository(directory.resolve("repository"), upstream.getUrl())) {
+            request(upstream.getUrl() + POM, "PUT", "<project/>");
+            request(upstream.getUrl() + "com/example/library/1.1-SNAPSHOT/library-1.1-SNAPSHOT.pom", "PUT", "<project/>");
+
+            assertEquals(200, request(repository.getUrl() + POM, "GET", null));
+            assertEquals(200, request(repository.getUrl() + POM, "HEAD", null));
+            assertEquals(1, repository.getUpstreamDownloads());
+            assertEquals("<project/>".length(), repository.getUpstreamBytes());
+            assertEquals(404, request(repository.getUrl() + "com/example/library/1.1-SNAPSHOT/library-1.1-SNAPSHOT.pom", "GET", null));
+        }
+    }
+
+    private static int request(final String url, final String method, final String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        if (status == 200 && method.equals("GET")) {
+            try (InputStream input = connection.getInputStream()) {
+                input.readAllBytes();
+            }
+        }
+        connection.disconnect();
+        return status;
+    }
+}
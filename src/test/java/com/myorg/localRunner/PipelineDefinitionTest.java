@@ -0,0 +1,53 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.localRunner;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.myorg.JavaCdkCicdCodeartifactStack;
+import com.myorg.PipelineOptions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awscdk.App;
+import software.amazon.awscdk.assertions.Template;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PipelineDefinitionTest {
+
+    @Test
+    public void testStagesAndBuildActionsOfTheStack() {
+        PipelineDefinition definition = definition(PipelineOptions.builder().build());
+
+        List<String> stages = definition.getStages().stream().map(PipelineDefinition.Stage::getName).collect(Collectors.toList());
+        assertEquals(List.of("Source", "Credentials", "UpdatePipeline"), stages.subList(0, 3));
+        assertTrue(stages.indexOf("Test") < stages.indexOf("BuildAndPublishPackages"));
+        // The CodeCommit action is not a build
+        assertTrue(definition.getStages().get(0).getActions().isEmpty());
+
+        PipelineDefinition.BuildAction unitTests = definition.getStages().get(stages.indexOf("Test")).getActions().stream()
+                .filter(action -> action.getName().equals("run-unit-tests"))
+                .findFirst()
+                .orElseThrow(AssertionError::new);
+        assertFalse(unitTests.getBuildSpec().path("phases").path("build").path("commands").isEmpty());
+        assertEquals("PARAMETER_STORE", unitTests.getEnvironment().get("CODEARTIFACT_AUTH_TOKEN").getType());
+        assertTrue(unitTests.getEnvironment().get("CODEARTIFACT_REPOSITORY_URL").getValue().startsWith("#{"));
+        assertEquals(1, unitTests.getInputs().size());
+    }
+
+    @Test
+    public void testSharedPackageBuildsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> definition(PipelineOptions.builder().sharedPackageBuilds(true).build()));
+    }
+
+    private static PipelineDefinition definition(final PipelineOptions options) {
+        App app = new App();
+        JavaCdkCicdCodeartifactStack stack = new JavaCdkCicdCodeartifactStack(app, LocalPipelineRunner.STACK_NAME, null, options);
+        return PipelineDefinition.of(new ObjectMapper().valueToTree(Template.fromStack(stack).toJSON()));
+    }
+}
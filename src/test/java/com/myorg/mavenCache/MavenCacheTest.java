@@ -0,0 +1,47 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.mavenCache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class MavenCacheTest {
+
+    @TempDir
+    Path sourceRoot;
+
+    @Test
+    public void testPrefixFollowsThirdPartyDependenciesOnly() throws IOException {
+        writePackage("library", "1.0.0", "");
+        writePackage("app", "1.0.0", dependency("com.myorg", "library", "1.0.0") + dependency("joda-time", "joda-time", "2.2"));
+        String prefix = MavenCache.hashDependencyDeclarations(sourceRoot);
+
+        // Releasing in-repo packages keeps the cache
+        writePackage("library", "1.1.0", "");
+        writePackage("app", "1.0.1", dependency("com.myorg", "library", "1.1.0") + dependency("joda-time", "joda-time", "2.2"));
+        assertEquals(prefix, MavenCache.hashDependencyDeclarations(sourceRoot));
+
+        writePackage("app", "1.0.1", dependency("com.myorg", "library", "1.1.0") + dependency("joda-time", "joda-time", "2.10"));
+        assertNotEquals(prefix, MavenCache.hashDependencyDeclarations(sourceRoot));
+    }
+
+    private void writePackage(final String name, final String version, final String dependencies) throws IOException {
+        Path directory = Files.createDirectories(sourceRoot.resolve("packages").resolve(name));
+        String pom = "<project><groupId>com.myorg</groupId><artifactId>" + name + "</artifactId><version>" + version + "</version>"
+                + "<dependencies>" + dependencies + "</dependencies></project>";
+        Files.write(directory.resolve("pom.xml"), pom.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String dependency(final String groupId, final String artifactId, final String version) {
+        return "<dependency><groupId>" + groupId + "</groupId><artifactId>" + artifactId + "</artifactId><version>" + version + "</version></dependency>";
+    }
+}
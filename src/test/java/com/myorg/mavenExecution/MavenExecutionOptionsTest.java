@@ -0,0 +1,48 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.mavenExecution;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MavenExecutionOptionsTest {
+
+    @Test
+    public void testDefaultsKeepMavenDefaults() {
+        MavenExecutionOptions options = MavenExecutionOptions.builder().build();
+
+        assertEquals("mvn package --settings settings.xml", options.command("package"));
+        assertNull(options.mavenOpts());
+        assertTrue(options.environmentVariables().isEmpty());
+    }
+
+    @Test
+    public void testOptionsAreRendered() {
+        MavenExecutionOptions options = MavenExecutionOptions.builder()
+                .threads("4")
+                .forkCount("0.5C")
+                .reuseForks(false)
+                .heap("3g")
+                .gcFlags("-XX:+UseParallelGC")
+                .offline(true)
+                .build();
+
+        assertEquals("mvn install -o -T 4 --settings settings.xml -DforkCount=0.5C -DreuseForks=false", options.command("install"));
+        assertEquals("mvn deploy -T 4 --settings settings.xml -DforkCount=0.5C -DreuseForks=false", options.online().command("deploy"));
+        assertEquals("-Xmx3g -XX:+UseParallelGC", options.mavenOpts());
+        assertEquals("-Xmx3g -XX:+UseParallelGC", options.environmentVariables().get("MAVEN_OPTS").getValue());
+    }
+
+    @Test
+    public void testInvalidOptionsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> MavenExecutionOptions.builder().threads("0").build());
+        assertThrows(IllegalArgumentException.class, () -> MavenExecutionOptions.builder().forkCount("many").build());
+        assertThrows(IllegalArgumentException.class, () -> MavenExecutionOptions.builder().heap("3 GB").build());
+        assertThrows(IllegalArgumentException.class, () -> MavenExecutionOptions.builder().gcFlags("G1").build());
+    }
+}
@@ -0,0 +1,66 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.pipelineExecution;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Runs the trigger script with a stand-in for the AWS CLI that reports the changed files of {@code DIFFERENCES}. */
+public class PipelineTriggerScriptTest {
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    public void createAwsCli() throws IOException {
+        Path bin = Files.createDirectories(directory.resolve("bin"));
+        Files.write(bin.resolve("aws"), ("if [ \"$1\" = codecommit ]; then printf \"$DIFFERENCES\"; else echo \"$@\" >> " + directory.resolve("started") + "; fi")
+                .getBytes(StandardCharsets.UTF_8));
+        bin.resolve("aws").toFile().setExecutable(true);
+    }
+
+    @Test
+    public void testExcludedChangesDoNotStartThePipeline() throws Exception {
+        run("README.md\\tREADME.md\\nNone\\tdocs/guide.md\\n", "old", "new");
+
+        assertFalse(Files.exists(directory.resolve("started")));
+    }
+
+    @Test
+    public void testOtherChangesStartThePipeline() throws Exception {
+        run("README.md\\tREADME.md\\nsrc/Main.java\\tsrc/Main.java\\n", "old", "new");
+
+        assertTrue(new String(Files.readAllBytes(directory.resolve("started")), StandardCharsets.UTF_8).contains("start-pipeline-execution --name java-sample-pipeline"));
+    }
+
+    @Test
+    public void testNewBranchesStartThePipeline() throws Exception {
+        run("README.md\\tREADME.md\\n", "", "new");
+
+        assertTrue(Files.exists(directory.resolve("started")));
+    }
+
+    private void run(final String differences, final String oldCommit, final String newCommit) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(Arrays.asList("bash", "scripts/trigger-pipeline.sh", "java-sample-pipeline", "JavaSampleRepository", oldCommit, newCommit, "README.md", "docs/*"));
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.environment().put("PATH", directory.resolve("bin") + ":" + System.getenv("PATH"));
+        processBuilder.environment().put("DIFFERENCES", differences);
+        Process process = processBuilder.start();
+        process.getInputStream().readAllBytes();
+        assertEquals(0, process.waitFor());
+    }
+}
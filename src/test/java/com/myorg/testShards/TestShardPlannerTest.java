@@ -0,0 +1,58 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package com.myorg.testShards;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestShardPlannerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testShardsAreBalancedByDuration() {
+        List<List<String>> shards = TestShardPlanner.plan(
+                Arrays.asList("a.SlowTest", "a.MediumTest", "a.FastTest", "a.FasterTest"),
+                Map.of("a.SlowTest", 10.0, "a.MediumTest", 6.0, "a.FastTest", 3.0, "a.FasterTest", 2.0),
+                2);
+
+        assertEquals(Arrays.asList(Arrays.asList("a.SlowTest"), Arrays.asList("a.FastTest", "a.FasterTest", "a.MediumTest")), shards);
+    }
+
+    @Test
+    public void testUnknownClassesTakeTheAverageDuration() {
+        List<List<String>> shards = TestShardPlanner.plan(
+                Arrays.asList("a.OldTest", "a.NewTest", "a.OtherNewTest"),
+                Map.of("a.OldTest", 4.0),
+                2);
+
+        assertEquals(Arrays.asList(Arrays.asList("a.NewTest", "a.OtherNewTest"), Arrays.asList("a.OldTest")), shards);
+    }
+
+    @Test
+    public void testClassesAndTimingsAreRead() throws IOException {
+        Files.createDirectories(directory.resolve("src/com/myorg"));
+        Files.write(directory.resolve("src/com/myorg/StackTest.java"), new byte[0]);
+        Files.write(directory.resolve("src/com/myorg/TestHelper.java"), new byte[0]);
+        Files.write(directory.resolve("src/com/myorg/Fixtures.java"), new byte[0]);
+
+        Files.createDirectories(directory.resolve("reports/shard-0"));
+        Files.write(directory.resolve("reports/shard-0/TEST-com.myorg.StackTest.xml"),
+                "<testsuite name=\"com.myorg.StackTest\" time=\"1,234.5\" tests=\"1\"></testsuite>".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(Arrays.asList("com.myorg.StackTest", "com.myorg.TestHelper"), TestShardPlanner.discoverTestClasses(directory.resolve("src")));
+        assertEquals(Map.of("com.myorg.StackTest", 1234.5), TestShardPlanner.readReports(directory.resolve("reports")));
+    }
+}